@@ -0,0 +1,73 @@
+package de.be4.classicalb.core.parser.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.analysis.prolog.ASTProlog;
+import de.be4.classicalb.core.parser.analysis.prolog.ClassicalPositionPrinter;
+import de.be4.classicalb.core.parser.analysis.prolog.NodeFileNumbers;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.Start;
+import de.prob.prolog.output.FastSicstusTermOutput;
+import de.prob.prolog.output.IPrologTermOutput;
+import de.prob.prolog.output.PrologTermOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@SuppressWarnings("unused")
+public class ASTPrologBenchmark {
+
+	@Param({"10", "100", "1000"})
+	int size;
+
+	Start ast;
+	NodeFileNumbers nodeIds;
+
+	@Setup
+	public void setup() throws BCompoundException {
+		ast = new BParser("Bench.mch").parseMachine(BenchmarkMachines.machine("Bench", size));
+		nodeIds = new NodeFileNumbers();
+		nodeIds.assignIdentifiers(0, ast);
+	}
+
+	private void print(IPrologTermOutput pout, boolean positions) {
+		ASTProlog prolog = new ASTProlog(pout, positions ? new ClassicalPositionPrinter(nodeIds) : null);
+		ast.apply(prolog);
+		pout.fullstop();
+		pout.flush();
+	}
+
+	@Benchmark
+	public void text(Blackhole bh) {
+		StringWriter sw = new StringWriter();
+		print(new PrologTermOutput(sw, false), false);
+		bh.consume(sw.toString());
+	}
+
+	@Benchmark
+	public void text_Positions(Blackhole bh) {
+		StringWriter sw = new StringWriter();
+		print(new PrologTermOutput(sw, false), true);
+		bh.consume(sw.toString());
+	}
+
+	@Benchmark
+	public void fastProlog(Blackhole bh) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		print(new FastSicstusTermOutput(out), false);
+		bh.consume(out.toByteArray());
+	}
+
+	@Benchmark
+	public void fastProlog_Positions(Blackhole bh) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		print(new FastSicstusTermOutput(out), true);
+		bh.consume(out.toByteArray());
+	}
+}
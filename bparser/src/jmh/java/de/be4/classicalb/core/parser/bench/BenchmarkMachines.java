@@ -0,0 +1,107 @@
+package de.be4.classicalb.core.parser.bench;
+
+/**
+ * Generates B machines of configurable size for the benchmarks.
+ */
+final class BenchmarkMachines {
+
+	private BenchmarkMachines() {
+		// this class contains only static methods
+	}
+
+	/**
+	 * @param name the machine name
+	 * @param size number of constants, variables and operations
+	 * @param clauses additional clauses that are inserted after the machine header, e.g. SEES
+	 * @return the machine source code
+	 */
+	static String machine(String name, int size, String clauses) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("MACHINE ").append(name).append('\n');
+		sb.append(clauses);
+		sb.append("CONSTANTS ");
+		appendList(sb, "c", size, ", ");
+		sb.append("\nPROPERTIES\n");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(" &\n");
+			}
+			sb.append("  c").append(i).append(" : NATURAL & c").append(i).append(" = ").append(i).append(" * 2 + card({x | x : 1..10 & x mod 3 = 0})");
+		}
+		sb.append("\nVARIABLES ");
+		appendList(sb, "v", size, ", ");
+		sb.append("\nINVARIANT\n");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(" &\n");
+			}
+			sb.append("  v").append(i).append(" : INTEGER & (v").append(i).append(" > 0 => v").append(i).append(" >= c").append(i).append(')');
+		}
+		sb.append("\nINITIALISATION ");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(" || ");
+			}
+			sb.append('v').append(i).append(" := c").append(i);
+		}
+		sb.append("\nOPERATIONS\n");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(";\n");
+			}
+			sb.append("  r <-- op").append(i).append("(p) = PRE p : NAT & p < c").append(i)
+				.append(" THEN IF p mod 2 = 0 THEN v").append(i).append(" := v").append(i).append(" + p ELSE v").append(i)
+				.append(" := max({v").append(i).append(", p}) END || r := {y | y : 0..p & y /= c").append(i).append("} END");
+		}
+		sb.append("\nEND\n");
+		return sb.toString();
+	}
+
+	static String machine(String name, int size) {
+		return machine(name, size, "");
+	}
+
+	/**
+	 * @param count number of expression and predicate definitions each
+	 * @return a machine with many DEFINITIONS that are all used
+	 */
+	static String machineWithDefinitions(int count) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("MACHINE Defs\nDEFINITIONS\n");
+		for (int i = 0; i < count; i++) {
+			sb.append("  expr").append(i).append("(x) == x + ").append(i).append(";\n");
+			sb.append("  pred").append(i).append("(x) == expr").append(i).append("(x) > ").append(i).append(";\n");
+		}
+		sb.append("  SET_PREF_MAXINT == 100\n");
+		sb.append("CONSTANTS c\nPROPERTIES\n  c : NAT");
+		for (int i = 0; i < count; i++) {
+			sb.append(" &\n  pred").append(i).append("(c)");
+		}
+		sb.append("\nEND\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @param count number of definitions
+	 * @return a machine with a chain of DEFINITIONS, each using the one declared after it
+	 */
+	static String machineWithDefinitionChain(int count) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("MACHINE Chain\nDEFINITIONS\n");
+		for (int i = 0; i < count; i++) {
+			sb.append("  def").append(i).append(" == def").append(i + 1).append(";\n");
+		}
+		sb.append("  def").append(count).append(" == 1 = 1\n");
+		sb.append("CONSTANTS c\nPROPERTIES\n  c : NAT & def0\nEND\n");
+		return sb.toString();
+	}
+
+	private static void appendList(StringBuilder sb, String prefix, int size, String separator) {
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(separator);
+			}
+			sb.append(prefix).append(i);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package de.be4.classicalb.core.parser.bench;
+
+import java.io.StringWriter;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.FormulaParsingSession;
+import de.be4.classicalb.core.parser.analysis.prolog.ASTProlog;
+import de.be4.classicalb.core.parser.analysis.prolog.ClassicalPositionPrinter;
+import de.be4.classicalb.core.parser.analysis.prolog.NodeFileNumbers;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.Start;
+import de.prob.prolog.output.IPrologTermOutput;
+import de.prob.prolog.output.PrologTermOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@SuppressWarnings("unused")
+public class FormulaParsingBenchmark {
+
+	static final String[] PREDICATES = {
+		"x = 1",
+		"x : NAT & y : NAT & x < y",
+		"!z.(z : 1..10 => f(z) > 0)",
+		"card({a | a : 1..100 & a mod 7 = 0}) = 14",
+		"s <: NAT1 & s /= {} & max(s) = 5 or #q.(q : s & q > 3)",
+	};
+
+	FormulaParsingSession session;
+	Start[] parsedPredicates;
+
+	@Setup
+	public void setup() throws BCompoundException {
+		session = new FormulaParsingSession();
+		parsedPredicates = new Start[PREDICATES.length];
+		for (int i = 0; i < PREDICATES.length; i++) {
+			parsedPredicates[i] = new BParser().parsePredicate(PREDICATES[i]);
+		}
+	}
+
+	@Benchmark
+	public void parsePredicate(Blackhole bh) throws BCompoundException {
+		for (String predicate : PREDICATES) {
+			bh.consume(new BParser().parsePredicate(predicate));
+		}
+	}
+
+	@Benchmark
+	public void parsePredicate_Session(Blackhole bh) throws BCompoundException {
+		for (String predicate : PREDICATES) {
+			bh.consume(session.parsePredicate(predicate));
+		}
+	}
+
+	/**
+	 * Prints each predicate with a new printer, like the prepl does for every formula.
+	 */
+	@Benchmark
+	public void printPredicate(Blackhole bh) {
+		for (Start predicate : parsedPredicates) {
+			StringWriter sw = new StringWriter();
+			IPrologTermOutput pout = new PrologTermOutput(sw, false);
+			ClassicalPositionPrinter pprinter = new ClassicalPositionPrinter(new NodeFileNumbers());
+			pprinter.setPrintSourcePositions(true, true);
+			predicate.apply(new ASTProlog(pout, pprinter));
+			pout.flush();
+			bh.consume(sw.toString());
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package de.be4.classicalb.core.parser.bench;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@SuppressWarnings("unused")
+public class MachineParsingBenchmark {
+
+	@Param({"10", "100", "1000"})
+	int size;
+
+	String machine;
+	String definitionsMachine;
+	String definitionChainMachine;
+
+	@Setup
+	public void setup() {
+		machine = BenchmarkMachines.machine("Bench", size);
+		definitionsMachine = BenchmarkMachines.machineWithDefinitions(size);
+		definitionChainMachine = BenchmarkMachines.machineWithDefinitionChain(size);
+	}
+
+	@Benchmark
+	public void parseMachine(Blackhole bh) throws BCompoundException {
+		bh.consume(new BParser("Bench.mch").parseMachine(machine));
+	}
+
+	/**
+	 * Mostly measures the pre-parser, which has to determine the types of all definitions.
+	 */
+	@Benchmark
+	public void parseMachineWithDefinitions(Blackhole bh) throws BCompoundException {
+		bh.consume(new BParser("Defs.mch").parseMachine(definitionsMachine));
+	}
+
+	/**
+	 * Mostly measures the pre-parser on definitions that use the definitions declared after them.
+	 */
+	@Benchmark
+	public void parseMachineWithDefinitionChain(Blackhole bh) throws BCompoundException {
+		bh.consume(new BParser("Chain.mch").parseMachine(definitionChainMachine));
+	}
+}
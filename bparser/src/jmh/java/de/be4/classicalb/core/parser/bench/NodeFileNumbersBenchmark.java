@@ -0,0 +1,115 @@
+package de.be4.classicalb.core.parser.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.analysis.DepthFirstAdapter;
+import de.be4.classicalb.core.parser.analysis.prolog.ASTProlog;
+import de.be4.classicalb.core.parser.analysis.prolog.ClassicalPositionPrinter;
+import de.be4.classicalb.core.parser.analysis.prolog.INodeIds;
+import de.be4.classicalb.core.parser.analysis.prolog.NodeFileNumbers;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.Node;
+import de.be4.classicalb.core.parser.node.Start;
+import de.prob.prolog.output.FastSicstusTermOutput;
+import de.prob.prolog.output.IPrologTermOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the file number lookup of {@link NodeFileNumbers} with walking up the whole parent chain for every node,
+ * which is what {@link NodeFileNumbers} did before it cached the current path.
+ * The generated machines contain long conjunctions, so the AST gets deeper with the size.
+ */
+@State(Scope.Benchmark)
+@SuppressWarnings("unused")
+public class NodeFileNumbersBenchmark {
+
+	@Param({"10", "100", "1000"})
+	int size;
+
+	Start ast;
+	List<Node> nodes;
+	NodeFileNumbers nodeIds;
+	ParentWalkNodeIds parentWalkNodeIds;
+
+	@Setup
+	public void setup() throws BCompoundException {
+		ast = new BParser("Bench.mch").parseMachine(BenchmarkMachines.machine("Bench", size));
+		nodes = new ArrayList<>();
+		ast.apply(new DepthFirstAdapter() {
+			@Override
+			public void defaultIn(Node node) {
+				nodes.add(node);
+			}
+		});
+		nodeIds = new NodeFileNumbers();
+		nodeIds.assignIdentifiers(1, ast);
+		parentWalkNodeIds = new ParentWalkNodeIds();
+		parentWalkNodeIds.assignIdentifiers(1, ast);
+	}
+
+	private static void lookupAll(List<Node> nodes, INodeIds nodeIds, Blackhole bh) {
+		for (Node node : nodes) {
+			bh.consume(nodeIds.lookupFileNumber(node));
+		}
+	}
+
+	private void print(INodeIds nodeIds, Blackhole bh) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		IPrologTermOutput pout = new FastSicstusTermOutput(out);
+		ClassicalPositionPrinter pprinter = new ClassicalPositionPrinter(nodeIds);
+		pprinter.setPrintSourcePositions(true, true);
+		ast.apply(new ASTProlog(pout, pprinter));
+		pout.fullstop();
+		pout.flush();
+		bh.consume(out.toByteArray());
+	}
+
+	@Benchmark
+	public void lookup_cachedPath(Blackhole bh) {
+		lookupAll(nodes, nodeIds, bh);
+	}
+
+	@Benchmark
+	public void lookup_parentWalk(Blackhole bh) {
+		lookupAll(nodes, parentWalkNodeIds, bh);
+	}
+
+	@Benchmark
+	public void fastProlog_cachedPath(Blackhole bh) {
+		print(nodeIds, bh);
+	}
+
+	@Benchmark
+	public void fastProlog_parentWalk(Blackhole bh) {
+		print(parentWalkNodeIds, bh);
+	}
+
+	private static final class ParentWalkNodeIds implements INodeIds {
+		private final WeakHashMap<Node, Integer> nodeToFileNumberMap = new WeakHashMap<>();
+
+		@Override
+		public void assignIdentifiers(int fileNumber, Node node) {
+			nodeToFileNumberMap.put(node, fileNumber);
+		}
+
+		@Override
+		public int lookupFileNumber(Node node) {
+			for (Node currentNode = node; currentNode != null; currentNode = currentNode.parent()) {
+				Integer fileNumber = nodeToFileNumberMap.get(currentNode);
+				if (fileNumber != null) {
+					return fileNumber;
+				}
+			}
+			return -1;
+		}
+	}
+}
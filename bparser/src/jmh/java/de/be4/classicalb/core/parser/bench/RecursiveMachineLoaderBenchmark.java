@@ -0,0 +1,82 @@
+package de.be4.classicalb.core.parser.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import de.be4.classicalb.core.parser.ParsingBehaviour;
+import de.be4.classicalb.core.parser.analysis.prolog.RecursiveMachineLoader;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Loads a project with a main machine that includes several machines, which all see a shared machine.
+ */
+@State(Scope.Benchmark)
+@SuppressWarnings("unused")
+public class RecursiveMachineLoaderBenchmark {
+
+	@Param({"4", "16"})
+	int machines;
+
+	@Param({"10", "100"})
+	int size;
+
+	Path directory;
+	File mainFile;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("bparser-bench");
+		write("Shared", BenchmarkMachines.machine("Shared", size));
+		StringBuilder includes = new StringBuilder("INCLUDES ");
+		for (int i = 0; i < machines; i++) {
+			String name = "M" + i;
+			write(name, BenchmarkMachines.machine(name, size, "SEES Shared\n"));
+			if (i > 0) {
+				includes.append(", ");
+			}
+			includes.append(name);
+		}
+		includes.append('\n');
+		mainFile = write("Main", "MACHINE Main\n" + includes + "END\n");
+	}
+
+	private File write(String name, String content) throws IOException {
+		Path file = directory.resolve(name + ".mch");
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file.toFile();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Benchmark
+	public void load(Blackhole bh) throws BCompoundException {
+		bh.consume(RecursiveMachineLoader.loadFile(mainFile, new ParsingBehaviour()));
+	}
+
+	@Benchmark
+	public void loadAndPrint(Blackhole bh) throws BCompoundException {
+		RecursiveMachineLoader rml = RecursiveMachineLoader.loadFile(mainFile, new ParsingBehaviour());
+		StringWriter sw = new StringWriter();
+		rml.printAsProlog(new PrintWriter(sw));
+		bh.consume(sw.toString());
+	}
+}
@@ -0,0 +1,55 @@
+package de.be4.classicalb.core.parser.bench;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.ParseOptions;
+import de.be4.classicalb.core.parser.analysis.transforming.CoupleToIdentifierTransformation;
+import de.be4.classicalb.core.parser.analysis.transforming.SyntaxExtensionTranslator;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.Start;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the default transformations as separate traversals and fused into a single traversal.
+ * The transformations modify the AST, so every invocation gets a freshly parsed one.
+ */
+@State(Scope.Benchmark)
+@SuppressWarnings("unused")
+public class TransformationBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	int size;
+
+	String machine;
+	Start ast;
+
+	@Setup
+	public void setup() {
+		machine = BenchmarkMachines.machine("Bench", size);
+	}
+
+	@Setup(Level.Invocation)
+	public void parse() throws BCompoundException {
+		ParseOptions options = new ParseOptions();
+		options.setApplyASTTransformations(false);
+		ast = new BParser("Bench.mch", options).parseMachine(machine);
+	}
+
+	@Benchmark
+	public void separate(Blackhole bh) {
+		ast.apply(new CoupleToIdentifierTransformation());
+		ast.apply(new SyntaxExtensionTranslator());
+		bh.consume(ast);
+	}
+
+	@Benchmark
+	public void fused(Blackhole bh) {
+		ast.apply(new SyntaxExtensionTranslator().addPreOrderPass(new CoupleToIdentifierTransformation.Lifter()));
+		bh.consume(ast);
+	}
+}
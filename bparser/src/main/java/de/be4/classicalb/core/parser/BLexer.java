@@ -440,6 +440,10 @@ public class BLexer extends Lexer {
 	}
 
 	private void replaceDefTokens() throws LexerException {
+		token = replaceDefToken(token, definitions);
+	}
+
+	static Token replaceDefToken(final Token token, final DefinitionTypes definitions) throws LexerException {
 		if (token instanceof TIdentifierLiteral) {
 			// The identifier might be backquoted and needs to be unquoted before looking up the definition type.
 			// This does *not* replace the token text yet - that happens later in SyntaxExtensionTranslator.
@@ -462,15 +466,13 @@ public class BLexer extends Lexer {
 					final Token predToken = new TDefLiteralPredicate(token.getText());
 					predToken.setLine(token.getLine());
 					predToken.setPos(token.getPos());
-					token = predToken;
-					break;
+					return predToken;
 
 				case Substitution:  // generate def_literal_predicate token
 					final Token substToken = new TDefLiteralSubstitution(token.getText());
 					substToken.setLine(token.getLine());
 					substToken.setPos(token.getPos());
-					token = substToken;
-					break;
+					return substToken;
 
 				default:
 					/*
@@ -481,6 +483,7 @@ public class BLexer extends Lexer {
 				}
 			}
 		}
+		return token;
 	}
 
 	private void optimizeToken() {
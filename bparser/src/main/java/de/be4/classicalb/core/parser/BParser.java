@@ -9,6 +9,7 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 import java.util.stream.Collectors;
@@ -35,6 +36,7 @@ import de.be4.classicalb.core.parser.node.Start;
 import de.be4.classicalb.core.parser.node.Token;
 import de.be4.classicalb.core.parser.parser.Parser;
 import de.be4.classicalb.core.parser.parser.ParserException;
+import de.be4.classicalb.core.parser.util.MappedFileReader;
 import de.be4.classicalb.core.parser.util.Utils;
 
 public class BParser {
@@ -46,6 +48,14 @@ public class BParser {
 	public static final String OPERATION_PATTERN_PREFIX = "#OPPATTERN";
 	public static final String MACHINE_CLAUSE_PREFIX = "#MACHINECLAUSE";
 
+	/**
+	 * Machine files of at least this size are read through a memory mapping
+	 * instead of being loaded into a string first.
+	 * Mapping only pays off for large files,
+	 * and on Windows a mapped file can't be modified or deleted until the mapping has been garbage collected.
+	 */
+	private static final long MAPPED_INPUT_MIN_SIZE = 8L * 1024 * 1024;
+
 	private static final Properties buildProperties;
 	static {
 		buildProperties = new Properties();
@@ -147,6 +157,9 @@ public class BParser {
 	 * @see #parseMachine(String)
 	 */
 	public Start parseFile(File machineFile) throws BCompoundException {
+		if (machineFile.length() >= MAPPED_INPUT_MIN_SIZE) {
+			return parseMappedFile(machineFile);
+		}
 		String content;
 		try {
 			content = Utils.readFile(machineFile);
@@ -156,6 +169,14 @@ public class BParser {
 		return parseMachine(content, machineFile);
 	}
 
+	private Start parseMappedFile(File machineFile) throws BCompoundException {
+		try (MappedFileReader reader = new MappedFileReader(machineFile)) {
+			return parseMachine(reader, machineFile);
+		} catch (IOException e) {
+			throw new BCompoundException(new BException(machineFile.getPath(), e));
+		}
+	}
+
 	// Don't delete this deprecated method too soon!
 	// It was one of the main parser APIs for a long time.
 	/**
@@ -231,16 +252,23 @@ public class BParser {
 	}
 
 	private Start parseWithKindPrefix(String input, String prefix, boolean withPreParsing) throws BCompoundException {
+		return this.parseWithKindPrefix(input, prefix, withPreParsing ? null : new DefinitionTypes(definitions.getTypes()));
+	}
+
+	/**
+	 * @param defTypes the definition types to use for lexing, or {@code null} to determine them with the {@link PreParser}
+	 */
+	Start parseWithKindPrefix(String input, String prefix, DefinitionTypes defTypes) throws BCompoundException {
 		final String theFormula = prefix + " " + input;
 		final int oldStartColumn = this.startColumn;
 		try {
 			// Decrease the start column by the size of the implicitly added prefix
 			// so that the actual user input starts at the desired position.
 			this.startColumn -= prefix.length() + 1;
-			if (withPreParsing) {
+			if (defTypes == null) {
 				return this.parseMachine(theFormula);
 			} else {
-				return this.parseWithoutPreParsing(new StringReader(theFormula));
+				return this.parseInternal(new StringReader(theFormula), null, defTypes);
 			}
 		} finally {
 			this.startColumn = oldStartColumn;
@@ -271,6 +299,51 @@ public class BParser {
 		return this.parseWithKindPrefix(input, MACHINE_CLAUSE_PREFIX, true);
 	}
 
+	/**
+	 * Parses a single machine clause that is located at the given position of a machine,
+	 * using the definitions that are already known to this parser.
+	 */
+	Start parseMachineClauseAt(String input, int line, int column) throws BCompoundException {
+		final int oldStartLine = this.startLine;
+		final int oldStartColumn = this.startColumn;
+		try {
+			this.setStartPosition(line, column);
+			return this.parseWithKindPrefix(input, MACHINE_CLAUSE_PREFIX, new DefinitionTypes(definitions.getTypes()));
+		} finally {
+			this.setStartPosition(oldStartLine, oldStartColumn);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Updates the AST of a machine after a text edit,
+	 * re-parsing only the machine clause that contains the edit
+	 * and running the AST transformations and semantic checks only on the new clause.
+	 * If the edit is inside a single operation of an OPERATIONS or LOCAL_OPERATIONS clause,
+	 * only that operation is re-parsed.
+	 * The positions of all nodes after the edited clause are adjusted.
+	 * </p>
+	 * <p>
+	 * {@code previousAst} must have been returned by this parser for {@code previousInput},
+	 * so that the definitions of the machine are known.
+	 * Edits that touch the DEFINITIONS clause, span multiple clauses,
+	 * change the kind of the clause or make the clause unparsable can't be handled incrementally.
+	 * In that case {@code null} is returned, {@code previousAst} is left unchanged,
+	 * and the whole machine must be parsed again by a new parser,
+	 * which also reports any errors.
+	 * </p>
+	 *
+	 * @param previousAst AST of the machine before the edit, which is modified in place
+	 * @param previousInput B machine source code before the edit
+	 * @param offset start of the edited text in {@code previousInput}
+	 * @param length length of the replaced text
+	 * @param replacement new text that replaces the edited text
+	 * @return {@code previousAst} with the new clause or operation, or {@code null} if the edit can't be handled incrementally
+	 */
+	public Start reparseMachineClause(Start previousAst, String previousInput, int offset, int length, String replacement) {
+		return new ClauseReparser(this, this.startLine, this.startColumn, previousInput, offset, length, replacement).reparse(previousAst);
+	}
+
 	// Don't delete this deprecated method too soon!
 	// It was one of the main parser APIs for a long time.
 	/**
@@ -368,10 +441,6 @@ public class BParser {
 		return parseInternal(reader, machineFile, defTypes);
 	}
 
-	private Start parseWithoutPreParsing(Reader reader) throws BCompoundException {
-		return parseInternal(reader, null, new DefinitionTypes(definitions.getTypes()));
-	}
-
 	/**
 	 * Parses a complete B machine from a string.
 	 * {@code machineFile} indicates what file (if any) the source code string belongs to.
@@ -384,10 +453,14 @@ public class BParser {
 	 *     (see {@link BException} for details)
 	 */
 	Start parseMachine(String input, File machineFile) throws BCompoundException {
+		return parseMachine(new StringReader(input), machineFile);
+	}
+
+	private Start parseMachine(Reader reader, File machineFile) throws BCompoundException {
 		if (this.contentProvider == null) {
 			this.contentProvider = new CachingDefinitionFileProvider();
 		}
-		return parseWithPreParsing(new StringReader(input), machineFile, this.contentProvider);
+		return parseWithPreParsing(reader, machineFile, this.contentProvider);
 	}
 
 	/**
@@ -470,13 +543,13 @@ public class BParser {
 		// perform AST transformations that don't require definitions
 		// important for unquoting of definition identifiers before collecting them
 
-		// default transformations
-		rootNode.apply(new CoupleToIdentifierTransformation());
-
+		// default transformations, fused into a single traversal
 		try {
-			rootNode.apply(new SyntaxExtensionTranslator());
+			rootNode.apply(new SyntaxExtensionTranslator().addPreOrderPass(new CoupleToIdentifierTransformation.Lifter()));
 		} catch (VisitorException e) {
 			checkExceptions.add(e.getException());
+			// finish lifting identifiers in the rest of the tree, so that IdentListCheck doesn't report follow-up errors
+			rootNode.apply(new CoupleToIdentifierTransformation());
 		}
 
 		// Collect available definition declarations. Needs to be done now
@@ -498,8 +571,16 @@ public class BParser {
 				new DefinitionUsageCheck(getDefinitions()), new RefinedOperationCheck() };
 		// apply more checks?
 
+		// The checks don't modify the AST and each one collects its own errors,
+		// so they can run concurrently without changing the order of the reported errors.
+		if (parseOptions.isParallelSemanticChecks()) {
+			Arrays.stream(checks).parallel().forEach(check -> check.runChecks(rootNode));
+		} else {
+			for (SemanticCheck check : checks) {
+				check.runChecks(rootNode);
+			}
+		}
 		for (SemanticCheck check : checks) {
-			check.runChecks(rootNode);
 			checkExceptions.addAll(check.getCheckExceptions());
 		}
 
@@ -1,18 +1,32 @@
 package de.be4.classicalb.core.parser;
 
-import java.util.HashMap;
+import java.io.File;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CachingDefinitionFileProvider extends PlainFileContentProvider
 		implements IDefinitionFileProvider {
 
-	private final Map<String, IDefinitions> store = new HashMap<>();
+	// concurrent, because RecursiveMachineLoader may parse several machines at once
+	private final Map<String, IDefinitions> store = new ConcurrentHashMap<>();
+	private final DefinitionFileCache sharedCache;
 
 	/**
 	 * s. {@link PlainFileContentProvider#PlainFileContentProvider()}
 	 */
 	public CachingDefinitionFileProvider() {
+		this(null);
+	}
+
+	/**
+	 * Additionally looks up and stores definition files in the given cache,
+	 * which may be shared with other providers (e.g. {@link DefinitionFileCache#getShared()}).
+	 *
+	 * @param sharedCache the additional cache, or {@code null}
+	 */
+	public CachingDefinitionFileProvider(final DefinitionFileCache sharedCache) {
 		super();
+		this.sharedCache = sharedCache;
 	}
 
 	@Override
@@ -25,4 +39,21 @@ public class CachingDefinitionFileProvider extends PlainFileContentProvider
 			final IDefinitions definitions) {
 		store.put(fileName, definitions);
 	}
+
+	@Override
+	public IDefinitions getDefinitions(final File file, final String content, final ParseOptions options) {
+		if (sharedCache == null || file == null) {
+			return null;
+		}
+		return sharedCache.get(file, content, options);
+	}
+
+	@Override
+	public void storeDefinition(final String fileName, final File file, final String content,
+			final ParseOptions options, final IDefinitions definitions) {
+		storeDefinition(fileName, definitions);
+		if (sharedCache != null && file != null) {
+			sharedCache.put(file, content, options, definitions);
+		}
+	}
 }
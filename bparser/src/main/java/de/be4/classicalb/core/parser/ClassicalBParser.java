@@ -12,14 +12,39 @@ public class ClassicalBParser implements ProBParserBase {
 	private static final String WRAPPER_PRED = "bpred";
 	private static final String WRAPPER_TRANS = "bop";
 	
-	private final BParser bparser;
+	private final FormulaParsingSession session;
+	// true if the definitions may be modified by the caller at any time
+	private final boolean refreshDefinitions;
 	
 	public ClassicalBParser() {
-		this(new BParser());
+		this(new FormulaParsingSession());
 	}
 
+	/**
+	 * The definitions of {@code bparser} are looked up again for every formula.
+	 * Use {@link #ClassicalBParser(FormulaParsingSession)} to avoid this.
+	 *
+	 * @param bparser the parser to use
+	 */
 	public ClassicalBParser(final BParser bparser) {
-		this.bparser = bparser;
+		this.session = new FormulaParsingSession(bparser);
+		this.refreshDefinitions = true;
+	}
+
+	/**
+	 * @param session the session to use, changes to its definitions must be reported to it
+	 */
+	public ClassicalBParser(final FormulaParsingSession session) {
+		this.session = session;
+		this.refreshDefinitions = false;
+	}
+
+	private FormulaParsingSession session(int startLine, int startColumn) {
+		if (this.refreshDefinitions) {
+			this.session.definitionsChanged();
+		}
+		this.session.setStartPosition(startLine, startColumn);
+		return this.session;
 	}
 
 	@Override
@@ -30,9 +55,8 @@ public class ClassicalBParser implements ProBParserBase {
 	@Override
 	public void parseExpression(final IPrologTermOutput pto, final String expression, final boolean wrap, int startLine, int startColumn)
 			throws ProBParseException {
-		bparser.setStartPosition(startLine, startColumn);
 		try {
-			Start ast = bparser.parseExpression(expression);
+			Start ast = session(startLine, startColumn).parseExpression(expression);
 			printAst(pto, ast, wrap, WRAPPER_EXPR);
 		} catch (BCompoundException e) {
 			throw new ProBParseException(e.getFirstException().getMessage(), e);
@@ -47,9 +71,8 @@ public class ClassicalBParser implements ProBParserBase {
 	@Override
 	public void parsePredicate(final IPrologTermOutput pto, final String predicate, final boolean wrap, int startLine, int startColumn)
 			throws ProBParseException {
-		bparser.setStartPosition(startLine, startColumn);
 		try {
-			Start ast = bparser.parsePredicate(predicate);
+			Start ast = session(startLine, startColumn).parsePredicate(predicate);
 			printAst(pto, ast, wrap, WRAPPER_PRED);
 		} catch (BCompoundException e) {
 			throw new ProBParseException(e.getFirstException().getMessage(), e);
@@ -64,9 +87,8 @@ public class ClassicalBParser implements ProBParserBase {
 	@Override
 	public void parseTransitionPredicate(final IPrologTermOutput pto, final String trans, final boolean wrap, int startLine, int startColumn)
 			throws ProBParseException {
-		bparser.setStartPosition(startLine, startColumn);
 		try {
-			Start ast = bparser.parseTransition(trans);
+			Start ast = session(startLine, startColumn).parseTransition(trans);
 			printAst(pto, ast, wrap, WRAPPER_TRANS);
 		} catch (BCompoundException e) {
 			throw new ProBParseException(e.getFirstException().getMessage(), e);
@@ -0,0 +1,249 @@
+package de.be4.classicalb.core.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.be4.classicalb.core.parser.analysis.DepthFirstAdapter;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.AAbstractMachineParseUnit;
+import de.be4.classicalb.core.parser.node.ADefinitionsMachineClause;
+import de.be4.classicalb.core.parser.node.AImplementationMachineParseUnit;
+import de.be4.classicalb.core.parser.node.ALocalOperationsMachineClause;
+import de.be4.classicalb.core.parser.node.AMachineClauseParseUnit;
+import de.be4.classicalb.core.parser.node.AOperationsMachineClause;
+import de.be4.classicalb.core.parser.node.ARefinementMachineParseUnit;
+import de.be4.classicalb.core.parser.node.Node;
+import de.be4.classicalb.core.parser.node.PMachineClause;
+import de.be4.classicalb.core.parser.node.POperation;
+import de.be4.classicalb.core.parser.node.PParseUnit;
+import de.be4.classicalb.core.parser.node.Start;
+import de.be4.classicalb.core.parser.node.Token;
+import de.hhu.stups.sablecc.patch.SourcePosition;
+
+/**
+ * Applies a text edit to the AST of a machine by re-parsing only the machine clause,
+ * or the operation in an OPERATIONS/LOCAL_OPERATIONS clause, that contains the edit.
+ * See {@link BParser#reparseMachineClause(Start, String, int, int, String)}.
+ */
+final class ClauseReparser {
+	private static final String OPERATIONS_PREFIX = "OPERATIONS ";
+	private static final String LOCAL_OPERATIONS_PREFIX = "LOCAL_OPERATIONS ";
+
+	private final BParser parser;
+	private final String previousInput;
+	private final String newInput;
+	private final int offset;
+	private final int length;
+	private final int delta;
+	private final List<Integer> lineStarts;
+	private final int startLine;
+	private final int startColumn;
+
+	ClauseReparser(BParser parser, int startLine, int startColumn, String previousInput, int offset, int length, String replacement) {
+		this.parser = parser;
+		this.previousInput = previousInput;
+		this.newInput = previousInput.substring(0, offset) + replacement + previousInput.substring(offset + length);
+		this.offset = offset;
+		this.length = length;
+		this.delta = replacement.length() - length;
+		this.lineStarts = findLineStarts(previousInput);
+		this.startLine = startLine;
+		this.startColumn = startColumn;
+	}
+
+	/**
+	 * @param previousAst the AST of the input before the edit, which is modified in place
+	 * @return {@code previousAst}, or {@code null} if the edit could not be applied to a single clause or operation
+	 */
+	Start reparse(Start previousAst) {
+		final List<PMachineClause> clauses = getMachineClauses(previousAst.getPParseUnit());
+		if (clauses == null) {
+			return null;
+		}
+		final PMachineClause clause = findContainingNode(clauses);
+		// definitions influence how the rest of the machine is lexed
+		if (clause == null || clause instanceof ADefinitionsMachineClause) {
+			return null;
+		}
+
+		if (clause instanceof AOperationsMachineClause || clause instanceof ALocalOperationsMachineClause) {
+			final String prefix = clause instanceof AOperationsMachineClause ? OPERATIONS_PREFIX : LOCAL_OPERATIONS_PREFIX;
+			final List<POperation> operations = clause instanceof AOperationsMachineClause
+				? ((AOperationsMachineClause) clause).getOperations()
+				: ((ALocalOperationsMachineClause) clause).getOperations();
+			final POperation operation = findContainingNode(operations);
+			if (operation != null) {
+				final PMachineClause newClause = parseFragment(operation, prefix);
+				if (newClause != null && newClause.getClass() == clause.getClass()) {
+					final List<POperation> newOperations = newClause instanceof AOperationsMachineClause
+						? ((AOperationsMachineClause) newClause).getOperations()
+						: ((ALocalOperationsMachineClause) newClause).getOperations();
+					if (newOperations.size() == 1) {
+						replace(previousAst, operation, newOperations.get(0));
+						return previousAst;
+					}
+				}
+			}
+		}
+
+		final PMachineClause newClause = parseFragment(clause, "");
+		if (newClause == null || newClause.getClass() != clause.getClass()) {
+			return null;
+		}
+		replace(previousAst, clause, newClause);
+		return previousAst;
+	}
+
+	private static List<PMachineClause> getMachineClauses(final PParseUnit parseUnit) {
+		if (parseUnit instanceof AAbstractMachineParseUnit) {
+			return ((AAbstractMachineParseUnit) parseUnit).getMachineClauses();
+		} else if (parseUnit instanceof ARefinementMachineParseUnit) {
+			return ((ARefinementMachineParseUnit) parseUnit).getMachineClauses();
+		} else if (parseUnit instanceof AImplementationMachineParseUnit) {
+			return ((AImplementationMachineParseUnit) parseUnit).getMachineClauses();
+		} else {
+			return null;
+		}
+	}
+
+	private <T extends Node> T findContainingNode(final List<T> nodes) {
+		for (final T node : nodes) {
+			final int start = toOffset(node.getStartPos());
+			final int end = toOffset(node.getEndPos());
+			if (start >= 0 && end >= 0 && start <= offset && offset + length <= end) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses the new text of the given node as a single machine clause at the node's original position.
+	 *
+	 * @param node the node that contains the edit
+	 * @param prefix the clause keyword to parse the node's text with, or an empty string if the node is a clause itself
+	 * @return the parsed clause, or {@code null} if the new text could not be parsed
+	 */
+	private PMachineClause parseFragment(final Node node, final String prefix) {
+		final SourcePosition startPos = node.getStartPos();
+		final int start = toOffset(startPos);
+		final int end = toOffset(node.getEndPos()) + delta;
+		final Start fragment;
+		try {
+			fragment = parser.parseMachineClauseAt(prefix + newInput.substring(start, end), startPos.getLine(), startPos.getPos() - prefix.length());
+		} catch (BCompoundException e) {
+			// The whole machine has to be parsed again,
+			// which also reports the error in the correct context.
+			return null;
+		}
+		return ((AMachineClauseParseUnit) fragment.getPParseUnit()).getMachineClause();
+	}
+
+	private void replace(final Start ast, final Node oldNode, final Node newNode) {
+		final SourcePosition oldEnd = oldNode.getEndPos();
+		final SourcePosition newEnd = advance(oldNode.getStartPos(), toOffset(oldNode.getStartPos()), toOffset(oldEnd) + delta);
+		if (oldEnd.getLine() != newEnd.getLine() || oldEnd.getPos() != newEnd.getPos()) {
+			// everything after the edited node is still at its old position
+			ast.apply(new PositionShifter(oldEnd, newEnd));
+		}
+		oldNode.replaceBy(newNode);
+	}
+
+	/**
+	 * Line breaks are counted like the SableCC lexer does: {@code \r\n} is a single line break.
+	 */
+	private static List<Integer> findLineStarts(final String input) {
+		final List<Integer> lineStarts = new ArrayList<>();
+		lineStarts.add(0);
+		for (int i = 0; i < input.length(); i++) {
+			final char c = input.charAt(i);
+			if (c == '\r' || c == '\n' && (i == 0 || input.charAt(i - 1) != '\r')) {
+				lineStarts.add(i + 1);
+			} else if (c == '\n') {
+				lineStarts.set(lineStarts.size() - 1, i + 1);
+			}
+		}
+		return lineStarts;
+	}
+
+	private int toOffset(final SourcePosition pos) {
+		if (pos == null) {
+			return -1;
+		}
+		final int lineIndex = pos.getLine() - startLine;
+		if (lineIndex < 0 || lineIndex >= lineStarts.size()) {
+			return -1;
+		}
+		final int offsetInLine = pos.getPos() - (lineIndex == 0 ? startColumn : 1);
+		final int result = lineStarts.get(lineIndex) + offsetInLine;
+		return result <= previousInput.length() ? result : -1;
+	}
+
+	/**
+	 * @return the position of {@code newInput} at offset {@code to}, given the position at offset {@code from}
+	 */
+	private SourcePosition advance(final SourcePosition pos, final int from, final int to) {
+		int line = pos.getLine();
+		int column = pos.getPos();
+		for (int i = from; i < to; i++) {
+			final char c = newInput.charAt(i);
+			if (c == '\r' || c == '\n' && (i == 0 || newInput.charAt(i - 1) != '\r')) {
+				line++;
+				column = 1;
+			} else if (c != '\n') {
+				column++;
+			}
+		}
+		return new SourcePosition(line, column);
+	}
+
+	/**
+	 * Moves all positions at or after the end of the edited node to where they are after the edit.
+	 */
+	private static final class PositionShifter extends DepthFirstAdapter {
+		private final SourcePosition oldEnd;
+		private final SourcePosition newEnd;
+
+		PositionShifter(final SourcePosition oldEnd, final SourcePosition newEnd) {
+			this.oldEnd = oldEnd;
+			this.newEnd = newEnd;
+		}
+
+		private boolean isAffected(final int line, final int column) {
+			return line > oldEnd.getLine() || line == oldEnd.getLine() && column >= oldEnd.getPos();
+		}
+
+		private int shiftLine(final int line) {
+			return line + newEnd.getLine() - oldEnd.getLine();
+		}
+
+		private int shiftColumn(final int line, final int column) {
+			return line == oldEnd.getLine() ? column - oldEnd.getPos() + newEnd.getPos() : column;
+		}
+
+		private SourcePosition shift(final SourcePosition pos) {
+			if (pos == null || !isAffected(pos.getLine(), pos.getPos())) {
+				return pos;
+			}
+			return new SourcePosition(shiftLine(pos.getLine()), shiftColumn(pos.getLine(), pos.getPos()));
+		}
+
+		@Override
+		public void defaultIn(final Node node) {
+			node.setStartPos(shift(node.getStartPos()));
+			node.setEndPos(shift(node.getEndPos()));
+		}
+
+		@Override
+		public void defaultCase(final Node node) {
+			if (node instanceof Token) {
+				final Token token = (Token) node;
+				if (isAffected(token.getLine(), token.getPos())) {
+					final int line = token.getLine();
+					token.setLine(shiftLine(line));
+					token.setPos(shiftColumn(line, token.getPos()));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package de.be4.classicalb.core.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded cache of parsed definition files, which can be shared by all parsers of a process
+ * (see {@link #getShared()} and {@link CachingDefinitionFileProvider#CachingDefinitionFileProvider(DefinitionFileCache)}).
+ * <p>
+ * Entries are identified by the canonical path, the modification time and a hash of the content of the file,
+ * so that a modified file is parsed again, and by the {@link ParseOptions} the file has been parsed with.
+ * An entry is also discarded if one of the definition files included by the cached file has been modified since.
+ * If the cache is full, the least recently used entry is removed.
+ * <p>
+ * Parsers modify the definitions they use (e.g. when the type of a definition is resolved, or when the definition nodes
+ * are added to the AST of a machine). Therefore the cache stores a copy of the definitions
+ * and every lookup returns a new {@link IDefinitions#copy() copy}, which is still much cheaper than parsing the file again.
+ */
+public final class DefinitionFileCache {
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	private static final DefinitionFileCache SHARED = new DefinitionFileCache(DEFAULT_MAX_ENTRIES);
+
+	private final Map<Key, Entry> entries;
+
+	public DefinitionFileCache(final int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+		}
+		this.entries = Collections.synchronizedMap(new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		});
+	}
+
+	/**
+	 * @return the cache shared by all parsers of this process
+	 */
+	public static DefinitionFileCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * @param file the definition file
+	 * @param content the current content of the file
+	 * @param options the options the file would be parsed with
+	 * @return a copy of the cached definitions, or {@code null} if the file has not been cached or has been modified since
+	 */
+	public IDefinitions get(final File file, final String content, final ParseOptions options) {
+		final Key key = new Key(file, content, options);
+		final Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (!entry.isUpToDate()) {
+			entries.remove(key, entry);
+			return null;
+		}
+		return entry.definitions.copy();
+	}
+
+	/**
+	 * @param file the definition file
+	 * @param content the content of the file that has been parsed
+	 * @param options the options the file has been parsed with
+	 * @param definitions the definitions parsed from the content, a copy of them is stored
+	 */
+	public void put(final File file, final String content, final ParseOptions options, final IDefinitions definitions) {
+		entries.put(new Key(file, content, options), new Entry(definitions.copy()));
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	private static String canonicalPath(final File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+
+	private static final class Key {
+		private final String path;
+		private final long lastModified;
+		private final int contentLength;
+		private final int contentHash;
+		private final List<Object> options;
+
+		Key(final File file, final String content, final ParseOptions options) {
+			this.path = canonicalPath(file);
+			this.lastModified = file.lastModified();
+			this.contentLength = content.length();
+			this.contentHash = content.hashCode();
+			// a snapshot, because the options can be changed after parsing
+			this.options = Arrays.asList(
+				options.isStrictPragmaChecking(),
+				options.isIgnoreCheckingValidCombinations(),
+				options.isApplyASTTransformations(),
+				options.isParallelDefinitionTyping(),
+				options.isParallelSemanticChecks(),
+				options.getGrammar().getClass()
+			);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return this.lastModified == other.lastModified
+				&& this.contentLength == other.contentLength
+				&& this.contentHash == other.contentHash
+				&& this.path.equals(other.path)
+				&& this.options.equals(other.options);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, lastModified, contentLength, contentHash, options);
+		}
+	}
+
+	private static final class Entry {
+		private final IDefinitions definitions;
+		// modification times of all files that contributed definitions, including nested definition files
+		private final Map<File, Long> lastModified;
+
+		Entry(final IDefinitions definitions) {
+			this.definitions = definitions;
+			this.lastModified = new HashMap<>();
+			for (final String name : definitions.getDefinitionNames()) {
+				final File file = definitions.getFile(name);
+				if (file != null) {
+					this.lastModified.computeIfAbsent(file, File::lastModified);
+				}
+			}
+		}
+
+		boolean isUpToDate() {
+			for (final Map.Entry<File, Long> e : lastModified.entrySet()) {
+				if (e.getKey().lastModified() != e.getValue()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
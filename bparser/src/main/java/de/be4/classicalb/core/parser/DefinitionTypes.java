@@ -1,9 +1,13 @@
 package de.be4.classicalb.core.parser;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The types of definitions as needed by the {@link BLexer}.
+ * Typings can be added while other threads are lexing with the same instance.
+ */
 public final class DefinitionTypes {
 	private final Map<String, Definitions.Type> types;
 
@@ -12,7 +16,7 @@ public final class DefinitionTypes {
 	}
 
 	public DefinitionTypes(final Map<String, Definitions.Type> newTypes) {
-		this.types = new HashMap<>();
+		this.types = new ConcurrentHashMap<>();
 		newTypes.forEach(this::addTyping);
 	}
 
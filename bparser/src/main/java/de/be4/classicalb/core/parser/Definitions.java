@@ -1,22 +1,34 @@
 package de.be4.classicalb.core.parser;
 
 import java.io.File;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import de.be4.classicalb.core.parser.analysis.DepthFirstAdapter;
 import de.be4.classicalb.core.parser.analysis.prolog.INodeIds;
 import de.be4.classicalb.core.parser.exceptions.PreParseException;
 import de.be4.classicalb.core.parser.node.AExpressionDefinitionDefinition;
 import de.be4.classicalb.core.parser.node.APredicateDefinitionDefinition;
 import de.be4.classicalb.core.parser.node.ASubstitutionDefinitionDefinition;
+import de.be4.classicalb.core.parser.node.Node;
 import de.be4.classicalb.core.parser.node.PDefinition;
 import de.hhu.stups.sablecc.patch.SourcePosition;
 
+/**
+ * The definitions of a machine or definition file, including the definitions of referenced definition files.
+ * <p>
+ * Lookups use an index from every visible definition name to the {@link IDefinitions} that declares it.
+ * The index is built on first use and rebuilt after definitions have been added to this instance.
+ * Referenced definitions must not get new definitions after they have been added with {@link #addDefinitions(IDefinitions)}.
+ */
 public class Definitions extends IDefinitions {
 
 	private final Map<String, PDefinition> definitionsMap = new HashMap<>();
@@ -24,6 +36,9 @@ public class Definitions extends IDefinitions {
 	private final List<IDefinitions> referencedDefinitions = new ArrayList<>();
 	private final File file;
 
+	// maps each visible definition name to the declaring definitions, null if it has to be rebuilt
+	private volatile Map<String, IDefinitions> index;
+
 	public Definitions() {
 		this.file = null;
 	}
@@ -32,13 +47,45 @@ public class Definitions extends IDefinitions {
 		this.file = file;
 	}
 
-	@Override
-	public Map<String, Type> getTypes() {
-		final Map<String, Type> map = new HashMap<>(types);
+	private Map<String, IDefinitions> getIndex() {
+		Map<String, IDefinitions> currentIndex = this.index;
+		if (currentIndex == null) {
+			currentIndex = new HashMap<>();
+			addToIndex(currentIndex);
+			this.index = currentIndex;
+		}
+		return currentIndex;
+	}
+
+	private void addToIndex(final Map<String, IDefinitions> newIndex) {
+		for (String name : definitionsMap.keySet()) {
+			newIndex.putIfAbsent(name, this);
+		}
 		for (IDefinitions definitions : referencedDefinitions) {
-			map.putAll(definitions.getTypes());
+			if (definitions instanceof Definitions) {
+				((Definitions) definitions).addToIndex(newIndex);
+			} else {
+				for (String name : definitions.getDefinitionNames()) {
+					newIndex.putIfAbsent(name, definitions);
+				}
+			}
+		}
+	}
+
+	private IDefinitions getDeclaringDefinitions(final String defName) {
+		final IDefinitions declaring = getIndex().get(defName);
+		if (declaring == null) {
+			throw new NoSuchElementException(getErrorMessageDefinitionDoesNotExist(defName));
 		}
-		return map;
+		return declaring;
+	}
+
+	/**
+	 * @return an unmodifiable view of the types of all visible definitions
+	 */
+	@Override
+	public Map<String, Type> getTypes() {
+		return new TypesView(getIndex());
 	}
 
 	@Override
@@ -59,44 +106,36 @@ public class Definitions extends IDefinitions {
 		}
 	}
 
-	@Override
-	public Type getType(final String defName) {
-		if (types.containsKey(defName)) {
-			return types.get(defName);
-		}
-
-		for (IDefinitions definitions : this.referencedDefinitions) {
-			final Type type = definitions.getType(defName);
-			if (type != Type.NoDefinition) {
-				return type;
-			}
+	private static Type getType(final IDefinitions declaring, final String defName) {
+		if (declaring instanceof Definitions) {
+			return ((Definitions) declaring).types.get(defName);
+		} else {
+			return declaring.getType(defName);
 		}
+	}
 
-		return Type.NoDefinition;
+	@Override
+	public Type getType(final String defName) {
+		final IDefinitions declaring = getIndex().get(defName);
+		return declaring == null ? Type.NoDefinition : getType(declaring, defName);
 	}
 
+	/**
+	 * @return an unmodifiable view of the names of all visible definitions
+	 */
 	@Override
 	public Set<String> getDefinitionNames() {
-		Set<String> resultSet = new HashSet<>(definitionsMap.keySet());
-		for (IDefinitions iDefinitions : referencedDefinitions) {
-			resultSet.addAll(iDefinitions.getDefinitionNames());
-		}
-		return resultSet;
+		return Collections.unmodifiableSet(getIndex().keySet());
 	}
 
 	@Override
 	public PDefinition getDefinition(final String defName) {
-		if (definitionsMap.containsKey(defName)) {
-			return definitionsMap.get(defName);
-		}
-
-		for (IDefinitions iDefinitions : referencedDefinitions) {
-			if (iDefinitions.containsDefinition(defName)) {
-				return iDefinitions.getDefinition(defName);
-			}
+		final IDefinitions declaring = getDeclaringDefinitions(defName);
+		if (declaring instanceof Definitions) {
+			return ((Definitions) declaring).definitionsMap.get(defName);
+		} else {
+			return declaring.getDefinition(defName);
 		}
-
-		throw new NoSuchElementException(getErrorMessageDefinitionDoesNotExist(defName));
 	}
 
 	private static String getErrorMessageDefinitionDoesNotExist(String defName) {
@@ -105,51 +144,28 @@ public class Definitions extends IDefinitions {
 
 	@Override
 	public File getFile(final String defName) {
-		if (definitionsMap.containsKey(defName)) {
-			return this.file;
-		}
-
-		for (IDefinitions iDefinitions : referencedDefinitions) {
-			if (iDefinitions.containsDefinition(defName)) {
-				return iDefinitions.getFile(defName);
-			}
+		final IDefinitions declaring = getDeclaringDefinitions(defName);
+		if (declaring instanceof Definitions) {
+			return ((Definitions) declaring).file;
+		} else {
+			return declaring.getFile(defName);
 		}
-
-		throw new NoSuchElementException(getErrorMessageDefinitionDoesNotExist(defName));
 	}
 
 	@Override
 	public boolean containsDefinition(String defName) {
-		if (definitionsMap.containsKey(defName)) {
-			return true;
-		}
-
-		for (IDefinitions iDefinitions : referencedDefinitions) {
-			if (iDefinitions.containsDefinition(defName)) {
-				iDefinitions.getDefinition(defName);
-				return true;
-			}
-		}
-
-		return false;
+		return getIndex().containsKey(defName);
 	}
 
 	@Override
 	public void replaceDefinition(final String defName, final Type type, final PDefinition node) {
-		if (types.containsKey(defName)) {
-			types.put(defName, type);
-			definitionsMap.put(defName, node);
-			return;
-		}
-
-		for (IDefinitions iDefinitions : referencedDefinitions) {
-			if (iDefinitions.containsDefinition(defName)) {
-				iDefinitions.replaceDefinition(defName, type, node);
-				return;
-			}
+		final IDefinitions declaring = getDeclaringDefinitions(defName);
+		if (declaring instanceof Definitions) {
+			((Definitions) declaring).types.put(defName, type);
+			((Definitions) declaring).definitionsMap.put(defName, node);
+		} else {
+			declaring.replaceDefinition(defName, type, node);
 		}
-
-		throw new NoSuchElementException(getErrorMessageDefinitionDoesNotExist(defName));
 	}
 
 	@Override
@@ -166,6 +182,7 @@ public class Definitions extends IDefinitions {
 			}
 		}
 		referencedDefinitions.add(defs);
+		index = null;
 	}
 
 	@Override
@@ -175,6 +192,7 @@ public class Definitions extends IDefinitions {
 		}
 		definitionsMap.put(defName, defNode);
 		types.put(defName, type);
+		index = null;
 	}
 
 	@Override
@@ -198,4 +216,98 @@ public class Definitions extends IDefinitions {
 		}
 	}
 
+	@Override
+	public Definitions copy() {
+		final Definitions copy = new Definitions(this.file);
+		for (Map.Entry<String, PDefinition> entry : definitionsMap.entrySet()) {
+			copy.definitionsMap.put(entry.getKey(), copyWithPositions(entry.getValue()));
+		}
+		copy.types.putAll(this.types);
+		for (IDefinitions definitions : referencedDefinitions) {
+			copy.referencedDefinitions.add(definitions.copy());
+		}
+		return copy;
+	}
+
+	/**
+	 * {@link Node#clone()} only keeps the positions of the tokens, so the positions of the other nodes are copied afterwards.
+	 */
+	private static PDefinition copyWithPositions(final PDefinition definition) {
+		final PDefinition copy = definition.clone();
+		final List<Node> originalNodes = collectNodes(definition);
+		final List<Node> copiedNodes = collectNodes(copy);
+		for (int i = 0; i < originalNodes.size(); i++) {
+			final Node original = originalNodes.get(i);
+			final Node copied = copiedNodes.get(i);
+			copied.setStartPos(original.getStartPos());
+			copied.setEndPos(original.getEndPos());
+		}
+		return copy;
+	}
+
+	private static List<Node> collectNodes(final Node node) {
+		final List<Node> nodes = new ArrayList<>();
+		node.apply(new DepthFirstAdapter() {
+			@Override
+			public void defaultIn(final Node n) {
+				nodes.add(n);
+			}
+		});
+		return nodes;
+	}
+
+	/**
+	 * Resolves the types through the index when they are accessed,
+	 * so that types changed by {@link #replaceDefinition(String, Type, PDefinition)} are seen.
+	 */
+	private static final class TypesView extends AbstractMap<String, Type> {
+		private final Map<String, IDefinitions> index;
+
+		TypesView(final Map<String, IDefinitions> index) {
+			this.index = index;
+		}
+
+		@Override
+		public Type get(final Object key) {
+			final IDefinitions declaring = index.get(key);
+			return declaring == null ? null : getType(declaring, (String) key);
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			return index.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return index.size();
+		}
+
+		@Override
+		public Set<Entry<String, Type>> entrySet() {
+			return new AbstractSet<Entry<String, Type>>() {
+				@Override
+				public Iterator<Entry<String, Type>> iterator() {
+					final Iterator<Entry<String, IDefinitions>> it = index.entrySet().iterator();
+					return new Iterator<Entry<String, Type>>() {
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Entry<String, Type> next() {
+							final Entry<String, IDefinitions> next = it.next();
+							return new SimpleImmutableEntry<>(next.getKey(), getType(next.getValue(), next.getKey()));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return index.size();
+				}
+			};
+		}
+	}
 }
@@ -0,0 +1,95 @@
+package de.be4.classicalb.core.parser;
+
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.Start;
+
+/**
+ * Parses many formulas with the same definitions.
+ * <p>
+ * The definition types that the lexer needs are determined once and reused
+ * for every formula, instead of being copied from the definitions for every
+ * call as in {@link BParser#parseExpression(String)} etc. If the definitions
+ * are changed, {@link #definitionsChanged()} must be called (or the new
+ * definitions must be set with {@link #setDefinitions(IDefinitions)}).
+ * <p>
+ * A session is not thread-safe. Use {@link #fork()} to get a session for
+ * another thread that shares the definition types, but has its own copy of the definitions.
+ */
+public final class FormulaParsingSession {
+	private final BParser parser;
+	private DefinitionTypes definitionTypes;
+
+	public FormulaParsingSession() {
+		this(new BParser());
+	}
+
+	public FormulaParsingSession(final BParser parser) {
+		this.parser = parser;
+		this.definitionTypes = null;
+	}
+
+	public BParser getParser() {
+		return this.parser;
+	}
+
+	public void setDefinitions(final IDefinitions definitions) {
+		this.parser.setDefinitions(definitions);
+		this.definitionsChanged();
+	}
+
+	/**
+	 * Must be called after the definitions of the parser have been modified.
+	 */
+	public void definitionsChanged() {
+		this.definitionTypes = null;
+	}
+
+	/**
+	 * @see BParser#setStartPosition(int, int)
+	 */
+	public void setStartPosition(final int line, final int column) {
+		this.parser.setStartPosition(line, column);
+	}
+
+	/**
+	 * Creates a new session with a copy of the definitions and the same parse options, which can be used concurrently to this one.
+	 * The start position is not copied.
+	 *
+	 * @return the new session
+	 */
+	public FormulaParsingSession fork() {
+		final FormulaParsingSession forked = new FormulaParsingSession(new BParser(this.parser.getFileName(), this.parser.getOptions()));
+		// the AST transformations modify the definitions (e.g. when resolving the type of a definition)
+		forked.parser.setDefinitions(this.parser.getDefinitions().copy());
+		// the definition types are only read while lexing, so they can be shared
+		forked.definitionTypes = this.getDefinitionTypes();
+		return forked;
+	}
+
+	private DefinitionTypes getDefinitionTypes() {
+		if (this.definitionTypes == null) {
+			this.definitionTypes = new DefinitionTypes(this.parser.getDefinitions().getTypes());
+		}
+		return this.definitionTypes;
+	}
+
+	public Start parseFormula(final String input) throws BCompoundException {
+		return this.parser.parseWithKindPrefix(input, BParser.FORMULA_PREFIX, this.getDefinitionTypes());
+	}
+
+	public Start parseExpression(final String input) throws BCompoundException {
+		return this.parser.parseWithKindPrefix(input, BParser.EXPRESSION_PREFIX, this.getDefinitionTypes());
+	}
+
+	public Start parsePredicate(final String input) throws BCompoundException {
+		return this.parser.parseWithKindPrefix(input, BParser.PREDICATE_PREFIX, this.getDefinitionTypes());
+	}
+
+	public Start parseSubstitution(final String input) throws BCompoundException {
+		return this.parser.parseWithKindPrefix(input, BParser.SUBSTITUTION_PREFIX, this.getDefinitionTypes());
+	}
+
+	public Start parseTransition(final String input) throws BCompoundException {
+		return this.parser.parseWithKindPrefix(input, BParser.OPERATION_PATTERN_PREFIX, this.getDefinitionTypes());
+	}
+}
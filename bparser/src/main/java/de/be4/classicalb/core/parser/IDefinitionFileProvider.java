@@ -1,5 +1,7 @@
 package de.be4.classicalb.core.parser;
 
+import java.io.File;
+
 public interface IDefinitionFileProvider extends IFileContentProvider {
 	/**
 	 * Returns already parsed definitions for the parameter (file reference) if
@@ -19,4 +21,32 @@ public interface IDefinitionFileProvider extends IFileContentProvider {
 	 * @param definitions	the definitions to be stored
 	 */
 	void storeDefinition(final String fileName, final IDefinitions definitions);
+
+	/**
+	 * Returns already parsed definitions for a file whose location and content
+	 * are known. This is asked if {@link #getDefinitions(String)} returned
+	 * <code>null</code>, and allows caches that are not bound to a single
+	 * machine and recognise modified files.
+	 * 
+	 * @param file the resolved input file
+	 * @param content the current content of the file
+	 * @param options the options the file would be parsed with
+	 * @return the already parsed definitions or <code>null</code>
+	 */
+	default IDefinitions getDefinitions(final File file, final String content, final ParseOptions options) {
+		return null;
+	}
+
+	/**
+	 * Stores the definitions parsed from the given file and content in cache.
+	 * 
+	 * @param fileName name of an input file
+	 * @param file the resolved input file
+	 * @param content the content of the file that has been parsed
+	 * @param options the options the file has been parsed with
+	 * @param definitions the definitions to be stored
+	 */
+	default void storeDefinition(final String fileName, final File file, final String content, final ParseOptions options, final IDefinitions definitions) {
+		storeDefinition(fileName, definitions);
+	}
 }
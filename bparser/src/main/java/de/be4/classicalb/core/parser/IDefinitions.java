@@ -67,4 +67,12 @@ public abstract class IDefinitions {
 
 	public abstract File getFile(String defName);
 
+	/**
+	 * Creates a deep copy of these definitions, including the definitions of referenced definition files.
+	 * The copy can be modified (e.g. by the AST transformations of a parser) without affecting these definitions.
+	 *
+	 * @return the copy
+	 */
+	public abstract IDefinitions copy();
+
 }
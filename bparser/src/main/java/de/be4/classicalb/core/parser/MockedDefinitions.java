@@ -96,4 +96,12 @@ public class MockedDefinitions extends IDefinitions {
 	public File getFile(String defName) {
 		throw new UnsupportedOperationException();
 	}
+
+	@Override
+	public MockedDefinitions copy() {
+		final MockedDefinitions copy = new MockedDefinitions();
+		copy.types.putAll(this.types);
+		copy.arity.putAll(this.arity);
+		return copy;
+	}
 }
@@ -22,6 +22,20 @@ public class ParseOptions {
 	 */
 	private boolean applyASTTransformations = true;
 
+	/**
+	 * if true, the pre-parser determines the types of definitions that do not depend on each other in parallel.
+	 * <br>
+	 * only worthwhile for inputs with a large number of definitions.
+	 */
+	private boolean parallelDefinitionTyping = false;
+
+	/**
+	 * if true, the semantic checks that are run after the AST transformations are run in parallel.
+	 * <br>
+	 * the checks only read the AST, and their errors are still reported in the same order.
+	 */
+	private boolean parallelSemanticChecks = false;
+
 	private IGrammar grammar = new DefaultGrammar();
 
 	public IGrammar getGrammar() {
@@ -55,4 +69,20 @@ public class ParseOptions {
 	public void setApplyASTTransformations(boolean applyASTTransformations) {
 		this.applyASTTransformations = applyASTTransformations;
 	}
+
+	public boolean isParallelDefinitionTyping() {
+		return parallelDefinitionTyping;
+	}
+
+	public void setParallelDefinitionTyping(boolean parallelDefinitionTyping) {
+		this.parallelDefinitionTyping = parallelDefinitionTyping;
+	}
+
+	public boolean isParallelSemanticChecks() {
+		return parallelSemanticChecks;
+	}
+
+	public void setParallelSemanticChecks(boolean parallelSemanticChecks) {
+		this.parallelSemanticChecks = parallelSemanticChecks;
+	}
 }
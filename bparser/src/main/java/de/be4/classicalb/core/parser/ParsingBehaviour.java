@@ -10,11 +10,58 @@ public class ParsingBehaviour {
 	private boolean fastPrologOutput = false; // -fastprolog flag in CliBParser
 	private boolean swiSupport = false; // -swi flag in CliBParser
 	private boolean compactPositions = true; // false means use old style pos/5 positions
+	private boolean positionTable = false; // print positions as indices into position_table/2 facts, -postable flag in CliBParser
 	private boolean machineNameMustMatchFileName = false; // -checkname flag in CliBParser
+	private boolean parallelLoading = false; // parse referenced machines in parallel, -parallel flag in CliBParser
+	private boolean parallelDefinitionTyping = false; // type independent definitions in parallel, -paralleldefs flag in CliBParser
+	private boolean parallelSemanticChecks = false; // run the semantic checks in parallel, -parallelchecks flag in CliBParser
+	private String cacheDirectory = null; // directory for cached Prolog output, -cache flag in CliBParser
+	private boolean streamingOutput = false; // print each machine as soon as it is loaded, -stream flag in CliBParser
+	private String diagnosticsTag = ""; // added to debug and timing messages to tell the prepl clients apart, see -multiclient in CliBParser
 	private int defaultFileNumber = -1;
 	private int startLineNumber = 1;
 	private int startColumnNumber = 1;
 
+	public ParsingBehaviour() {
+	}
+
+	/**
+	 * Creates a copy of the given options, e.g. for a separate prepl client.
+	 *
+	 * @param other the options to copy
+	 */
+	public ParsingBehaviour(ParsingBehaviour other) {
+		this.prologOutput = other.prologOutput;
+		this.addLineNumbers = other.addLineNumbers;
+		this.verbose = other.verbose;
+		this.printTime = other.printTime;
+		this.prettyPrintB = other.prettyPrintB;
+		this.fastPrologOutput = other.fastPrologOutput;
+		this.swiSupport = other.swiSupport;
+		this.compactPositions = other.compactPositions;
+		this.positionTable = other.positionTable;
+		this.machineNameMustMatchFileName = other.machineNameMustMatchFileName;
+		this.parallelLoading = other.parallelLoading;
+		this.parallelDefinitionTyping = other.parallelDefinitionTyping;
+		this.parallelSemanticChecks = other.parallelSemanticChecks;
+		this.cacheDirectory = other.cacheDirectory;
+		this.streamingOutput = other.streamingOutput;
+		this.diagnosticsTag = other.diagnosticsTag;
+		this.defaultFileNumber = other.defaultFileNumber;
+		this.startLineNumber = other.startLineNumber;
+		this.startColumnNumber = other.startColumnNumber;
+	}
+
+	/**
+	 * @return new options for a {@link BParser} that parses machines with this behaviour
+	 */
+	public ParseOptions createParseOptions() {
+		final ParseOptions options = new ParseOptions();
+		options.setParallelDefinitionTyping(this.parallelDefinitionTyping);
+		options.setParallelSemanticChecks(this.parallelSemanticChecks);
+		return options;
+	}
+
 	public boolean shouldPrintProlog() {
 		return this.isPrologOutput() || this.isFastPrologOutput();
 	}
@@ -83,6 +130,14 @@ public class ParsingBehaviour {
 		this.compactPositions = compactPositions;
 	}
 
+	public boolean isPositionTable() {
+		return positionTable;
+	}
+
+	public void setPositionTable(boolean positionTable) {
+		this.positionTable = positionTable;
+	}
+
 	public boolean isMachineNameMustMatchFileName() {
 		return machineNameMustMatchFileName;
 	}
@@ -91,6 +146,54 @@ public class ParsingBehaviour {
 		this.machineNameMustMatchFileName = machineNameMustMatchFileName;
 	}
 
+	public boolean isParallelLoading() {
+		return parallelLoading;
+	}
+
+	public void setParallelLoading(boolean parallelLoading) {
+		this.parallelLoading = parallelLoading;
+	}
+
+	public boolean isParallelDefinitionTyping() {
+		return parallelDefinitionTyping;
+	}
+
+	public void setParallelDefinitionTyping(boolean parallelDefinitionTyping) {
+		this.parallelDefinitionTyping = parallelDefinitionTyping;
+	}
+
+	public boolean isParallelSemanticChecks() {
+		return parallelSemanticChecks;
+	}
+
+	public void setParallelSemanticChecks(boolean parallelSemanticChecks) {
+		this.parallelSemanticChecks = parallelSemanticChecks;
+	}
+
+	public String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public void setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	public boolean isStreamingOutput() {
+		return streamingOutput;
+	}
+
+	public void setStreamingOutput(boolean streamingOutput) {
+		this.streamingOutput = streamingOutput;
+	}
+
+	public String getDiagnosticsTag() {
+		return diagnosticsTag;
+	}
+
+	public void setDiagnosticsTag(String diagnosticsTag) {
+		this.diagnosticsTag = diagnosticsTag;
+	}
+
 	public int getDefaultFileNumber() {
 		return this.defaultFileNumber;
 	}
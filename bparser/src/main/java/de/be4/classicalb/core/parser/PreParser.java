@@ -10,7 +10,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -35,6 +34,8 @@ import de.be4.classicalb.core.parser.node.PParseUnit;
 import de.be4.classicalb.core.parser.node.TDefLiteralPredicate;
 import de.be4.classicalb.core.parser.node.TDefLiteralSubstitution;
 import de.be4.classicalb.core.parser.node.TIdentifierLiteral;
+import de.be4.classicalb.core.parser.node.TKwFormula;
+import de.be4.classicalb.core.parser.node.TKwSubstitution;
 import de.be4.classicalb.core.parser.node.Token;
 import de.be4.classicalb.core.parser.util.Utils;
 import de.be4.classicalb.core.preparser.lexer.LexerException;
@@ -84,6 +85,8 @@ public class PreParser {
 	private final ParseOptions parseOptions;
 	private final IFileContentProvider contentProvider;
 	private final List<String> definitionFileIncludeStack;
+	// the tokens of each definition's rhs, lexed once in determineDependencies and reused in determineType
+	private final Map<TPreParserIdentifier, List<Token>> rhsTokens;
 
 	private int startLine;
 	private int startColumn;
@@ -99,6 +102,7 @@ public class PreParser {
 		this.parseOptions = parseOptions;
 		this.defFileDefinitions = definitions;
 		this.definitionTypes = new DefinitionTypes();
+		this.rhsTokens = new HashMap<>();
 		definitionTypes.addAll(definitions.getTypes());
 
 		this.startLine = 1;
@@ -147,9 +151,10 @@ public class PreParser {
 
 		evaluateDefinitionFiles(collector.getFileDefinitions());
 
-		List<TPreParserIdentifier> sortedDefinitionList = sortDefinitionsByTopologicalOrderAndCheckForCycles(definitions);
+		Map<String, Set<String>> dependencies = determineDependencies(definitions);
+		List<TPreParserIdentifier> sortedDefinitionList = sortDefinitionsByTopologicalOrderAndCheckForCycles(definitions, dependencies);
 
-		evaluateTypes(sortedDefinitionList, definitions);
+		evaluateTypes(sortedDefinitionList, definitions, dependencies);
 
 	}
 
@@ -178,22 +183,23 @@ public class PreParser {
 							"Cyclic references in definition files: " + sb);
 				}
 
-				IDefinitions definitions;
-				if (cache != null && cache.getDefinitions(fileName) != null) {
-					definitions = cache.getDefinitions(fileName);
-				} else {
+				IDefinitions definitions = cache == null ? null : cache.getDefinitions(fileName);
+				if (definitions == null) {
 					File directory = machineFile == null ? null : machineFile.getParentFile();
 					final String content = contentProvider.getFileContent(directory, fileName);
 					final File file = contentProvider.getFile(directory, fileName);
-					final BParser parser = new BParser(fileName, parseOptions);
-					parser.setContentProvider(contentProvider);
-					parser.getDefinitionFileIncludeStack().addAll(definitionFileIncludeStack);
-					parser.getDefinitionFileIncludeStack().add(fileName);
-					parser.setDefinitions(new Definitions(file));
-					parser.parseMachine(content, file);
-					definitions = parser.getDefinitions();
-					if (cache != null) {
-						cache.storeDefinition(fileName, definitions);
+					definitions = cache == null ? null : cache.getDefinitions(file, content, parseOptions);
+					if (definitions == null) {
+						final BParser parser = new BParser(fileName, parseOptions);
+						parser.setContentProvider(contentProvider);
+						parser.getDefinitionFileIncludeStack().addAll(definitionFileIncludeStack);
+						parser.getDefinitionFileIncludeStack().add(fileName);
+						parser.setDefinitions(new Definitions(file));
+						parser.parseMachine(content, file);
+						definitions = parser.getDefinitions();
+						if (cache != null) {
+							cache.storeDefinition(fileName, file, content, parseOptions, definitions);
+						}
 					}
 				}
 				defFileDefinitions.addDefinitions(definitions);
@@ -206,66 +212,137 @@ public class PreParser {
 		}
 	}
 
-	private void evaluateTypes(List<TPreParserIdentifier> sortedDefinitionList, final Map<TPreParserIdentifier, TRhsBody> definitions)
-			throws PreParseException {
-		// use linked list as we rely on pop() and push()
-		LinkedList<TPreParserIdentifier> remainingDefinitions = new LinkedList<>(sortedDefinitionList);
-		LinkedList<TPreParserIdentifier> currentlyUnparseableDefinitions = new LinkedList<>();
+	private void evaluateTypes(List<TPreParserIdentifier> sortedDefinitionList, final Map<TPreParserIdentifier, TRhsBody> definitions,
+			final Map<String, Set<String>> dependencies) throws PreParseException {
 		Set<String> todoDefs = new HashSet<>();
-		for (TPreParserIdentifier token : remainingDefinitions) {
+		for (TPreParserIdentifier token : sortedDefinitionList) {
 			todoDefs.add(token.getText());
 		}
+		Definitions.Type[] precomputedTypes = null;
+		if (parseOptions.isParallelDefinitionTyping()) {
+			precomputedTypes = determineTypesInParallel(sortedDefinitionList, definitions, dependencies);
+		}
 		// use main parser for the rhs of each definition to determine type
-		// if a definition can not be typed this way, it may be due to another
-		// definition that is not yet parser (because it appears later in the
-		// source code)
-		// in this case, the definition is appended to the list again
-		// the algorithm terminates if the queue is empty or if no definition
-		// has been parsed
-		boolean oneParsed = true;
-		while (oneParsed) {
-			oneParsed = false;
-
-			while (!remainingDefinitions.isEmpty()) {
-				TPreParserIdentifier definition = remainingDefinitions.pop();
-
-				TRhsBody defRhs = definitions.get(definition);
-				Definitions.Type type;
-				DefinitionType definitionType = determineType(definition, defRhs, todoDefs);
-				type = definitionType.type;
-				if (type != null) {
-					todoDefs.remove(definition.getText());
-					oneParsed = true;
-					definitionTypes.addTyping(definition.getText(), type);
-					// types.addTyping(definition.getText(), type);
+		// the definitions are sorted so that every definition comes after all
+		// definitions it uses, i.e. their types are already known and the rhs
+		// has to be parsed only once
+		// if a definition can still not be typed, this will not change later,
+		// but the topological order of independent definitions is arbitrary,
+		// so the remaining definitions are typed as well and the error of the
+		// failing definition that is declared first is reported
+		Set<String> failedDefs = new HashSet<>();
+		TPreParserIdentifier firstFailedDefinition = null;
+		PreParseException firstError = null;
+		for (int i = 0; i < sortedDefinitionList.size(); i++) {
+			TPreParserIdentifier definition = sortedDefinitionList.get(i);
+			if (!Collections.disjoint(dependencies.get(definition.getText()), failedDefs)) {
+				// cannot be typed, the error of the used definition is reported instead
+				failedDefs.add(definition.getText());
+				continue;
+			}
+			DefinitionType definitionType;
+			try {
+				if (precomputedTypes != null && precomputedTypes[i] != null) {
+					definitionType = new DefinitionType(precomputedTypes[i]);
 				} else {
-					currentlyUnparseableDefinitions.push(definition);
+					definitionType = determineType(definition, definitions.get(definition), todoDefs);
+				}
+				if (definitionType.type == null) {
+					throw createTypingError(definition, definitionType);
+				}
+			} catch (PreParseException e) {
+				failedDefs.add(definition.getText());
+				if (firstFailedDefinition == null || isDeclaredBefore(definition, firstFailedDefinition)) {
+					firstFailedDefinition = definition;
+					firstError = e;
 				}
+				continue;
 			}
+			todoDefs.remove(definition.getText());
+			definitionTypes.addTyping(definition.getText(), definitionType.type);
+		}
+		if (firstError != null) {
+			throw firstError;
+		}
+	}
+
+	private PreParseException createTypingError(TPreParserIdentifier definition, DefinitionType definitionType) {
+		if (definitionType.errorMessage != null) {
+			String message = definitionType.errorMessage;
+			if (machineFile != null) {
+				message += " in file: " + machineFile;
+			}
+			return new PreParseException(definitionType.errorToken.getLine(), definitionType.errorToken.getPos(), message);
+		} else {
+			// fall back message
+			return new PreParseException(definition, "expecting wellformed expression, predicate or substitution as DEFINITION body (DEFINITION arguments assumed to be expressions)");
+		}
+	}
 
-			remainingDefinitions.addAll(currentlyUnparseableDefinitions);
-			currentlyUnparseableDefinitions.clear();
+	private static boolean isDeclaredBefore(TPreParserIdentifier definition, TPreParserIdentifier other) {
+		return definition.getLine() < other.getLine() || definition.getLine() == other.getLine() && definition.getPos() < other.getPos();
+	}
+
+	/**
+	 * Determines the types of the definitions layer by layer,
+	 * where each layer consists of the definitions that only use definitions of earlier layers.
+	 * The definitions of a layer are independent of each other and are typed in parallel.
+	 * Stops after the first layer that contains a definition which cannot be typed;
+	 * {@link #evaluateTypes(List, Map, Map)} then types the remaining definitions sequentially
+	 * and reports the same error as without this option.
+	 *
+	 * @return the types in the order of the sorted definition list, {@code null} for definitions that were not typed
+	 */
+	private Definitions.Type[] determineTypesInParallel(List<TPreParserIdentifier> sortedDefinitionList,
+			final Map<TPreParserIdentifier, TRhsBody> definitions, final Map<String, Set<String>> dependencies) {
+		// the dependencies of a definition appear earlier in the sorted list, so their layers are already known
+		Map<String, Integer> layerOfDefinition = new HashMap<>();
+		List<List<Integer>> layers = new ArrayList<>();
+		for (int i = 0; i < sortedDefinitionList.size(); i++) {
+			String name = sortedDefinitionList.get(i).getText();
+			int layer = 0;
+			for (String dependency : dependencies.get(name)) {
+				layer = Math.max(layer, layerOfDefinition.get(dependency) + 1);
+			}
+			layerOfDefinition.put(name, layer);
+			if (layer == layers.size()) {
+				layers.add(new ArrayList<>());
+			}
+			layers.get(layer).add(i);
 		}
 
-		if (!remainingDefinitions.isEmpty()) {
-			TPreParserIdentifier definition = remainingDefinitions.pop();
-			TRhsBody defRhs = definitions.get(definition);
-			DefinitionType definitionType = determineType(definition, defRhs, todoDefs);
-			if (definitionType.errorMessage != null) {
-				String message = definitionType.errorMessage;
-				if (machineFile != null) {
-					message += " in file: " + machineFile;
+		Definitions.Type[] types = new Definitions.Type[sortedDefinitionList.size()];
+		// only modified between layers, the workers just read it
+		Set<String> untypedDefinitions = new HashSet<>(layerOfDefinition.keySet());
+		for (List<Integer> layer : layers) {
+			layer.parallelStream().forEach(i -> {
+				TPreParserIdentifier definition = sortedDefinitionList.get(i);
+				try {
+					types[i] = determineType(definition, definitions.get(definition), untypedDefinitions).type;
+				} catch (PreParseException e) {
+					// reported when the definition is typed again sequentially
+				}
+			});
+
+			boolean layerTyped = true;
+			for (int i : layer) {
+				String name = sortedDefinitionList.get(i).getText();
+				if (types[i] != null) {
+					definitionTypes.addTyping(name, types[i]);
+					untypedDefinitions.remove(name);
+				} else {
+					layerTyped = false;
 				}
-				throw new PreParseException(definitionType.errorToken.getLine(), definitionType.errorToken.getPos(), message);
-			} else {
-				// fall back message
-				throw new PreParseException(definition, "expecting wellformed expression, predicate or substitution as DEFINITION body (DEFINITION arguments assumed to be expressions)");
+			}
+			if (!layerTyped) {
+				break;
 			}
 		}
+		return types;
 	}
 
-	private List<TPreParserIdentifier> sortDefinitionsByTopologicalOrderAndCheckForCycles(Map<TPreParserIdentifier, TRhsBody> definitions)
-			throws PreParseException {
+	private List<TPreParserIdentifier> sortDefinitionsByTopologicalOrderAndCheckForCycles(Map<TPreParserIdentifier, TRhsBody> definitions,
+			Map<String, Set<String>> dependencies) throws PreParseException {
 		Set<String> definitionNames = new HashSet<>();
 		Map<String, TPreParserIdentifier> definitionMap = new HashMap<>();
 		for (TPreParserIdentifier token : definitions.keySet()) {
@@ -273,7 +350,6 @@ public class PreParser {
 			definitionNames.add(definitionName);
 			definitionMap.put(definitionName, token);
 		}
-		Map<String, Set<String>> dependencies = determineDependencies(definitionNames, definitions);
 		List<String> sortedDefinitionNames = Utils.sortByTopologicalOrder(dependencies);
 		if (sortedDefinitionNames.size() < definitionNames.size()) {
 			Set<String> remaining = new HashSet<>(definitionNames);
@@ -298,8 +374,12 @@ public class PreParser {
 
 	}
 
-	private Map<String, Set<String>> determineDependencies(Set<String> definitionNames, Map<TPreParserIdentifier, TRhsBody> definitions)
+	private Map<String, Set<String>> determineDependencies(Map<TPreParserIdentifier, TRhsBody> definitions)
 			throws PreParseException {
+		Set<String> definitionNames = new HashSet<>();
+		for (TPreParserIdentifier token : definitions.keySet()) {
+			definitionNames.add(token.getText());
+		}
 		HashMap<String, Set<String>> dependencies = new HashMap<>();
 		for (Map.Entry<TPreParserIdentifier, TRhsBody> entry : definitions.entrySet()) {
 			TPreParserIdentifier nameToken = entry.getKey();
@@ -314,10 +394,14 @@ public class PreParser {
 					new DefinitionTypes());
 			lexer.setParseOptions(parseOptions);
 			Set<String> set = new HashSet<>();
+			List<Token> tokens = new ArrayList<>();
 			Token next;
 			try {
+				// skip the prefix token, it is replaced when parsing the tokens
+				lexer.next();
 				next = lexer.next();
 				while (!(next instanceof EOF)) {
+					tokens.add(next);
 					if (next instanceof TIdentifierLiteral) {
 						TIdentifierLiteral id = (TIdentifierLiteral) next;
 						String name;
@@ -332,6 +416,7 @@ public class PreParser {
 					}
 					next = lexer.next();
 				}
+				tokens.add(next);
 			} catch (IOException e) {
 				throw new PreParseException("Error while parsing", e);
 			} catch (BLexerException e) {
@@ -342,6 +427,7 @@ public class PreParser {
 				throw wrapLexerExceptionAndCorrectPosition(nameToken, rhsToken, e, e);
 			}
 			dependencies.put(nameToken.getText(), set);
+			rhsTokens.put(nameToken, tokens);
 		}
 		return dependencies;
 	}
@@ -396,28 +482,23 @@ public class PreParser {
 	 * Try to determine the abstract type of the right-hand side of a definition,
 	 * i. e. whether it's an expression, a predicate, or a substitution.
 	 * If the right-hand side references other definitions,
-	 * it may not be possible to determine this definition's type yet
-	 * if the types of the other definitions aren't known yet.
-	 * For such cases,
-	 * {@link #evaluateTypes(List, Map)} calls this method repeatedly until the type can be successfully determined.
+	 * their types must be known already,
+	 * which {@link #evaluateTypes(List, Map, Map)} ensures by processing the definitions in topological order.
 	 * 
 	 * @param definition the definition name token
 	 * @param rhsToken the right-hand side of the definition (as a single token, merged by the {@link PreLexer})
 	 * @param untypedDefinitions names of all definitions whose types haven't been determined yet
-	 * @return the type of the definition's right-hand side, or error information if the type cannot be determined yet
-	 *     (but it's expected that the type can be determined later, once some other definitions' types are known)
+	 * @return the type of the definition's right-hand side, or error information if the type cannot be determined
 	 * @throws PreParseException if the definition's right-hand side couldn't be parsed
 	 *     (and the parse error is not expected to go away later, even after more definitions' types are known) 
 	 */
 	private DefinitionType determineType(TPreParserIdentifier definition, TRhsBody rhsToken,
 			final Set<String> untypedDefinitions) throws PreParseException {
 
-		final String definitionRhs = rhsToken.getText();
-
 		Token errorToken;
 		try {
 			// Try parsing the RHS as a Formula, i.e., either expression or predicate
-			PParseUnit parseunit = tryParsing(BParser.FORMULA_PREFIX, definitionRhs);
+			PParseUnit parseunit = tryParsing(new TKwFormula(), definition);
 
 			// check if the result is a Predicate?
 			if (parseunit instanceof APredicateParseUnit) {
@@ -441,7 +522,7 @@ public class PreParser {
 			errorToken = e.getToken();
 			try {
 				// try parsing the RHS now as a substitution:
-				tryParsing(BParser.SUBSTITUTION_PREFIX, definitionRhs);
+				tryParsing(new TKwSubstitution(), definition);
 				return new DefinitionType(IDefinitions.Type.Substitution, errorToken);
 			} catch (de.be4.classicalb.core.parser.parser.ParserException ex) {
 				Token errorToken2 = ex.getToken();
@@ -513,13 +594,11 @@ public class PreParser {
 		return new PreParseException(line, pos, exc.getRealMsg(), cause);
 	}
 
-	private PParseUnit tryParsing(final String prefix, final String definitionRhs)
+	private PParseUnit tryParsing(final Token prefix, final TPreParserIdentifier definition)
 			throws de.be4.classicalb.core.parser.lexer.LexerException,
 			de.be4.classicalb.core.parser.parser.ParserException, IOException {
 
-		final Reader reader = new StringReader(prefix + "\n" + definitionRhs);
-		final BLexer lexer = new BLexer(new PushbackReader(reader, BLexer.PUSHBACK_BUFFER_SIZE), this.definitionTypes);
-		lexer.setParseOptions(parseOptions);
+		final TokenListLexer lexer = new TokenListLexer(prefix, rhsTokens.get(definition), this.definitionTypes);
 		final de.be4.classicalb.core.parser.parser.Parser parser = new de.be4.classicalb.core.parser.parser.Parser(lexer);
 		return parser.parse().getPParseUnit();
 	}
@@ -0,0 +1,57 @@
+package de.be4.classicalb.core.parser;
+
+import java.util.List;
+
+import de.be4.classicalb.core.parser.lexer.Lexer;
+import de.be4.classicalb.core.parser.lexer.LexerException;
+import de.be4.classicalb.core.parser.node.EOF;
+import de.be4.classicalb.core.parser.node.Token;
+
+/**
+ * Feeds tokens that have already been lexed by a {@link BLexer} to the parser, instead of lexing the input again.
+ * Identifiers are replaced by definition tokens according to the given definition types, like {@link BLexer} does.
+ * The tokens are copied, so that the same list can be parsed several times.
+ */
+final class TokenListLexer extends Lexer {
+	private final Token prefix;
+	private final List<Token> tokens;
+	private final DefinitionTypes definitionTypes;
+
+	private int index;
+	private Token current;
+
+	/**
+	 * @param prefix the token that determines what is parsed, e.g. {@link de.be4.classicalb.core.parser.node.TKwFormula}
+	 * @param tokens the tokens following the prefix, ending with {@link EOF}; lexed with empty definition types
+	 * @param definitionTypes the definition types used to replace identifiers
+	 */
+	TokenListLexer(final Token prefix, final List<Token> tokens, final DefinitionTypes definitionTypes) {
+		super(null);
+		this.prefix = prefix;
+		this.tokens = tokens;
+		this.definitionTypes = definitionTypes;
+		this.index = -1;
+	}
+
+	@Override
+	public Token peek() throws LexerException {
+		if (current == null) {
+			if (index < 0) {
+				current = prefix;
+			} else {
+				// the parser stops at EOF, but repeat it just in case
+				final Token token = (Token) tokens.get(Math.min(index, tokens.size() - 1)).clone();
+				current = BLexer.replaceDefToken(token, definitionTypes);
+			}
+			index++;
+		}
+		return current;
+	}
+
+	@Override
+	public Token next() throws LexerException {
+		final Token result = peek();
+		current = null;
+		return result;
+	}
+}
@@ -0,0 +1,179 @@
+package de.be4.classicalb.core.parser.analysis;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import de.be4.classicalb.core.parser.node.Node;
+import de.be4.classicalb.core.parser.node.Start;
+import de.be4.classicalb.core.parser.node.Token;
+
+/**
+ * <p>
+ * Variant of {@link DepthFirstAdapter} that does not {@link Node#apply(Switch) apply} itself to the child nodes recursively.
+ * Instead, every child is passed to {@link #visit(Node)} in the same order as in {@link DepthFirstAdapter},
+ * which allows subclasses to traverse the tree with an explicit stack
+ * instead of the Java call stack (see {@link de.be4.classicalb.core.parser.analysis.prolog.ASTProlog}).
+ * </p>
+ * <p>
+ * Unlike {@link DepthFirstAdapter}, this class does not have a {@code case...} method for every node class.
+ * All nodes whose {@code case...} method is not overridden are handled by {@link #defaultCase(Node)},
+ * which calls {@link #defaultIn(Node)}, passes the children to {@link #visit(Node)} and calls {@link #defaultOut(Node)}.
+ * The children of a node class are found by reflection once per class:
+ * SableCC declares a field for every child in the order of the grammar and a public getter for each field,
+ * so grammar changes need no changes here.
+ * Note that {@link #defaultOut(Node)} is called as soon as all children have been passed to {@link #visit(Node)},
+ * which is before the children have been traversed if {@link #visit(Node)} does not traverse them immediately.
+ * </p>
+ */
+public abstract class DeferringDepthFirstAdapter extends AnalysisAdapter {
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Node.class);
+
+	// the getters of the children of each node class, in the order of the grammar
+	private static final ClassValue<MethodHandle[]> CHILD_GETTERS = new ClassValue<MethodHandle[]>() {
+		@Override
+		protected MethodHandle[] computeValue(final Class<?> type) {
+			return findChildGetters(type);
+		}
+	};
+
+	protected DeferringDepthFirstAdapter() {
+		super();
+	}
+
+	private static MethodHandle[] findChildGetters(final Class<?> nodeClass) {
+		final Map<String, Method> getters = new HashMap<>();
+		for (final Method method : nodeClass.getMethods()) {
+			if (method.getName().startsWith("get") && method.getParameterCount() == 0) {
+				getters.put(method.getName().substring(3).toLowerCase(Locale.ROOT), method);
+			}
+		}
+
+		final List<MethodHandle> childGetters = new ArrayList<>();
+		for (final Field field : nodeClass.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers())
+					|| !(Node.class.isAssignableFrom(field.getType()) || List.class.isAssignableFrom(field.getType()))) {
+				continue;
+			}
+			// the field of the child "fooBar" is named "_fooBar_", its getter "getFooBar"
+			final String name = field.getName().replace("_", "").toLowerCase(Locale.ROOT);
+			final Method getter = getters.get(name);
+			if (getter == null) {
+				throw new IllegalStateException("No getter for child " + field.getName() + " of " + nodeClass.getSimpleName());
+			}
+			try {
+				childGetters.add(MethodHandles.publicLookup().unreflect(getter).asType(GETTER_TYPE));
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Cannot access getter of child " + field.getName() + " of " + nodeClass.getSimpleName(), e);
+			}
+		}
+		return childGetters.toArray(new MethodHandle[0]);
+	}
+
+	private static Object getChild(final MethodHandle getter, final Node node) {
+		try {
+			return (Object) getter.invokeExact(node);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			// the generated getters do not throw checked exceptions
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Called for every child of a node, in traversal order.
+	 *
+	 * @param node the child node, may be <code>null</code> for optional children
+	 */
+	protected abstract void visit(Node node);
+
+	protected void visitAll(final List<? extends Node> nodes) {
+		for (final Node node : nodes) {
+			this.visit(node);
+		}
+	}
+
+	/**
+	 * Passes all children of the given node to {@link #visit(Node)}, in the same order as {@link DepthFirstAdapter}.
+	 * The elements of list children are passed one by one.
+	 *
+	 * @param node the node whose children should be visited
+	 */
+	protected void visitChildren(final Node node) {
+		for (final MethodHandle getter : CHILD_GETTERS.get(node.getClass())) {
+			final Object child = getChild(getter, node);
+			if (child instanceof List<?>) {
+				@SuppressWarnings("unchecked")
+				final List<? extends Node> list = (List<? extends Node>) child;
+				visitAll(list);
+			} else {
+				visit((Node) child);
+			}
+		}
+	}
+
+	/**
+	 * @param node the node whose children should be counted
+	 * @return the number of non-<code>null</code> children that {@link #visitChildren(Node)} passes to {@link #visit(Node)}
+	 */
+	protected int countChildren(final Node node) {
+		int count = 0;
+		for (final MethodHandle getter : CHILD_GETTERS.get(node.getClass())) {
+			final Object child = getChild(getter, node);
+			if (child instanceof List<?>) {
+				count += ((List<?>) child).size();
+			} else if (child != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public void inStart(final Start node) {
+		defaultIn(node);
+	}
+
+	public void outStart(final Start node) {
+		defaultOut(node);
+	}
+
+	@Override
+	public void caseStart(final Start node) {
+		inStart(node);
+		visitChildren(node);
+		outStart(node);
+	}
+
+	public void defaultIn(final Node node) {
+		// Do nothing
+	}
+
+	public void defaultOut(final Node node) {
+		// Do nothing
+	}
+
+	/**
+	 * Called for all nodes whose {@code case...} method is not overridden.
+	 * Tokens are ignored, like in {@link DepthFirstAdapter}.
+	 *
+	 * @param node the node to traverse
+	 */
+	@Override
+	public void defaultCase(final Node node) {
+		if (node instanceof Token) {
+			return;
+		}
+		defaultIn(node);
+		visitChildren(node);
+		defaultOut(node);
+	}
+}
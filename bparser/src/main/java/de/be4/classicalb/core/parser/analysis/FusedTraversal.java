@@ -0,0 +1,117 @@
+package de.be4.classicalb.core.parser.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import de.be4.classicalb.core.parser.node.AConjunctPredicate;
+import de.be4.classicalb.core.parser.node.Node;
+import de.be4.classicalb.core.parser.node.PPredicate;
+import de.be4.classicalb.core.parser.node.Switch;
+
+/**
+ * <p>
+ * Runs several node-local passes in a single depth-first traversal of the AST,
+ * instead of traversing the whole tree once per pass.
+ * </p>
+ * <p>
+ * A pass is a non-traversing {@link Switch} (usually an {@link AnalysisAdapter})
+ * that handles a single node in its {@code case...} methods.
+ * Pre-order passes are applied to every node before its children are traversed,
+ * post-order passes after the children have been traversed.
+ * Tokens are passed to the pre-order passes and then to the post-order passes.
+ * The passes are applied in the order in which they were added.
+ * </p>
+ * <p>
+ * Pre-order passes may change the children of the node, which are traversed afterwards,
+ * but must not replace the node itself.
+ * Post-order passes may replace the node, like the {@code out...} methods of a {@link DepthFirstAdapter}.
+ * Passes can only be fused if they don't depend on another pass having processed the whole tree first.
+ * </p>
+ * <p>
+ * Like {@link OptimizedTraversingAdapter}, nested {@link AConjunctPredicate}s are traversed without recursion,
+ * but their children are still traversed in order and the passes are applied to the conjunctions as well.
+ * </p>
+ */
+public class FusedTraversal extends DepthFirstAdapter {
+	private final List<Switch> preOrderPasses = new ArrayList<>();
+	private final List<Switch> postOrderPasses = new ArrayList<>();
+
+	public FusedTraversal() {
+		super();
+	}
+
+	public FusedTraversal addPreOrderPass(final Switch pass) {
+		this.preOrderPasses.add(pass);
+		return this;
+	}
+
+	public FusedTraversal addPostOrderPass(final Switch pass) {
+		this.postOrderPasses.add(pass);
+		return this;
+	}
+
+	@Override
+	public void defaultIn(final Node node) {
+		for (final Switch pass : preOrderPasses) {
+			node.apply(pass);
+		}
+	}
+
+	@Override
+	public void defaultOut(final Node node) {
+		for (final Switch pass : postOrderPasses) {
+			node.apply(pass);
+		}
+	}
+
+	@Override
+	public void defaultCase(final Node node) {
+		// only called for tokens, which have no children
+		defaultIn(node);
+		defaultOut(node);
+	}
+
+	@Override
+	public void caseAConjunctPredicate(final AConjunctPredicate node) {
+		final Deque<Object> stack = new ArrayDeque<>();
+		stack.push(node);
+		while (!stack.isEmpty()) {
+			final Object item = stack.pop();
+			if (item instanceof AConjunctPredicate) {
+				final AConjunctPredicate conjunction = (AConjunctPredicate) item;
+				inAConjunctPredicate(conjunction);
+				stack.push(new PendingStep(conjunction, true));
+				stack.push(new PendingStep(conjunction, false));
+				if (conjunction.getLeft() != null) {
+					stack.push(conjunction.getLeft());
+				}
+			} else if (item instanceof PendingStep) {
+				final PendingStep step = (PendingStep) item;
+				if (step.out) {
+					outAConjunctPredicate(step.conjunction);
+				} else {
+					// the right side is only looked up once the left side has been traversed
+					final PPredicate right = step.conjunction.getRight();
+					if (right != null) {
+						stack.push(right);
+					}
+				}
+			} else {
+				((Node) item).apply(this);
+			}
+		}
+	}
+
+	private static final class PendingStep {
+		private final AConjunctPredicate conjunction;
+		// true: leave the conjunction, false: traverse its right side
+		private final boolean out;
+
+		PendingStep(final AConjunctPredicate conjunction, final boolean out) {
+			this.conjunction = conjunction;
+			this.out = out;
+		}
+	}
+}
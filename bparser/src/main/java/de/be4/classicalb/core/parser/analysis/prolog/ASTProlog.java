@@ -1,24 +1,36 @@
 package de.be4.classicalb.core.parser.analysis.prolog;
 
-import java.io.StringWriter;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import de.be4.classicalb.core.parser.analysis.DepthFirstAdapter;
+import de.be4.classicalb.core.parser.analysis.DeferringDepthFirstAdapter;
 import de.be4.classicalb.core.parser.node.*;
 import de.be4.classicalb.core.parser.util.Utils;
 import de.prob.prolog.output.IPrologTermOutput;
+import de.prob.prolog.term.PrologTerm;
 
 /**
  * This class defines the output of a B machine as a prolog term.
+ * <p>
+ * The AST is traversed with an explicit stack instead of recursive
+ * {@link Node#apply(Switch)} calls, so that deeply nested ASTs (e. g. long
+ * chains of binary operators) can be printed with the default thread stack size.
+ * When a node is taken from the stack, its {@code case...} method is called.
+ * Children are not printed immediately, but pushed onto the stack (see {@link #visit(Node)}).
+ * Any output that follows the first such child is buffered and replayed
+ * after the child has been printed.
  */
-public class ASTProlog extends DepthFirstAdapter {
+public class ASTProlog extends DeferringDepthFirstAdapter {
 	// The tables SUM_TYPE and SIMPLE_NAME are used to translate the Java class
 	// name to
 	// the Prolog functor name.
@@ -29,27 +41,44 @@ public class ASTProlog extends DepthFirstAdapter {
 	// SIMPLE_NAME must list all AST Classes that are not part of a sum-type
 	// If a class is not a token , not in ATOMIC_TYPE and not in SUM_TYPE we
 	// throw an exception.
-	private static final List<String> SUM_TYPE = new LinkedList<>(Arrays.asList("expression", "predicate",
+	private static final List<String> SUM_TYPE = Collections.unmodifiableList(Arrays.asList("expression", "predicate",
 			"machine_clause", "substitution", "parse_unit", "model_clause", "context_clause", "eventstatus",
-			"argpattern", "set", "machine_variant", "definition", "freetype_constructor"));
+			"argpattern", "set", "machine_variant", "definition", "freetype_constructor")));
 
-	private static final List<String> ATOMIC_TYPE = new LinkedList<>(Arrays.asList(
+	private static final Set<String> ATOMIC_TYPE = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
 			"description_event", // for ADescriptionEvent
 			"description_operation",
 			"description_pragma",
 			"event",
 			"freetype",
 			"machine_header", "machine_reference", "operation",
-			"refined_operation", "rec_entry", "values_entry", "witness", "unit"));
-
-	// the simpleFormats are mappings from node classes to prolog functor representing them
-	private final Map<Class<? extends Node>, String> simpleFormats = new HashMap<>();
+			"refined_operation", "rec_entry", "values_entry", "witness", "unit")));
+
+	// maps node classes to the prolog functors representing them,
+	// computed once per JVM and shared by all printers, so that each functor is always the same String instance
+	private static final ClassValue<String> FUNCTOR_NAMES = new ClassValue<String>() {
+		@Override
+		protected String computeValue(final Class<?> type) {
+			return toFunctorName(type.getSimpleName()).intern();
+		}
+	};
 
 	// to look up the identifier of each node
 	private final PositionPrinter positionPrinter;
 
-	// helper object to print the prolog terms
-	private final IPrologTermOutput pout;
+	// the actual output
+	private final IPrologTermOutput out;
+
+	// helper object to print the prolog terms, buffers the output while children are pending
+	private final IPrologTermOutput pout = new DeferredOutput();
+
+	// nodes and buffered output that still have to be printed, the next item is on top
+	private final Deque<Object> pending = new ArrayDeque<>();
+
+	// items recorded while the case method of the current node is running
+	private final List<Object> expansion = new ArrayList<>();
+
+	private boolean traversing = false;
 
 	/**
 	 * @param start
@@ -72,12 +101,63 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	public ASTProlog(final IPrologTermOutput pout, final PositionPrinter positionPrinter) {
 		this.positionPrinter = positionPrinter;
-		this.pout = pout;
+		this.out = pout;
 		if (positionPrinter != null) {
-			positionPrinter.setPrologTermOutput(pout);
+			positionPrinter.setPrologTermOutput(this.pout);
 		}
 	}
 
+	/**
+	 * Prints the given node instead of applying this adapter to it recursively.
+	 * Outside of a traversal (i. e. when the node is a child of the node this
+	 * adapter was applied to), the traversal is started.
+	 */
+	@Override
+	protected void visit(final Node node) {
+		if (node == null) {
+			return;
+		}
+		if (!traversing) {
+			traverse(node);
+		} else if (node instanceof Token) {
+			// tokens have no children and can be printed in place
+			node.apply(this);
+		} else {
+			expansion.add(node);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void traverse(final Node root) {
+		traversing = true;
+		try {
+			pending.push(root);
+			while (!pending.isEmpty()) {
+				final Object item = pending.pop();
+				if (item instanceof Node) {
+					((Node) item).apply(this);
+					for (int i = expansion.size() - 1; i >= 0; i--) {
+						pending.push(expansion.get(i));
+					}
+					expansion.clear();
+				} else {
+					((Consumer<IPrologTermOutput>) item).accept(out);
+				}
+			}
+		} finally {
+			traversing = false;
+			pending.clear();
+			expansion.clear();
+		}
+	}
+
+	/**
+	 * Output is written directly until the current node has pushed its first child.
+	 */
+	private boolean isOutputDirect() {
+		return !traversing || expansion.isEmpty();
+	}
+
 	@Override
 	public void inStart(final Start node) {
 		// intentionally left blank: don't write the start node.
@@ -90,12 +170,13 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	/**
 	 * If the node is not handled otherwise, we just open it (see
-	 * {@link #open(Node)}), print the sub-nodes, and close it later in
+	 * {@link #open(Node, int)}), print the sub-nodes, and close it later in
 	 * {@link #defaultOut(Node)}
 	 */
 	@Override
 	public void defaultIn(final Node node) {
-		open(node);
+		// the position and one argument for each child
+		open(node, 1 + countChildren(node));
 	}
 
 	/**
@@ -115,9 +196,11 @@ public class ASTProlog extends DepthFirstAdapter {
 	 *            the node of the syntax tree, never <code>null</code>. It is
 	 *            assumed that <code>node</code> is an abstract syntax tree
 	 *            element, which class name is A* .
+	 * @param arity
+	 *            the number of arguments of the term, including the position
 	 */
-	private void open(final Node node) {
-		pout.openTerm(simpleFormat(node));
+	private void open(final Node node, final int arity) {
+		pout.openTerm(simpleFormat(node), arity);
 		printPosition(node);
 	}
 
@@ -148,7 +231,7 @@ public class ASTProlog extends DepthFirstAdapter {
 	}
 
 	/**
-	 * The counterpart to {@link #open(Node)}, prints the closing parenthesis of
+	 * The counterpart to {@link #open(Node, int)}, prints the closing parenthesis of
 	 * the term.
 	 */
 	private void close(final Node node) {
@@ -165,38 +248,38 @@ public class ASTProlog extends DepthFirstAdapter {
 	private void printAsList(final List<? extends Node> nodes) {
 		pout.openList();
 		for (Node elem : nodes) {
-			elem.apply(this);
+			visit(elem);
 		}
 		pout.closeList();
 	}
 
 	/**
-	 * This method combines {@link #open(Node)}, {@link #printAsList(List)} and
+	 * This method combines {@link #open(Node, int)}, {@link #printAsList(List)} and
 	 * {@link #close(Node)}.
 	 * 
 	 * @param node
-	 *            Like in {@link #open(Node)}
+	 *            Like in {@link #open(Node, int)}
 	 * @param list
 	 *            Like in {@link #printAsList(List)}
 	 */
 	private void printOCAsList(final Node node, final List<? extends Node> list) {
-		open(node);
+		open(node, 2);
 		printAsList(list);
 		close(node);
 	}
 
 	/**
 	 * @param node
-	 *            Never <code>null</code>, node is assumed to be a terminal
-	 *            symbol that can be printed as a simple string
+	 *            Never <code>null</code>. Terminal symbols are printed as a simple string,
+	 *            all other nodes are handled by {@link #defaultIn(Node)} and {@link #defaultOut(Node)}.
 	 */
 	@Override
 	public void defaultCase(final Node node) {
-		// All non-terminal cases have default implementations in DepthFirstAdapter.
-		// Their default handling happens in defaultIn/defaultOut.
-		assert node instanceof Token;
-
-		pout.printAtom(((Token) node).getText());
+		if (node instanceof Token) {
+			pout.printAtom(((Token) node).getText());
+		} else {
+			super.defaultCase(node);
+		}
 	}
 
 	@Override
@@ -207,14 +290,8 @@ public class ASTProlog extends DepthFirstAdapter {
 	/**
 	 * @return Corresponging Prolog functor Name.
 	 */
-	private String simpleFormat(final Node node) {
-		Class<? extends Node> clazz = node.getClass();
-		String formatted = simpleFormats.get(clazz);
-		if (formatted == null) {
-			formatted = toFunctorName(clazz.getSimpleName());
-			simpleFormats.put(clazz, formatted);
-		}
-		return formatted;
+	private static String simpleFormat(final Node node) {
+		return FUNCTOR_NAMES.get(node.getClass());
 	}
 
 	/**
@@ -224,7 +301,7 @@ public class ASTProlog extends DepthFirstAdapter {
 	 * 
 	 * @return Prolog functor name
 	 */
-	private String toFunctorName(final String className) {
+	private static String toFunctorName(final String className) {
 		String camelName = formatCamel(className.substring(1)).substring(1);
 		if (className.startsWith("T")) {
 			// A SableCC Token
@@ -253,10 +330,10 @@ public class ASTProlog extends DepthFirstAdapter {
 	 * @return The input string in lower case and seperated by _ (e.g.
 	 *         class_doing_some_stuff).
 	 */
-	private String formatCamel(final String input) {
-		StringWriter out = new StringWriter();
-		char[] chars = input.toCharArray();
-		for (char current : chars) {
+	private static String formatCamel(final String input) {
+		StringBuilder out = new StringBuilder(input.length() + 8);
+		for (int i = 0; i < input.length(); i++) {
+			final char current = input.charAt(i);
 			if (Character.isUpperCase(current)) {
 				out.append('_');
 				out.append(Character.toLowerCase(current));
@@ -280,7 +357,7 @@ public class ASTProlog extends DepthFirstAdapter {
 		if (identifierParts.isEmpty()) {
 			throw new IllegalArgumentException("There must be at least one token in a dotted identifier list");
 		}
-		pout.openTerm("identifier");
+		pout.openTerm("identifier", 2);
 		printPositionRange(identifierParts, null);
 		printIdentifier(identifierParts);
 		pout.closeTerm();
@@ -292,7 +369,7 @@ public class ASTProlog extends DepthFirstAdapter {
 	 * @param identifier the identifier token to print
 	 */
 	private void printPositionedIdentifier(TIdentifierLiteral identifier) {
-		pout.openTerm("identifier");
+		pout.openTerm("identifier", 2);
 		printPosition(identifier);
 		pout.printAtom(identifier.getText());
 		pout.closeTerm();
@@ -300,24 +377,24 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	private void printNullSafeSubstitution(final Node subst) {
 		if (subst == null) {
-			pout.openTerm("skip");
+			pout.openTerm("skip", 1);
 			pout.printAtom("none");
 			pout.closeTerm();
 		} else {
-			subst.apply(this);
+			visit(subst);
 		}
 	}
 
 	@Override
 	public void caseAIdentifierExpression(final AIdentifierExpression node) {
-		open(node);
+		open(node, 2);
 		printIdentifier(node.getIdentifier());
 		close(node);
 	}
 
 	@Override
 	public void caseAPrimedIdentifierExpression(final APrimedIdentifierExpression node) {
-		open(node);
+		open(node, 3);
 		printIdentifier(node.getIdentifier());
 		// The parser now only supports $0
 		pout.printNumber(0);
@@ -331,27 +408,27 @@ public class ASTProlog extends DepthFirstAdapter {
 	// Parse Units
 	@Override
 	public void caseAAbstractMachineParseUnit(final AAbstractMachineParseUnit node) {
-		open(node);
-		node.getVariant().apply(this);
-		node.getHeader().apply(this);
+		open(node, 4);
+		visit(node.getVariant());
+		visit(node.getHeader());
 		printAsList(node.getMachineClauses());
 		close(node);
 	}
 
 	@Override
 	public void caseARefinementMachineParseUnit(final ARefinementMachineParseUnit node) {
-		open(node);
-		node.getHeader().apply(this);
-		node.getRefMachine().apply(this);
+		open(node, 4);
+		visit(node.getHeader());
+		visit(node.getRefMachine());
 		printAsList(node.getMachineClauses());
 		close(node);
 	}
 
 	@Override
 	public void caseAImplementationMachineParseUnit(final AImplementationMachineParseUnit node) {
-		open(node);
-		node.getHeader().apply(this);
-		node.getRefMachine().apply(this);
+		open(node, 4);
+		visit(node.getHeader());
+		visit(node.getRefMachine());
 		printAsList(node.getMachineClauses());
 		close(node);
 	}
@@ -360,7 +437,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAMachineHeader(final AMachineHeader node) {
-		open(node);
+		open(node, 3);
 		printIdentifier(node.getName());
 		printAsList(node.getParameters());
 		close(node);
@@ -368,7 +445,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAExtendedExprExpression(final AExtendedExprExpression node) {
-		open(node);
+		open(node, 4);
 		pout.printAtom(node.getIdentifier().getText());
 		printAsList(node.getExpressions());
 		printAsList(node.getPredicates());
@@ -377,7 +454,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAExtendedPredPredicate(final AExtendedPredPredicate node) {
-		open(node);
+		open(node, 4);
 		pout.printAtom(node.getIdentifier().getText());
 		printAsList(node.getExpressions());
 		printAsList(node.getPredicates());
@@ -477,7 +554,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAMachineReference(final AMachineReference node) {
-		open(node);
+		open(node, 3);
 		printIdentifier(node.getMachineName());
 		printAsList(node.getParameters());
 		close(node);
@@ -492,7 +569,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseADescriptionPragma(ADescriptionPragma node) {
-		pout.openTerm("description_text");
+		pout.openTerm("description_text", 2);
 		// If possible, print the position of the description text itself,
 		// not the entire description pragma.
 		printPositionRange(node.getParts(), node);
@@ -505,28 +582,28 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAPredicateDefinitionDefinition(final APredicateDefinitionDefinition node) {
-		open(node);
-		node.getName().apply(this);
+		open(node, 4);
+		visit(node.getName());
 		printAsList(node.getParameters());
-		node.getRhs().apply(this);
+		visit(node.getRhs());
 		close(node);
 	}
 
 	@Override
 	public void caseASubstitutionDefinitionDefinition(final ASubstitutionDefinitionDefinition node) {
-		open(node);
-		node.getName().apply(this);
+		open(node, 4);
+		visit(node.getName());
 		printAsList(node.getParameters());
-		node.getRhs().apply(this);
+		visit(node.getRhs());
 		close(node);
 	}
 
 	@Override
 	public void caseAExpressionDefinitionDefinition(final AExpressionDefinitionDefinition node) {
-		open(node);
-		node.getName().apply(this);
+		open(node, 4);
+		visit(node.getName());
 		printAsList(node.getParameters());
-		node.getRhs().apply(this);
+		visit(node.getRhs());
 		close(node);
 	}
 
@@ -534,7 +611,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAEnumeratedSetSet(final AEnumeratedSetSet node) {
-		open(node);
+		open(node, 3);
 		printIdentifier(node.getIdentifier());
 		printAsList(node.getElements());
 		close(node);
@@ -544,22 +621,22 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAOperation(final AOperation node) {
-		open(node);
+		open(node, 5);
 		printPositionedIdentifier(node.getOpName());
 		printAsList(node.getReturnValues());
 		printAsList(node.getParameters());
-		node.getOperationBody().apply(this);
+		visit(node.getOperationBody());
 		close(node);
 	}
 	
 	@Override
 	public void caseARefinedOperation(final ARefinedOperation node) {
-		open(node);
+		open(node, 6);
 		printPositionedIdentifier(node.getOpName());
 		printAsList(node.getReturnValues());
 		printAsList(node.getParameters());
-		node.getAbOpName().apply(this);
-		node.getOperationBody().apply(this);
+		visit(node.getAbOpName());
+		visit(node.getOperationBody());
 		close(node);
 	}
 	
@@ -569,7 +646,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAConjunctPredicate(final AConjunctPredicate node) {
-		open(node);
+		open(node, 2);
 		
 		final Deque<PPredicate> conjunctPreds = new LinkedList<>();
 		AConjunctPredicate currentNode = node;
@@ -582,7 +659,7 @@ public class ASTProlog extends DepthFirstAdapter {
 		
 		pout.openList();
 		for (final PPredicate pred : conjunctPreds) {
-			pred.apply(this);
+			visit(pred);
 		}
 		pout.closeList();
 		
@@ -591,34 +668,34 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAForallPredicate(final AForallPredicate node) {
-		open(node);
+		open(node, 3);
 		printAsList(node.getIdentifiers());
-		node.getImplication().apply(this);
+		visit(node.getImplication());
 		close(node);
 	}
 
 	@Override
 	public void caseAExistsPredicate(final AExistsPredicate node) {
-		open(node);
+		open(node, 3);
 		printAsList(node.getIdentifiers());
-		node.getPredicate().apply(this);
+		visit(node.getPredicate());
 		close(node);
 	}
 
 	@Override
 	public void caseADefinitionPredicate(final ADefinitionPredicate node) {
-		open(node);
-		node.getDefLiteral().apply(this);
+		open(node, 3);
+		visit(node.getDefLiteral());
 		printAsList(node.getParameters());
 		close(node);
 	}
 
 	@Override
 	public void caseALetPredicatePredicate(ALetPredicatePredicate node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getAssignment().apply(this);
-		node.getPred().apply(this);
+		visit(node.getAssignment());
+		visit(node.getPred());
 		close(node);
 	}
 
@@ -626,29 +703,29 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseALetExpressionExpression(ALetExpressionExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getAssignment().apply(this);
-		node.getExpr().apply(this);
+		visit(node.getAssignment());
+		visit(node.getExpr());
 		close(node);
 	}
 
 	@Override
 	public void caseAIfThenElseExpression(final AIfThenElseExpression node) {
-		open(node);
-		node.getCondition().apply(this);
-		node.getThen().apply(this);
+		open(node, 4);
+		visit(node.getCondition());
+		visit(node.getThen());
 		
 		// Rewrite ELSIF clauses to nested if_then_else expressions.
 		for (PExpression expr : node.getElsifs()) {
 			AIfElsifExprExpression elsIf = (AIfElsifExprExpression) expr;
-			pout.openTerm(simpleFormat(node));//if_then_else
+			pout.openTerm(simpleFormat(node), 4);//if_then_else
 			printPosition(elsIf);
-			elsIf.getCondition().apply(this);
-			elsIf.getThen().apply(this);
+			visit(elsIf.getCondition());
+			visit(elsIf.getThen());
 		}
 		
-		node.getElse().apply(this);
+		visit(node.getElse());
 		
 		// Close all nested if_then_else expressions that were opened for the ELSIFs.
 		for (PExpression ignored : node.getElsifs()) {
@@ -660,19 +737,19 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAGeneralSumExpression(final AGeneralSumExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getPredicates().apply(this);
-		node.getExpression().apply(this);
+		visit(node.getPredicates());
+		visit(node.getExpression());
 		close(node);
 	}
 
 	@Override
 	public void caseAGeneralProductExpression(final AGeneralProductExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getPredicates().apply(this);
-		node.getExpression().apply(this);
+		visit(node.getPredicates());
+		visit(node.getExpression());
 		close(node);
 	}
 
@@ -686,35 +763,35 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAComprehensionSetExpression(final AComprehensionSetExpression node) {
-		open(node);
+		open(node, 3);
 		printAsList(node.getIdentifiers());
-		node.getPredicates().apply(this);
+		visit(node.getPredicates());
 		close(node);
 	}
 
 	@Override
 	public void caseASymbolicComprehensionSetExpression(final ASymbolicComprehensionSetExpression node) {
-		open(node);
+		open(node, 3);
 		printAsList(node.getIdentifiers());
-		node.getPredicates().apply(this);
+		visit(node.getPredicates());
 		close(node);
 	}
 
 	@Override
 	public void caseAEventBComprehensionSetExpression(final AEventBComprehensionSetExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getExpression().apply(this);
-		node.getPredicates().apply(this);
+		visit(node.getExpression());
+		visit(node.getPredicates());
 		close(node);
 	}
 
 	@Override
 	public void caseASymbolicEventBComprehensionSetExpression(final ASymbolicEventBComprehensionSetExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getExpression().apply(this);
-		node.getPredicates().apply(this);
+		visit(node.getExpression());
+		visit(node.getPredicates());
 		close(node);
 	}
 
@@ -725,46 +802,46 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAQuantifiedUnionExpression(final AQuantifiedUnionExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getPredicates().apply(this);
-		node.getExpression().apply(this);
+		visit(node.getPredicates());
+		visit(node.getExpression());
 		close(node);
 	}
 
 	@Override
 	public void caseASymbolicQuantifiedUnionExpression(final ASymbolicQuantifiedUnionExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getPredicates().apply(this);
-		node.getExpression().apply(this);
+		visit(node.getPredicates());
+		visit(node.getExpression());
 		close(node);
 	}
 
 	@Override
 	public void caseAQuantifiedIntersectionExpression(final AQuantifiedIntersectionExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getPredicates().apply(this);
-		node.getExpression().apply(this);
+		visit(node.getPredicates());
+		visit(node.getExpression());
 		close(node);
 	}
 
 	@Override
 	public void caseALambdaExpression(final ALambdaExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getPredicate().apply(this);
-		node.getExpression().apply(this);
+		visit(node.getPredicate());
+		visit(node.getExpression());
 		close(node);
 	}
 
 	@Override
 	public void caseASymbolicLambdaExpression(ASymbolicLambdaExpression node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getPredicate().apply(this);
-		node.getExpression().apply(this);
+		visit(node.getPredicate());
+		visit(node.getExpression());
 		close(node);
 	}
 
@@ -775,8 +852,8 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAFunctionExpression(final AFunctionExpression node) {
-		open(node);
-		node.getIdentifier().apply(this);
+		open(node, 3);
+		visit(node.getIdentifier());
 		printAsList(node.getParameters());
 		close(node);
 	}
@@ -793,15 +870,15 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseARecordFieldExpression(ARecordFieldExpression node) {
-		open(node);
-		node.getRecord().apply(this);
+		open(node, 3);
+		visit(node.getRecord());
 		printPositionedIdentifier(node.getIdentifier());
 		close(node);
 	}
 
 	@Override
 	public void caseAIntegerExpression(final AIntegerExpression node) {
-		open(node);
+		open(node, 2);
 		final String text = node.getLiteral().getText();
 		if (text.length() <= 18) {
 			pout.printNumber(Long.parseLong(text));
@@ -813,17 +890,17 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseADefinitionExpression(final ADefinitionExpression node) {
-		open(node);
-		node.getDefLiteral().apply(this);
+		open(node, 3);
+		visit(node.getDefLiteral());
 		printAsList(node.getParameters());
 		close(node);
 	}
 
 	@Override
 	public void caseARecEntry(ARecEntry node) {
-		open(node);
+		open(node, 3);
 		printPositionedIdentifier(node.getIdentifier());
-		node.getValue().apply(this);
+		visit(node.getValue());
 		close(node);
 	}
 
@@ -831,7 +908,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAAssignSubstitution(final AAssignSubstitution node) {
-		open(node);
+		open(node, 3);
 		printAsList(node.getLhsExpression());
 		printAsList(node.getRhsExpressions());
 		close(node);
@@ -844,9 +921,9 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAIfSubstitution(final AIfSubstitution node) {
-		open(node);
-		node.getCondition().apply(this);
-		node.getThen().apply(this);
+		open(node, 5);
+		visit(node.getCondition());
+		visit(node.getThen());
 		printAsList(node.getElsifSubstitutions());
 		printNullSafeSubstitution(node.getElse());
 		close(node);
@@ -854,23 +931,23 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseASelectSubstitution(final ASelectSubstitution node) {
-		open(node);
-		node.getCondition().apply(this);
-		node.getThen().apply(this);
+		open(node, node.getElse() == null ? 4 : 5);
+		visit(node.getCondition());
+		visit(node.getThen());
 		printAsList(node.getWhenSubstitutions());
 		final Node elsenode = node.getElse();
 		if (elsenode != null) {
-			elsenode.apply(this);
+			visit(elsenode);
 		}
 		close(node);
 	}
 
 	@Override
 	public void caseACaseSubstitution(final ACaseSubstitution node) {
-		open(node);
-		node.getExpression().apply(this);
+		open(node, 6);
+		visit(node.getExpression());
 		printAsList(node.getEitherExpr());
-		node.getEitherSubst().apply(this);
+		visit(node.getEitherSubst());
 		printAsList(node.getOrSubstitutions());
 		printNullSafeSubstitution(node.getElse());
 		close(node);
@@ -878,51 +955,51 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseACaseOrSubstitution(final ACaseOrSubstitution node) {
-		open(node);
+		open(node, 3);
 		printAsList(node.getExpressions());
-		node.getSubstitution().apply(this);
+		visit(node.getSubstitution());
 		close(node);
 	}
 
 	@Override
 	public void caseAAnySubstitution(final AAnySubstitution node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getWhere().apply(this);
-		node.getThen().apply(this);
+		visit(node.getWhere());
+		visit(node.getThen());
 		close(node);
 	}
 
 	@Override
 	public void caseALetSubstitution(final ALetSubstitution node) {
-		open(node);
+		open(node, 4);
 		printAsList(node.getIdentifiers());
-		node.getPredicate().apply(this);
-		node.getSubstitution().apply(this);
+		visit(node.getPredicate());
+		visit(node.getSubstitution());
 		close(node);
 	}
 
 	@Override
 	public void caseABecomesElementOfSubstitution(final ABecomesElementOfSubstitution node) {
-		open(node);
+		open(node, 3);
 		printAsList(node.getIdentifiers());
-		node.getSet().apply(this);
+		visit(node.getSet());
 		close(node);
 	}
 
 	@Override
 	public void caseABecomesSuchSubstitution(final ABecomesSuchSubstitution node) {
-		open(node);
+		open(node, 3);
 		printAsList(node.getIdentifiers());
-		node.getPredicate().apply(this);
+		visit(node.getPredicate());
 		close(node);
 	}
 
 	@Override
 	public void caseAVarSubstitution(final AVarSubstitution node) {
-		open(node);
+		open(node, 3);
 		printAsList(node.getIdentifiers());
-		node.getSubstitution().apply(this);
+		visit(node.getSubstitution());
 		close(node);
 	}
 
@@ -933,7 +1010,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAOperationCallSubstitution(final AOperationCallSubstitution node) {
-		open(node);
+		open(node, 4);
 		printPositionedIdentifier(node.getOperation());
 		printAsList(node.getResultIdentifiers());
 		printAsList(node.getParameters());
@@ -942,7 +1019,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAOperationCallExpression(AOperationCallExpression node) {
-		open(node);
+		open(node, 3);
 		printPositionedIdentifier(node.getOperation());
 		printAsList(node.getParameters());
 		close(node);
@@ -955,8 +1032,8 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseADefinitionSubstitution(final ADefinitionSubstitution node) {
-		open(node);
-		node.getDefLiteral().apply(this);
+		open(node, 3);
+		visit(node.getDefLiteral());
 		printAsList(node.getParameters());
 		close(node);
 	}
@@ -965,15 +1042,15 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseABooleanTrueExpression(final ABooleanTrueExpression node) {
-		pout.openTerm("boolean_true");
+		pout.openTerm("boolean_true", 1);
 		printPosition(node);
 		pout.closeTerm();
 	}
 
 	@Override
 	public void caseAPartitionPredicate(final APartitionPredicate node) {
-		open(node);
-		node.getSet().apply(this);
+		open(node, 3);
+		visit(node.getSet());
 		printAsList(node.getElements());
 		close(node);
 	}
@@ -982,28 +1059,28 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAExpressionParseUnit(final AExpressionParseUnit node) {
-		node.getExpression().apply(this);
+		visit(node.getExpression());
 	}
 
 	@Override
 	public void caseAMachineClauseParseUnit(final AMachineClauseParseUnit node) {
-		node.getMachineClause().apply(this);
+		visit(node.getMachineClause());
 	}
 
 	@Override
 	public void caseAPredicateParseUnit(final APredicateParseUnit node) {
-		node.getPredicate().apply(this);
+		visit(node.getPredicate());
 	}
 
 	@Override
 	public void caseASubstitutionParseUnit(final ASubstitutionParseUnit node) {
-		node.getSubstitution().apply(this);
+		visit(node.getSubstitution());
 	}
 
 	@Override
 	public void caseAEventBModelParseUnit(final AEventBModelParseUnit node) {
-		open(node);
-		node.getName().apply(this);
+		open(node, 3);
+		visit(node.getName());
 		printAsList(node.getModelClauses());
 		close(node);
 	}
@@ -1035,11 +1112,11 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAEvent(final AEvent node) {
-		open(node);
-		node.getEventName().apply(this);
+		open(node, node.getStatus() == null ? 8 : 9);
+		visit(node.getEventName());
 		final PEventstatus status = node.getStatus();
 		if (status != null) {
-			status.apply(this);
+			visit(status);
 		}
 		printAsList(node.getRefines());
 		printAsList(node.getVariables());
@@ -1052,16 +1129,16 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAWitness(final AWitness node) {
-		open(node);
+		open(node, 3);
 		printPositionedIdentifier(node.getName());
-		node.getPredicate().apply(this);
+		visit(node.getPredicate());
 		close(node);
 	}
 
 	@Override
 	public void caseAEventBContextParseUnit(final AEventBContextParseUnit node) {
-		open(node);
-		node.getName().apply(this);
+		open(node, 3);
+		visit(node.getName());
 		printAsList(node.getContextClauses());
 		close(node);
 	}
@@ -1098,7 +1175,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAOppatternParseUnit(final AOppatternParseUnit node) {
-		open(node);
+		open(node, 3);
 		printIdentifier(node.getName());
 		printAsList(node.getParameters());
 		close(node);
@@ -1111,7 +1188,7 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAFreetype(AFreetype node) {
-		open(node);
+		open(node, 4);
 		pout.printAtom(node.getName().getText());
 		printAsList(node.getParameters());
 		printAsList(node.getConstructors());
@@ -1120,29 +1197,174 @@ public class ASTProlog extends DepthFirstAdapter {
 
 	@Override
 	public void caseAConstructorFreetypeConstructor(AConstructorFreetypeConstructor node) {
-		open(node);
+		open(node, 3);
 		pout.printAtom(node.getName().getText());
-		node.getArgument().apply(this);
+		visit(node.getArgument());
 		close(node);
 	}
 
 	@Override
 	public void caseAElementFreetypeConstructor(AElementFreetypeConstructor node) {
-		open(node);
+		open(node, 2);
 		pout.printAtom(node.getName().getText());
 		close(node);
 	}
 
 	@Override
 	public void caseAFileMachineReferenceNoParams(AFileMachineReferenceNoParams node) {
-		node.getReference().apply(this);
-		// node.getFile().apply(this);
+		visit(node.getReference());
+		// visit(node.getFile());
 	}
 
 	@Override
 	public void caseAFileMachineReference(AFileMachineReference node) {
-		node.getReference().apply(this);
-		// node.getFile().apply(this);
+		visit(node.getReference());
+		// visit(node.getFile());
+	}
+
+	/**
+	 * Writes to the actual output or records the call, see {@link #isOutputDirect()}.
+	 */
+	private final class DeferredOutput implements IPrologTermOutput {
+		private IPrologTermOutput defer(final Consumer<IPrologTermOutput> action) {
+			expansion.add(action);
+			return this;
+		}
+
+		@Override
+		public IPrologTermOutput openTerm(final String functor, final boolean ignoreIndentation) {
+			if (isOutputDirect()) {
+				out.openTerm(functor, ignoreIndentation);
+				return this;
+			}
+			return defer(o -> o.openTerm(functor, ignoreIndentation));
+		}
+
+		@Override
+		public IPrologTermOutput openTerm(final String functor, final int arity, final boolean ignoreIndentation) {
+			if (isOutputDirect()) {
+				out.openTerm(functor, arity, ignoreIndentation);
+				return this;
+			}
+			return defer(o -> o.openTerm(functor, arity, ignoreIndentation));
+		}
+
+		@Override
+		public IPrologTermOutput closeTerm() {
+			if (isOutputDirect()) {
+				out.closeTerm();
+				return this;
+			}
+			return defer(IPrologTermOutput::closeTerm);
+		}
+
+		@Override
+		public IPrologTermOutput printAtom(final String content) {
+			if (isOutputDirect()) {
+				out.printAtom(content);
+				return this;
+			}
+			return defer(o -> o.printAtom(content));
+		}
+
+		@Override
+		public IPrologTermOutput printString(final String content) {
+			if (isOutputDirect()) {
+				out.printString(content);
+				return this;
+			}
+			return defer(o -> o.printString(content));
+		}
+
+		@Override
+		public IPrologTermOutput printNumber(final long number) {
+			if (isOutputDirect()) {
+				out.printNumber(number);
+				return this;
+			}
+			return defer(o -> o.printNumber(number));
+		}
+
+		@Override
+		public IPrologTermOutput printNumber(final BigInteger number) {
+			if (isOutputDirect()) {
+				out.printNumber(number);
+				return this;
+			}
+			return defer(o -> o.printNumber(number));
+		}
+
+		@Override
+		public IPrologTermOutput printNumber(final double number) {
+			if (isOutputDirect()) {
+				out.printNumber(number);
+				return this;
+			}
+			return defer(o -> o.printNumber(number));
+		}
+
+		@Override
+		public IPrologTermOutput openList() {
+			if (isOutputDirect()) {
+				out.openList();
+				return this;
+			}
+			return defer(IPrologTermOutput::openList);
+		}
+
+		@Override
+		public IPrologTermOutput closeList() {
+			if (isOutputDirect()) {
+				out.closeList();
+				return this;
+			}
+			return defer(IPrologTermOutput::closeList);
+		}
+
+		@Override
+		public IPrologTermOutput tailSeparator() {
+			if (isOutputDirect()) {
+				out.tailSeparator();
+				return this;
+			}
+			return defer(IPrologTermOutput::tailSeparator);
+		}
+
+		@Override
+		public IPrologTermOutput printVariable(final String var) {
+			if (isOutputDirect()) {
+				out.printVariable(var);
+				return this;
+			}
+			return defer(o -> o.printVariable(var));
+		}
+
+		@Override
+		public IPrologTermOutput printTerm(final PrologTerm term) {
+			if (isOutputDirect()) {
+				out.printTerm(term);
+				return this;
+			}
+			return defer(o -> o.printTerm(term));
+		}
+
+		@Override
+		public IPrologTermOutput flush() {
+			if (isOutputDirect()) {
+				out.flush();
+				return this;
+			}
+			return defer(IPrologTermOutput::flush);
+		}
+
+		@Override
+		public IPrologTermOutput fullstop() {
+			if (isOutputDirect()) {
+				out.fullstop();
+				return this;
+			}
+			return defer(IPrologTermOutput::fullstop);
+		}
 	}
 
 }
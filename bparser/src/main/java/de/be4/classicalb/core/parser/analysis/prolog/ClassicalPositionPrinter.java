@@ -1,10 +1,31 @@
 package de.be4.classicalb.core.parser.analysis.prolog;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
 import de.be4.classicalb.core.parser.node.AIfElsifSubstitution;
 import de.be4.classicalb.core.parser.node.ASelectWhenSubstitution;
 import de.be4.classicalb.core.parser.node.Node;
 import de.prob.prolog.output.IPrologTermOutput;
 
+/**
+ * <p>
+ * Prints the source positions of AST nodes as {@code pos/6} terms or, with compact positions, as {@code p3/3}, {@code p4/4} or {@code p5/5} terms.
+ * </p>
+ * <p>
+ * If a position table is used (see {@link #setUsePositionTable(boolean)}), each node only gets a {@code pt(Index)} term instead.
+ * The positions themselves are collected while printing and have to be printed afterwards using
+ * {@link #printPositionTables(IPrologTermOutput, boolean)}, as one {@code position_table(FileNr, Entries)} fact per file.
+ * Nodes with the same position share an index.
+ * {@code Entries} is a flat list of integers with five numbers per position, sorted by index:
+ * the difference to the previous index of the same file,
+ * the difference to the previous start line of the same file,
+ * the start column, the number of lines spanned (end line minus start line) and the end column.
+ * The first position of each file is relative to index 0 and line 0.
+ * </p>
+ */
 public class ClassicalPositionPrinter implements PositionPrinter {
 
 	private IPrologTermOutput pout;
@@ -14,6 +35,11 @@ public class ClassicalPositionPrinter implements PositionPrinter {
 
 	private boolean printSourcePositions = false;
 	private boolean compactPositions = false;
+	private boolean usePositionTable = false;
+
+	// only used with a position table
+	private final Map<PositionKey, Integer> positionIndices = new HashMap<>();
+	private final Map<Integer, PositionTable> positionTables = new TreeMap<>();
 
 	private int lineOffset = 0;
 	private int columnOffset = 0;
@@ -29,6 +55,16 @@ public class ClassicalPositionPrinter implements PositionPrinter {
 		this.compactPositions = compact;
 	}
 
+	/**
+	 * Print references into position tables instead of the positions themselves, see {@link ClassicalPositionPrinter}.
+	 * This only has an effect if source positions are printed at all.
+	 *
+	 * @param usePositionTable whether to use position tables
+	 */
+	public void setUsePositionTable(boolean usePositionTable) {
+		this.usePositionTable = usePositionTable;
+	}
+
 	private static boolean uselessPositionInfo (final Node node) {
 		// return true for those nodes which do not require a position info
 		if (node instanceof AIfElsifSubstitution) { // if_elsif infos not used in ProB
@@ -62,8 +98,14 @@ public class ClassicalPositionPrinter implements PositionPrinter {
 			}
 			int startLine = getStartLine(startNode);
 			int endLine = getEndLine(endNode);
+			if (usePositionTable) {
+				pout.openTerm("pt", 1, true);
+				pout.printNumber(lookupPositionIndex(fileNr, startLine, getStartColumn(startNode), endLine, getEndColumn(endNode)));
+				pout.closeTerm();
+				return;
+			}
 			if (!compactPositions) { // old pos(UniqueID,FileNr,StartLine,StartCol,Endline,EndCol) term
-				pout.openTerm("pos", true);
+				pout.openTerm("pos", 6, true);
 				// Unique node IDs are no longer supported - all nodes get ID -1.
 				pout.printNumber(-1);
 				pout.printNumber(fileNr);
@@ -72,17 +114,17 @@ public class ClassicalPositionPrinter implements PositionPrinter {
 				pout.printNumber(endLine);
 			} else { // new terms with no UniqueID and with less infos if possible
 				if (fileNr == 1 && startLine == endLine) {
-					pout.openTerm("p3", true);
+					pout.openTerm("p3", 3, true);
 					pout.printNumber(startLine);
 					pout.printNumber(getStartColumn(startNode));
 					// we could also provide one case where fileNr=1 and startLine !== endLine
 				} else if (startLine == endLine) {
-					pout.openTerm("p4", true);
+					pout.openTerm("p4", 4, true);
 					pout.printNumber(fileNr);
 					pout.printNumber(startLine);
 					pout.printNumber(getStartColumn(startNode));
 				} else {
-					pout.openTerm("p5", true);
+					pout.openTerm("p5", 5, true);
 					pout.printNumber(fileNr);
 					pout.printNumber(startLine);
 					pout.printNumber(getStartColumn(startNode));
@@ -126,9 +168,112 @@ public class ClassicalPositionPrinter implements PositionPrinter {
 		}
 	}
 
+	private int lookupPositionIndex(int fileNr, int startLine, int startColumn, int endLine, int endColumn) {
+		final PositionKey key = new PositionKey(fileNr, startLine, startColumn, endLine, endColumn);
+		final Integer existingIndex = positionIndices.get(key);
+		if (existingIndex != null) {
+			return existingIndex;
+		}
+		final int index = positionIndices.size();
+		positionIndices.put(key, index);
+		positionTables.computeIfAbsent(fileNr, k -> new PositionTable()).add(index, startLine, startColumn, endLine, endColumn);
+		return index;
+	}
+
+	/**
+	 * Prints a {@code position_table/2} fact for each file that positions have been printed for so far,
+	 * see {@link ClassicalPositionPrinter} for the format.
+	 * Prints nothing if no position table is used.
+	 *
+	 * @param pout the output to print the tables to
+	 * @param withFullstops whether to print a fullstop after each fact
+	 */
+	public void printPositionTables(final IPrologTermOutput pout, final boolean withFullstops) {
+		for (final Map.Entry<Integer, PositionTable> entry : positionTables.entrySet()) {
+			pout.openTerm("position_table", 2);
+			pout.printNumber(entry.getKey());
+			entry.getValue().print(pout);
+			pout.closeTerm();
+			if (withFullstops) {
+				pout.fullstop();
+			}
+		}
+	}
+
 	@Override
 	public void setPrologTermOutput(final IPrologTermOutput pout) {
 		this.pout = pout;
 	}
 
+	private static final class PositionKey {
+		private final int fileNr;
+		private final int startLine;
+		private final int startColumn;
+		private final int endLine;
+		private final int endColumn;
+
+		PositionKey(int fileNr, int startLine, int startColumn, int endLine, int endColumn) {
+			this.fileNr = fileNr;
+			this.startLine = startLine;
+			this.startColumn = startColumn;
+			this.endLine = endLine;
+			this.endColumn = endColumn;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			} else if (!(o instanceof PositionKey)) {
+				return false;
+			}
+			final PositionKey other = (PositionKey) o;
+			return fileNr == other.fileNr && startLine == other.startLine && startColumn == other.startColumn
+				&& endLine == other.endLine && endColumn == other.endColumn;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = fileNr;
+			result = 31 * result + startLine;
+			result = 31 * result + startColumn;
+			result = 31 * result + endLine;
+			result = 31 * result + endColumn;
+			return result;
+		}
+	}
+
+	/**
+	 * The delta-encoded positions of a single file.
+	 */
+	private static final class PositionTable {
+		private static final int ENTRY_SIZE = 5;
+
+		private int[] entries = new int[16 * ENTRY_SIZE];
+		private int size = 0;
+		private int lastIndex = 0;
+		private int lastStartLine = 0;
+
+		void add(int index, int startLine, int startColumn, int endLine, int endColumn) {
+			if (size + ENTRY_SIZE > entries.length) {
+				entries = Arrays.copyOf(entries, entries.length * 2);
+			}
+			entries[size++] = index - lastIndex;
+			entries[size++] = startLine - lastStartLine;
+			entries[size++] = startColumn;
+			entries[size++] = endLine - startLine;
+			entries[size++] = endColumn;
+			lastIndex = index;
+			lastStartLine = startLine;
+		}
+
+		void print(IPrologTermOutput pout) {
+			pout.openList();
+			for (int i = 0; i < size; i++) {
+				pout.printNumber(entries[i]);
+			}
+			pout.closeList();
+		}
+	}
+
 }
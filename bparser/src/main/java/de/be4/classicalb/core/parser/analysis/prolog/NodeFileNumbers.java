@@ -1,16 +1,42 @@
 package de.be4.classicalb.core.parser.analysis.prolog;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.WeakHashMap;
 
 import de.be4.classicalb.core.parser.node.Node;
 
 /**
  * <p>Allows assigning file numbers to AST nodes and looking them up later.</p>
+ * <p>
+ * File numbers are only stored for the nodes passed to {@link #assignIdentifiers(int, Node)}.
+ * All other nodes get the file number of their closest parent that has one.
+ * To avoid walking up the whole parent chain for every node,
+ * the file numbers of the nodes on the path to the most recently looked up node are cached.
+ * Printers look up the nodes in depth-first order, so the parent of the next node is almost always on this path
+ * and each lookup takes constant time, while the cache never holds more nodes than the depth of the tree.
+ * </p>
+ * <p>
+ * The cache is cleared whenever file numbers are assigned.
+ * Moving a subtree to a part of the AST with a different file number between lookups is not detected,
+ * so file numbers should be (re-)assigned after such transformations.
+ * Note that the cached path keeps the most recently printed AST reachable.
+ * </p>
  */
 public final class NodeFileNumbers implements INodeIds {
 
 	private final WeakHashMap<Node, Integer> nodeToFileNumberMap = new WeakHashMap<>();
-	
+
+	// nodes on the cached path, starting at the top, with their positions in the path and their file numbers
+	private final List<Node> cachedPath = new ArrayList<>();
+	private final Map<Node, Integer> cachedPathIndices = new IdentityHashMap<>();
+	private int[] cachedFileNumbers = new int[64];
+	// reused by lookupFileNumber for the nodes that are not on the cached path yet
+	private final List<Node> uncachedNodes = new ArrayList<>();
+
 	/**
 	 * Assign the given file number to a syntax tree. This implementation does not assign unique identifiers, only file numbers.
 	 *
@@ -20,31 +46,60 @@ public final class NodeFileNumbers implements INodeIds {
 	@Override
 	public void assignIdentifiers(final int fileNumber, final Node node) {
 		this.nodeToFileNumberMap.put(node, fileNumber);
+		this.truncateCachedPath(0);
 	}
-	
+
 	@Override
 	public int lookupFileNumber(final Node node) {
-		// Find the first node in the parent-chain that has a file number
-		Integer existingFileNumber = null;
+		// Find the first node in the parent-chain that is on the cached path or has a file number
+		int fileNumber = -1;
+		int pathLength = 0;
 		Node currentNode = node;
-		while (currentNode != null && (existingFileNumber = this.nodeToFileNumberMap.get(currentNode)) == null) {
+		while (currentNode != null) {
+			final Integer index = this.cachedPathIndices.get(currentNode);
+			if (index != null) {
+				fileNumber = this.cachedFileNumbers[index];
+				pathLength = index + 1;
+				break;
+			}
+			final Integer existingFileNumber = this.nodeToFileNumberMap.get(currentNode);
+			if (existingFileNumber != null) {
+				fileNumber = existingFileNumber;
+				// keep the part of the cached path above this node, if any
+				final Integer parentIndex = this.cachedPathIndices.get(currentNode.parent());
+				pathLength = parentIndex == null ? 0 : parentIndex + 1;
+				this.uncachedNodes.add(currentNode);
+				break;
+			}
+			this.uncachedNodes.add(currentNode);
 			currentNode = currentNode.parent();
 		}
 
-		// At this point, we have either found a parent node with a file number,
-		// or we reached the top of the AST without finding one (in which case existingFileNumber is null).
-		final int fileNumber = existingFileNumber == null ? -1 : existingFileNumber;
-		
-		// To speed up future lookups,
-		// add the found file number to the node
-		// and to any intermediate parents that also have no file number yet.
-		// FIXME: disabled to save memory, but what is the actual performance impact?
-		/*Node currentNode2 = node;
-		while (currentNode2 != null && !currentNode2.equals(currentNode)) {
-			this.nodeToFileNumberMap.put(currentNode2, fileNumber);
-			currentNode2 = currentNode2.parent();
-		}*/
-		
+		// At this point, we have either found a node with a known file number,
+		// or we reached the top of the AST without finding one (in which case the file number is -1).
+		// Replace the rest of the cached path with the nodes between the found node and the looked up node.
+		this.truncateCachedPath(pathLength);
+		for (int i = this.uncachedNodes.size() - 1; i >= 0; i--) {
+			this.addToCachedPath(this.uncachedNodes.get(i), fileNumber);
+		}
+		this.uncachedNodes.clear();
+
 		return fileNumber;
 	}
+
+	private void addToCachedPath(final Node node, final int fileNumber) {
+		final int index = this.cachedPath.size();
+		if (index == this.cachedFileNumbers.length) {
+			this.cachedFileNumbers = Arrays.copyOf(this.cachedFileNumbers, index * 2);
+		}
+		this.cachedPath.add(node);
+		this.cachedPathIndices.put(node, index);
+		this.cachedFileNumbers[index] = fileNumber;
+	}
+
+	private void truncateCachedPath(final int length) {
+		for (int i = this.cachedPath.size() - 1; i >= length; i--) {
+			this.cachedPathIndices.remove(this.cachedPath.remove(i));
+		}
+	}
 }
@@ -12,13 +12,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 import de.be4.classicalb.core.parser.BParser;
 import de.be4.classicalb.core.parser.CachingDefinitionFileProvider;
+import de.be4.classicalb.core.parser.DefinitionFileCache;
 import de.be4.classicalb.core.parser.FileSearchPathProvider;
+import de.be4.classicalb.core.parser.IDefinitionFileProvider;
 import de.be4.classicalb.core.parser.IDefinitions;
 import de.be4.classicalb.core.parser.IFileContentProvider;
+import de.be4.classicalb.core.parser.ParseOptions;
 import de.be4.classicalb.core.parser.ParsingBehaviour;
 import de.be4.classicalb.core.parser.analysis.MachineClauseAdapter;
 import de.be4.classicalb.core.parser.exceptions.BCompoundException;
@@ -40,19 +46,42 @@ import de.prob.prolog.output.PrologTermOutput;
  * Cyclic references are detected. If an error occurs in an external machine,
  * the error message is mapped to the uses/includes/etc. statement in the main
  * machine.
+ * <p>
+ * If {@link ParsingBehaviour#isParallelLoading()} is set, referenced machines
+ * are parsed ahead of time on the common {@link ForkJoinPool}. The machines are
+ * still registered in the same order as in sequential mode, so file numbers,
+ * the Prolog output and the reported errors do not depend on the setting.
+ * Parsers modify the definitions they use, so in this mode every parser gets its own copy
+ * of the definition files stored in the {@link IDefinitionFileProvider}.
+ * The result of a prefetched machine is released as soon as the machine has been loaded,
+ * and the prefetching is stopped when loading has finished or failed.
+ * <p>
+ * {@link #loadAndPrintAllMachines(File, Start, IDefinitions, IPrologTermOutput)} prints
+ * each machine as soon as it has been loaded instead of keeping all ASTs until
+ * {@link #printAsProlog(IPrologTermOutput)} is called, so that only the ASTs of the
+ * machines currently being loaded have to be kept in memory.
  */
 public class RecursiveMachineLoader {
 	private static final String[] SUFFICES = new String[]{".ref", ".mch", ".sys", ".imp"};
+	// replaces the prefetch of a machine once it has been loaded, it is never run
+	private static final ForkJoinTask<ParsedMachine> CONSUMED = ForkJoinTask.adapt(() -> null);
 	private final File rootDirectory;
 	private final INodeIds nodeIds;
 	private final Map<String, Start> parsedMachines = new TreeMap<>();
 	private final Map<String, ReferencedMachines> machineReferenceInfo = new TreeMap<>();
 	private final Map<String, File> parsedFiles = new TreeMap<>();
 	private final List<File> machineFilesLoaded = new ArrayList<>();
+	private final Map<File, ForkJoinTask<ParsedMachine>> prefetchedMachines = new ConcurrentHashMap<>();
+	private volatile boolean prefetchingStopped;
 	private final IFileContentProvider contentProvider;
+	// used instead of contentProvider when machines are parsed in parallel
+	private final IFileContentProvider copyingContentProvider;
 	private final ParsingBehaviour parsingBehaviour;
 	private PositionPrinter positionPrinter;
 	private String main;
+	// only set while loading in streaming mode, see loadAndPrintAllMachines
+	private IPrologTermOutput streamingOutput;
+	private ASTProlog streamingPrinter;
 
 
 	public RecursiveMachineLoader(final String directory, final IFileContentProvider contentProvider, ParsingBehaviour parsingBehaviour) throws BCompoundException {
@@ -66,6 +95,11 @@ public class RecursiveMachineLoader {
 
 		this.nodeIds = new NodeFileNumbers();
 		this.contentProvider = contentProvider;
+		if (contentProvider instanceof IDefinitionFileProvider) {
+			this.copyingContentProvider = new CopyingDefinitionFileProvider((IDefinitionFileProvider) contentProvider);
+		} else {
+			this.copyingContentProvider = contentProvider;
+		}
 	}
 
 	public RecursiveMachineLoader(String path, IFileContentProvider contentProvider) throws BCompoundException {
@@ -76,8 +110,8 @@ public class RecursiveMachineLoader {
 		this.positionPrinter = positionPrinter;
 	}
 
-	private static void printLoadProgress(File machineFile) {
-		System.out.println("*** Debug: Parsing file '" + machineFile + "'");
+	private static void printLoadProgress(ParsingBehaviour parsingBehaviour, File machineFile) {
+		System.out.println(parsingBehaviour.getDiagnosticsTag() + "*** Debug: Parsing file '" + machineFile + "'");
 	}
 
 	/**
@@ -98,6 +132,26 @@ public class RecursiveMachineLoader {
 		return rml;
 	}
 
+	/**
+	 * Recursively parse any files referenced by the given already parsed main machine and print them to the given output
+	 * while they are loaded, see {@link #loadAndPrintAllMachines(File, Start, IDefinitions, IPrologTermOutput)}.
+	 *
+	 * @param parser the {@link BParser} instance that was used to parse the main machine - used for definitions and file name information
+	 * @param ast the parsed AST of the main machine
+	 * @param parsingBehaviour options controlling the behaviour of {@link RecursiveMachineLoader}
+	 * @param contentProvider controls how files referenced by the main file are read
+	 * @param pout the output to print the machines to
+	 * @return a new {@link RecursiveMachineLoader} that has parsed and printed all files referenced by the main machine
+	 * @throws BCompoundException if parsing fails in any way
+	 */
+	public static RecursiveMachineLoader loadFromAstAndPrint(final BParser parser, final Start ast, final ParsingBehaviour parsingBehaviour, final IFileContentProvider contentProvider, final IPrologTermOutput pout) throws BCompoundException {
+		final File mainFile = new File(parser.getFileName());
+		final String parent = mainFile.getParent() == null ? "." : mainFile.getParent();
+		final RecursiveMachineLoader rml = new RecursiveMachineLoader(parent, contentProvider, parsingBehaviour);
+		rml.loadAndPrintAllMachines(mainFile, ast, parser.getDefinitions(), pout);
+		return rml;
+	}
+
 	/**
 	 * Recursively parse the given B machine and any other files that it references.
 	 * 
@@ -109,9 +163,9 @@ public class RecursiveMachineLoader {
 	 */
 	public static RecursiveMachineLoader loadFile(final File mainFile, final ParsingBehaviour parsingBehaviour, final IFileContentProvider contentProvider) throws BCompoundException {
 		if (parsingBehaviour.isVerbose()) {
-			printLoadProgress(mainFile);
+			printLoadProgress(parsingBehaviour, mainFile);
 		}
-		final BParser parser = new BParser(mainFile.toString());
+		final BParser parser = new BParser(mainFile.toString(), parsingBehaviour.createParseOptions());
 		parser.setContentProvider(contentProvider);
 		final Start ast = parser.parseFile(mainFile);
 		return loadFromAst(parser, ast, parsingBehaviour, contentProvider);
@@ -119,7 +173,8 @@ public class RecursiveMachineLoader {
 
 	/**
 	 * Recursively parse the given B machine and any other files that it references.
-	 * Identical to {@link #loadFile(File, ParsingBehaviour, IFileContentProvider)} with a {@link CachingDefinitionFileProvider}.
+	 * Identical to {@link #loadFile(File, ParsingBehaviour, IFileContentProvider)} with a {@link CachingDefinitionFileProvider}
+	 * that uses the {@link DefinitionFileCache#getShared() process-wide definition file cache}.
 	 *
 	 * @param mainFile the B machine file to parse
 	 * @param parsingBehaviour options controlling the behaviour of {@link RecursiveMachineLoader}
@@ -127,7 +182,7 @@ public class RecursiveMachineLoader {
 	 * @throws BCompoundException if parsing fails in any way
 	 */
 	public static RecursiveMachineLoader loadFile(final File mainFile, final ParsingBehaviour parsingBehaviour) throws BCompoundException {
-		return loadFile(mainFile, parsingBehaviour, new CachingDefinitionFileProvider());
+		return loadFile(mainFile, parsingBehaviour, new CachingDefinitionFileProvider(DefinitionFileCache.getShared()));
 	}
 
 	/**
@@ -144,22 +199,123 @@ public class RecursiveMachineLoader {
 
 	public void loadAllMachines(final File startFile, final Start start,
 								final IDefinitions definitions) throws BCompoundException {
-		recursivelyLoadMachine(startFile, start, new ArrayList<>(), true, rootDirectory, definitions);
+		prefetchingStopped = false;
+		try {
+			recursivelyLoadMachine(startFile, start, new ArrayList<>(), true, rootDirectory, definitions);
+		} finally {
+			stopPrefetching();
+		}
+	}
+
+	/**
+	 * Cancels the prefetches that have not started yet and drops the results of machines that were never needed (e. g. after an error).
+	 * Parses that are already running are finished, but do not start any further prefetches.
+	 */
+	private void stopPrefetching() {
+		prefetchingStopped = true;
+		for (final ForkJoinTask<ParsedMachine> task : prefetchedMachines.values()) {
+			if (task != CONSUMED) {
+				task.cancel(false);
+			}
+		}
+		prefetchedMachines.clear();
+	}
+
+	/**
+	 * <p>
+	 * Same as {@link #loadAllMachines(File, Start, IDefinitions)} followed by {@link #printAsProlog(IPrologTermOutput)},
+	 * but each {@code machine/1} fact is printed as soon as the machine has been loaded and its definitions have been injected.
+	 * The ASTs of the referenced machines are not kept afterwards, so {@link #getParsedMachines()} stays empty.
+	 * </p>
+	 * <p>
+	 * The printed facts are the same as in {@link #printAsProlog(IPrologTermOutput)}, but the machines are printed in loading order
+	 * and the {@code classical_b/2} fact comes after them, because the list of loaded files is only known at the end.
+	 * If loading fails, the output contains the machines loaded so far, but no {@code classical_b/2} fact.
+	 * </p>
+	 *
+	 * @param startFile the file of the main machine
+	 * @param start the parsed AST of the main machine
+	 * @param definitions the definitions of the main machine
+	 * @param pout the output to print the machines to
+	 * @throws BCompoundException if parsing fails in any way
+	 */
+	public void loadAndPrintAllMachines(final File startFile, final Start start,
+										final IDefinitions definitions, final IPrologTermOutput pout) throws BCompoundException {
+		printParserVersion(pout, true);
+		final PositionPrinter pprinter = this.getPositionPrinter();
+		this.streamingOutput = pout;
+		this.streamingPrinter = new ASTProlog(pout, pprinter);
+		try {
+			loadAllMachines(startFile, start, definitions);
+		} finally {
+			this.streamingOutput = null;
+			this.streamingPrinter = null;
+		}
+		printPositionTables(pout, pprinter, true);
+		printMachineFiles(pout, true);
+		pout.flush();
 	}
 
 	private void loadMachine(final List<Ancestor> ancestors, final File machineFile) throws BCompoundException {
 		if (parsingBehaviour.isVerbose()) {
-			printLoadProgress(machineFile);
+			printLoadProgress(parsingBehaviour, machineFile);
 		}
-		final BParser parser = new BParser(machineFile.getAbsolutePath());
-		parser.setContentProvider(this.contentProvider);
-		Start tree = parser.parseFile(machineFile);
-		recursivelyLoadMachine(machineFile, tree, ancestors, false,
-				machineFile.getParentFile(), parser.getDefinitions());
+		// the entry is replaced so that the AST is not kept and the machine is not prefetched again
+		final ForkJoinTask<ParsedMachine> prefetched = prefetchedMachines.put(machineFile, CONSUMED);
+		final ParsedMachine parsed = prefetched != null && prefetched != CONSUMED ? prefetched.join() : parseMachine(machineFile);
+		recursivelyLoadMachine(machineFile, parsed.getAst(), ancestors, false,
+				machineFile.getParentFile(), parsed.getDefinitions());
+	}
+
+	private ParsedMachine parseMachine(final File machineFile) {
+		final BParser parser = new BParser(machineFile.getAbsolutePath(), parsingBehaviour.createParseOptions());
+		parser.setContentProvider(parsingBehaviour.isParallelLoading() ? this.copyingContentProvider : this.contentProvider);
+		try {
+			final Start tree = parser.parseFile(machineFile);
+			return new ParsedMachine(tree, parser.getDefinitions(), null);
+		} catch (BCompoundException e) {
+			return new ParsedMachine(null, null, e);
+		}
+	}
+
+	/**
+	 * Starts parsing the machines referenced by an already parsed machine in the background.
+	 * This is only a prefetch: all checks are still performed in {@link #recursivelyLoadMachine(File, Start, List, boolean, File, IDefinitions)},
+	 * references that cannot be resolved here are simply skipped.
+	 */
+	private void prefetchReferencedMachines(final File directory, final ReferencedMachines refMachines) {
+		for (final MachineReference refMachine : refMachines.getReferences()) {
+			if (prefetchingStopped) {
+				return;
+			}
+			final File referencedFile = resolveReferencedFile(directory, refMachine, refMachines.getImportedPackages().values());
+			if (referencedFile != null) {
+				final ForkJoinTask<ParsedMachine> task = prefetchedMachines.computeIfAbsent(referencedFile,
+					f -> ForkJoinPool.commonPool().submit(() -> prefetchMachine(f)));
+				if (prefetchingStopped && task != CONSUMED) {
+					// loading has finished while the task was submitted
+					task.cancel(false);
+					prefetchedMachines.remove(referencedFile, task);
+				}
+			}
+		}
+	}
+
+	private ParsedMachine prefetchMachine(final File machineFile) {
+		final ParsedMachine parsed = parseMachine(machineFile);
+		if (parsed.isParsed() && !prefetchingStopped) {
+			try {
+				prefetchReferencedMachines(machineFile.getParentFile(), MachineReferencesFinder.findReferencedMachines(machineFile.toPath(), parsed.ast, false));
+			} catch (BException ignored) {
+				// reported again when the machine is loaded
+			}
+		}
+		return parsed;
 	}
 
 	public void printAsProlog(final PrintWriter out) {
-		final IPrologTermOutput pout = new PrologTermOutput(out, false);
+		// the output is flushed once at the end instead of after each fact
+		final IPrologTermOutput pout = new PrologTermOutput(out, false, PrologTermOutput.FlushPolicy.EXPLICIT);
 		printAsProlog(pout);
 	}
 
@@ -176,16 +332,32 @@ public class RecursiveMachineLoader {
 	}
 
 	private void printAsPrologWithFullstops(final IPrologTermOutput pout, final boolean withFullstops) {
-		// parser version
-		pout.openTerm("parser_version");
+		printParserVersion(pout, withFullstops);
+		printMachineFiles(pout, withFullstops);
+
+		// machines
+		final PositionPrinter pprinter = this.getPositionPrinter();
+		final ASTProlog prolog = new ASTProlog(pout, pprinter);
+		for (final Map.Entry<String, Start> entry : this.getParsedMachines().entrySet()) {
+			printMachine(pout, prolog, entry.getValue(), withFullstops);
+		}
+		printPositionTables(pout, pprinter, withFullstops);
+
+		pout.flush();
+	}
+
+	private static void printParserVersion(final IPrologTermOutput pout, final boolean withFullstops) {
+		pout.openTerm("parser_version", 1);
 		pout.printAtom(BParser.getGitSha());
 		pout.closeTerm();
 		if (withFullstops) {
 			pout.fullstop();
 		}
+	}
 
+	private void printMachineFiles(final IPrologTermOutput pout, final boolean withFullstops) {
 		// machine metadata
-		pout.openTerm("classical_b");
+		pout.openTerm("classical_b", 2);
 		pout.printAtom(this.getMainMachineName());
 		pout.openList();
 		for (final File file : this.getMachineFilesLoaded()) {
@@ -200,40 +372,41 @@ public class RecursiveMachineLoader {
 		if (withFullstops) {
 			pout.fullstop();
 		}
+	}
 
-		// machines
-		PositionPrinter pprinter;
-		if (this.positionPrinter != null) {
-			pprinter = this.positionPrinter;
-		} else {
-			final ClassicalPositionPrinter classicalPositionPrinter = new ClassicalPositionPrinter(this.getNodeIdMapping());
-			classicalPositionPrinter.setPrintSourcePositions(this.parsingBehaviour.isAddLineNumbers(), this.parsingBehaviour.isCompactPrologPositions());
-			pprinter = classicalPositionPrinter;
+	private static void printMachine(final IPrologTermOutput pout, final ASTProlog prolog, final Start machine, final boolean withFullstops) {
+		pout.openTerm("machine", 1);
+		machine.apply(prolog);
+		pout.closeTerm();
+		if (withFullstops) {
+			pout.fullstop();
 		}
-		final ASTProlog prolog = new ASTProlog(pout, pprinter);
-		for (final Map.Entry<String, Start> entry : this.getParsedMachines().entrySet()) {
-			pout.openTerm("machine");
-			entry.getValue().apply(prolog);
-			pout.closeTerm();
-			if (withFullstops) {
-				pout.fullstop();
-			}
+	}
+
+	private static void printPositionTables(final IPrologTermOutput pout, final PositionPrinter pprinter, final boolean withFullstops) {
+		// the tables are filled while printing the machines
+		if (pprinter instanceof ClassicalPositionPrinter) {
+			((ClassicalPositionPrinter) pprinter).printPositionTables(pout, withFullstops);
 		}
+	}
 
-		if (!withFullstops) {
-			pout.flush();
+	private PositionPrinter getPositionPrinter() {
+		if (this.positionPrinter != null) {
+			return this.positionPrinter;
 		}
+		final ClassicalPositionPrinter classicalPositionPrinter = new ClassicalPositionPrinter(this.getNodeIdMapping());
+		classicalPositionPrinter.setPrintSourcePositions(this.parsingBehaviour.isAddLineNumbers(), this.parsingBehaviour.isCompactPrologPositions());
+		classicalPositionPrinter.setUsePositionTable(this.parsingBehaviour.isPositionTable());
+		return classicalPositionPrinter;
 	}
 
 	/**
 	 * Tries to find a file containing the machine with the given file name.
 	 *
-	 * @return reference to a file containing the machine, may be non-existent
-	 * but never <code>null</code>.
-	 * @throws CheckException if the file cannot be found
+	 * @return reference to a file containing the machine, or <code>null</code>
+	 * if no such file exists
 	 */
-	private File lookupFile(final File parentMachineDirectory, final MachineReference machineRef,
-							List<Ancestor> ancestors, Collection<Path> importedDirs) throws CheckException {
+	private static File findMachineFile(final File parentMachineDirectory, final MachineReference machineRef, Collection<Path> importedDirs) {
 		for (final String suffix : SUFFICES) {
 			try {
 				final List<String> paths = importedDirs.stream()
@@ -246,6 +419,36 @@ public class RecursiveMachineLoader {
 				// suffix, trying next one
 			}
 		}
+		return null;
+	}
+
+	/**
+	 * Resolves the file of a referenced machine, taking a file pragma into account.
+	 *
+	 * @return the referenced file, or <code>null</code> if it cannot be found
+	 */
+	private static File resolveReferencedFile(final File directory, final MachineReference machineRef, Collection<Path> importedDirs) {
+		final String filePragma = machineRef.getPath();
+		if (filePragma == null) {
+			return findMachineFile(directory, machineRef, importedDirs);
+		}
+		final File p = new File(filePragma);
+		return p.isAbsolute() ? p : new File(directory, filePragma);
+	}
+
+	/**
+	 * Tries to find a file containing the machine with the given file name.
+	 *
+	 * @return reference to a file containing the machine, may be non-existent
+	 * but never <code>null</code>.
+	 * @throws CheckException if the file cannot be found
+	 */
+	private File lookupFile(final File parentMachineDirectory, final MachineReference machineRef,
+							List<Ancestor> ancestors, Collection<Path> importedDirs) throws CheckException {
+		final File machineFile = findMachineFile(parentMachineDirectory, machineRef, importedDirs);
+		if (machineFile != null) {
+			return machineFile;
+		}
 		StringBuilder sb = new StringBuilder();
 		sb.append("Machine not found: '");
 		sb.append(machineRef.getName());
@@ -307,7 +510,11 @@ public class RecursiveMachineLoader {
 					"Multiple files define the MACHINE '" + name + "' :"
 							+ parsedFiles.get(name) + " and " + machineFile.getName(), null));
 		} else {
-			getParsedMachines().put(name, currentAst);
+			if (streamingOutput != null) {
+				printMachine(streamingOutput, streamingPrinter, currentAst, true);
+			} else {
+				getParsedMachines().put(name, currentAst);
+			}
 			parsedFiles.put(name, machineFile);
 		}
 
@@ -319,6 +526,10 @@ public class RecursiveMachineLoader {
 
 		checkForCycles(ancestors, machineFile, name, refMachines);
 
+		if (parsingBehaviour.isParallelLoading()) {
+			prefetchReferencedMachines(directory, refMachines);
+		}
+
 		final List<MachineReference> references = refMachines.getReferences();
 		for (final MachineReference refMachine : references) {
 			final List<Ancestor> newAncestors = new ArrayList<>(ancestors);
@@ -357,7 +568,7 @@ public class RecursiveMachineLoader {
 				}
 			}
 
-			if (!getParsedMachines().containsKey(refMachine.getName())) {
+			if (!parsedFiles.containsKey(refMachine.getName())) {
 				try {
 					loadMachine(newAncestors, referencedFile);
 				} catch (BCompoundException e) {
@@ -460,4 +671,81 @@ public class RecursiveMachineLoader {
 			}
 		}
 	}
+
+	/**
+	 * Hands out copies of the definition files stored in another provider and stores copies in it,
+	 * so that machines parsed on different threads never use the same definitions.
+	 */
+	private static final class CopyingDefinitionFileProvider implements IDefinitionFileProvider {
+		private final IDefinitionFileProvider delegate;
+
+		CopyingDefinitionFileProvider(final IDefinitionFileProvider delegate) {
+			this.delegate = delegate;
+		}
+
+		private static IDefinitions copy(final IDefinitions definitions) {
+			return definitions == null ? null : definitions.copy();
+		}
+
+		@Override
+		public String getFileContent(final File directory, final String fileName) throws IOException {
+			return delegate.getFileContent(directory, fileName);
+		}
+
+		@Override
+		public File getFile(final File directory, final String fileName) throws IOException {
+			return delegate.getFile(directory, fileName);
+		}
+
+		@Override
+		public IDefinitions getDefinitions(final String fileName) {
+			return copy(delegate.getDefinitions(fileName));
+		}
+
+		@Override
+		public void storeDefinition(final String fileName, final IDefinitions definitions) {
+			delegate.storeDefinition(fileName, definitions.copy());
+		}
+
+		@Override
+		public IDefinitions getDefinitions(final File file, final String content, final ParseOptions options) {
+			return copy(delegate.getDefinitions(file, content, options));
+		}
+
+		@Override
+		public void storeDefinition(final String fileName, final File file, final String content, final ParseOptions options, final IDefinitions definitions) {
+			delegate.storeDefinition(fileName, file, content, options, definitions.copy());
+		}
+	}
+
+	/**
+	 * Result of parsing a single machine file, possibly on another thread.
+	 * A parse error is kept and only thrown when the machine is actually loaded.
+	 */
+	private static final class ParsedMachine {
+		private final Start ast;
+		private final IDefinitions definitions;
+		private final BCompoundException error;
+
+		ParsedMachine(final Start ast, final IDefinitions definitions, final BCompoundException error) {
+			this.ast = ast;
+			this.definitions = definitions;
+			this.error = error;
+		}
+
+		boolean isParsed() {
+			return error == null;
+		}
+
+		Start getAst() throws BCompoundException {
+			if (error != null) {
+				throw error;
+			}
+			return ast;
+		}
+
+		IDefinitions getDefinitions() {
+			return definitions;
+		}
+	}
 }
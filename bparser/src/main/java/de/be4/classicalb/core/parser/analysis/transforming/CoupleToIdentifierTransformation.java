@@ -3,6 +3,8 @@ package de.be4.classicalb.core.parser.analysis.transforming;
 import java.util.ArrayList;
 import java.util.List;
 
+import de.be4.classicalb.core.parser.analysis.AnalysisAdapter;
+import de.be4.classicalb.core.parser.analysis.FusedTraversal;
 import de.be4.classicalb.core.parser.analysis.OptimizedTraversingAdapter;
 import de.be4.classicalb.core.parser.node.AComprehensionSetExpression;
 import de.be4.classicalb.core.parser.node.ACoupleExpression;
@@ -21,6 +23,8 @@ import de.be4.classicalb.core.parser.node.PExpression;
  * @see de.be4.classicalb.core.parser.analysis.checking.IdentListCheck
  */
 public final class CoupleToIdentifierTransformation extends OptimizedTraversingAdapter {
+	private static final Lifter LIFTER = new Lifter();
+
 	private static List<PExpression> tryLift(List<? extends Node> identifiers) {
 		if (identifiers.size() == 1) {
 			Node child = identifiers.get(0);
@@ -36,33 +40,59 @@ public final class CoupleToIdentifierTransformation extends OptimizedTraversingA
 
 	@Override
 	public void inAComprehensionSetExpression(AComprehensionSetExpression node) {
-		List<PExpression> lifted = tryLift(node.getIdentifiers());
-		if (lifted != null) {
-			node.setIdentifiers(lifted);
-		}
+		node.apply(LIFTER);
 	}
 
 	@Override
 	public void inASymbolicComprehensionSetExpression(ASymbolicComprehensionSetExpression node) {
-		List<PExpression> lifted = tryLift(node.getIdentifiers());
-		if (lifted != null) {
-			node.setIdentifiers(lifted);
-		}
+		node.apply(LIFTER);
 	}
 
 	@Override
 	public void inAEventBComprehensionSetExpression(AEventBComprehensionSetExpression node) {
-		List<PExpression> lifted = tryLift(node.getIdentifiers());
-		if (lifted != null) {
-			node.setIdentifiers(lifted);
-		}
+		node.apply(LIFTER);
 	}
 	
 	@Override
 	public void inASymbolicEventBComprehensionSetExpression(ASymbolicEventBComprehensionSetExpression node) {
-		List<PExpression> lifted = tryLift(node.getIdentifiers());
-		if (lifted != null) {
-			node.setIdentifiers(lifted);
+		node.apply(LIFTER);
+	}
+
+	/**
+	 * Lifts the identifiers of a single node, without traversing its children.
+	 * Can be used as a pre-order pass of a {@link FusedTraversal}.
+	 */
+	public static final class Lifter extends AnalysisAdapter {
+		@Override
+		public void caseAComprehensionSetExpression(AComprehensionSetExpression node) {
+			List<PExpression> lifted = tryLift(node.getIdentifiers());
+			if (lifted != null) {
+				node.setIdentifiers(lifted);
+			}
+		}
+
+		@Override
+		public void caseASymbolicComprehensionSetExpression(ASymbolicComprehensionSetExpression node) {
+			List<PExpression> lifted = tryLift(node.getIdentifiers());
+			if (lifted != null) {
+				node.setIdentifiers(lifted);
+			}
+		}
+
+		@Override
+		public void caseAEventBComprehensionSetExpression(AEventBComprehensionSetExpression node) {
+			List<PExpression> lifted = tryLift(node.getIdentifiers());
+			if (lifted != null) {
+				node.setIdentifiers(lifted);
+			}
+		}
+
+		@Override
+		public void caseASymbolicEventBComprehensionSetExpression(ASymbolicEventBComprehensionSetExpression node) {
+			List<PExpression> lifted = tryLift(node.getIdentifiers());
+			if (lifted != null) {
+				node.setIdentifiers(lifted);
+			}
 		}
 	}
 }
@@ -2,33 +2,30 @@ package de.be4.classicalb.core.parser.analysis.transforming;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
-import de.be4.classicalb.core.parser.analysis.OptimizedTraversingAdapter;
+import de.be4.classicalb.core.parser.analysis.AnalysisAdapter;
+import de.be4.classicalb.core.parser.analysis.FusedTraversal;
 import de.be4.classicalb.core.parser.exceptions.CheckException;
 import de.be4.classicalb.core.parser.exceptions.VisitorException;
 import de.be4.classicalb.core.parser.node.*;
 import de.be4.classicalb.core.parser.util.Utils;
 
-public class SyntaxExtensionTranslator extends OptimizedTraversingAdapter {
-	/**
-	 * Cleans up the text contents of description pragma nodes by removing any whitespace surrounding the description.
-	 *
-	 * @param node the description pragma node to clean
-	 */
-	@Override
-	public void caseADescriptionPragma(ADescriptionPragma node) {
-		// Note: The grammar is defined so that a single TPragmaFreeText token is either all whitespace or all non-whitespace.
-
-		// Remove leading whitespace tokens.
-		while (!node.getParts().isEmpty() && node.getParts().get(0).getText().trim().isEmpty()) {
-			node.getParts().remove(0);
-		}
-
-		// Remove trailing whitespace tokens.
-		while (!node.getParts().isEmpty() && node.getParts().get(node.getParts().size() - 1).getText().trim().isEmpty()) {
-			node.getParts().remove(node.getParts().size() - 1);
-		}
+/**
+ * Translates syntax extensions into the core AST nodes.
+ * The translation consists of node-local passes,
+ * so other passes can be added to this traversal instead of traversing the AST again.
+ */
+public class SyntaxExtensionTranslator extends FusedTraversal {
+	// calls to built-in functions that are replaced once their arguments have been translated
+	private final Map<AFunctionExpression, String> builtInCalls = new IdentityHashMap<>();
+
+	public SyntaxExtensionTranslator() {
+		super();
+		this.addPreOrderPass(new PreOrderPass());
+		this.addPostOrderPass(new PostOrderPass());
 	}
 
 	private static void checkArgumentCount(final AFunctionExpression node, final int count) {
@@ -39,11 +36,6 @@ public class SyntaxExtensionTranslator extends OptimizedTraversingAdapter {
 		}
 	}
 
-	private static PExpression checkSingleArgument(final AFunctionExpression node) {
-		checkArgumentCount(node, 1);
-		return node.getParameters().get(0);
-	}
-
 	private PPredicate rewriteIfPredicate(PPredicate condition, PPredicate thenBlock, List<PPredicate> elsifs, PPredicate elseBlock) {
 		// IF P1 THEN P2 ELSIF P3 THEN P4 ... ELSE Pn END
 		// is equivalent to:
@@ -66,51 +58,6 @@ public class SyntaxExtensionTranslator extends OptimizedTraversingAdapter {
 		return new AConjunctPredicate(imp1, imp2);
 	}
 
-	@Override
-	public void outAIfPredicatePredicate(AIfPredicatePredicate node) {
-		PPredicate result = rewriteIfPredicate(node.getCondition(), node.getThen(), new ArrayList<>(node.getElsifs()), node.getElse());
-		result.setStartPos(node.getStartPos());
-		result.setEndPos(node.getEndPos());
-		node.replaceBy(result);
-	}
-
-	@Override
-	public void outAMultilineStringExpression(AMultilineStringExpression node) {
-		final TMultilineStringContent content = node.getContent();
-		final String text = content.getText();
-		// multiline strings do not have surrounding "
-		final String unescaped = Utils.unescapeStringContents(text);
-
-		AStringExpression stringNode = new AStringExpression(new TStringLiteral(unescaped, content.getLine(), content.getPos()));
-		stringNode.setStartPos(node.getStartPos());
-		stringNode.setEndPos(node.getEndPos());
-		node.replaceBy(stringNode);
-	}
-
-	@Override
-	public void caseTStringLiteral(TStringLiteral node) {
-		// Remove the surrounding quotes "..." from the string token content
-		// and process backslash escape sequences.
-		final String text = node.getText();
-		final String unescaped = Utils.unescapeStringContents(Utils.removeSurroundingQuotes(text, '"'));
-		node.setText(unescaped);
-	}
-
-	@Override
-	public void caseTIdentifierLiteral(final TIdentifierLiteral node) {
-		unquoteIdentifierToken(node);
-	}
-
-	@Override
-	public void caseTDefLiteralPredicate(final TDefLiteralPredicate node) {
-		unquoteIdentifierToken(node);
-	}
-
-	@Override
-	public void caseTDefLiteralSubstitution(final TDefLiteralSubstitution node) {
-		unquoteIdentifierToken(node);
-	}
-
 	private static void unquoteIdentifierToken(final Token token) {
 		final String text = token.getText();
 		// Unquote and unescape backquoted identifiers
@@ -123,21 +70,6 @@ public class SyntaxExtensionTranslator extends OptimizedTraversingAdapter {
 		}
 	}
 
-	@Override
-	public void outAHexIntegerExpression(AHexIntegerExpression node) {
-		// transform hex_integer into integer case (so that Prolog AST does not have to deal with new node):
-		THexLiteral literal = node.getLiteral();
-		String text = literal.getText().substring(2);
-		BigInteger value = new BigInteger(text, 16);
-
-		// generate an integer literal:
-		TIntegerLiteral tIntLiteral = new TIntegerLiteral(value.toString(), literal.getLine(), literal.getPos());
-		AIntegerExpression intNode = new AIntegerExpression(tIntLiteral);
-		intNode.setStartPos(node.getStartPos());
-		intNode.setEndPos(node.getEndPos());
-		node.replaceBy(intNode);
-	}
-
 	/**
 	 * Recognize calls to built-in functions that are not declared as keywords.
 	 * This allows using the keywords as regular identifiers
@@ -145,122 +77,256 @@ public class SyntaxExtensionTranslator extends OptimizedTraversingAdapter {
 	 * (and there they can be backquoted to suppress the built-in meaning).
 	 * This is helpful for rarely used keywords that are also common English words
 	 * (e. g. left, right, top).
+	 * <p>
+	 * Only the arguments are checked here. The call is replaced by {@link #replaceBuiltInCall(AFunctionExpression, String)}
+	 * after the arguments have been translated.
+	 * </p>
 	 *
-	 * @param node the function expression to transform
+	 * @param node the function expression to check
+	 * @return the name of the built-in function, or {@code null} if {@code node} is a regular function call
 	 */
-	@Override
-	public void caseAFunctionExpression(AFunctionExpression node) {
-		// It is important that this transformation runs *before* its children are processed
+	private static String checkBuiltInCall(final AFunctionExpression node) {
+		// It is important that this check runs *before* the children are processed
 		// so that backquoted identifiers haven't been unquoted yet.
 		// Otherwise the special case for backquoted identifiers below will not work correctly.
 		if (!(node.getIdentifier() instanceof AIdentifierExpression)) {
-			super.caseAFunctionExpression(node);
-			return;
+			return null;
 		}
 
 		final String funcName = Utils.getAIdentifierAsString((AIdentifierExpression) node.getIdentifier());
 		if (Utils.isQuoted(funcName, '`')) {
 			// Allow suppressing the built-in function by backquoting the function identifier.
-			super.caseAFunctionExpression(node);
-			return;
+			return null;
+		}
+
+		// Note: When adding a new case here, please update the AMBIGUOUS_KEYWORDS list in the Utils class
+		// and add the new node to replaceBuiltInCall!
+		switch (funcName) {
+			case "tree":
+			case "btree":
+			case "top":
+			case "sons":
+			case "prefix":
+			case "postfix":
+			case "sizet":
+			case "mirror":
+			case "left":
+			case "right":
+			case "infix":
+				checkArgumentCount(node, 1);
+				return funcName;
+
+			case "const":
+			case "rank":
+			case "father":
+			case "subtree":
+			case "arity":
+				checkArgumentCount(node, 2);
+				return funcName;
+
+			case "son":
+				checkArgumentCount(node, 3);
+				return funcName;
+
+			case "bin":
+				int paramCount = node.getParameters().size();
+				if (paramCount != 1 && paramCount != 3) {
+					throw new VisitorException(new CheckException("Built-in function " + funcName + " expects 1 or 3 arguments, but got " + paramCount, node));
+				}
+				return funcName;
+
+			default:
+				return null;
 		}
+	}
 
-		// Note: When adding a new case here, please update the AMBIGUOUS_KEYWORDS list in the Utils class!
+	private static void replaceBuiltInCall(final AFunctionExpression node, final String funcName) {
+		// copy the parameters, because creating the replacement removes them from node
+		final List<PExpression> params = new ArrayList<>(node.getParameters());
 		final Node replacement;
 		switch (funcName) {
 			case "tree":
-				replacement = new ATreeExpression(checkSingleArgument(node));
+				replacement = new ATreeExpression(params.get(0));
 				break;
 
 			case "btree":
-				replacement = new ABtreeExpression(checkSingleArgument(node));
+				replacement = new ABtreeExpression(params.get(0));
 				break;
 
 			case "const":
-				checkArgumentCount(node, 2);
-				replacement = new AConstExpression(node.getParameters().get(0), node.getParameters().get(1));
+				replacement = new AConstExpression(params.get(0), params.get(1));
 				break;
 
 			case "top":
-				replacement = new ATopExpression(checkSingleArgument(node));
+				replacement = new ATopExpression(params.get(0));
 				break;
 
 			case "sons":
-				replacement = new ASonsExpression(checkSingleArgument(node));
+				replacement = new ASonsExpression(params.get(0));
 				break;
 
 			case "prefix":
-				replacement = new APrefixExpression(checkSingleArgument(node));
+				replacement = new APrefixExpression(params.get(0));
 				break;
 
 			case "postfix":
-				replacement = new APostfixExpression(checkSingleArgument(node));
+				replacement = new APostfixExpression(params.get(0));
 				break;
 
 			case "sizet":
-				replacement = new ASizetExpression(checkSingleArgument(node));
+				replacement = new ASizetExpression(params.get(0));
 				break;
 
 			case "mirror":
-				replacement = new AMirrorExpression(checkSingleArgument(node));
+				replacement = new AMirrorExpression(params.get(0));
 				break;
 
 			case "rank":
-				checkArgumentCount(node, 2);
-				replacement = new ARankExpression(node.getParameters().get(0), node.getParameters().get(1));
+				replacement = new ARankExpression(params.get(0), params.get(1));
 				break;
 
 			case "father":
-				checkArgumentCount(node, 2);
-				replacement = new AFatherExpression(node.getParameters().get(0), node.getParameters().get(1));
+				replacement = new AFatherExpression(params.get(0), params.get(1));
 				break;
 
 			case "son":
-				checkArgumentCount(node, 3);
-				replacement = new ASonExpression(node.getParameters().get(0), node.getParameters().get(1), node.getParameters().get(2));
+				replacement = new ASonExpression(params.get(0), params.get(1), params.get(2));
 				break;
 
 			case "subtree":
-				checkArgumentCount(node, 2);
-				replacement = new ASubtreeExpression(node.getParameters().get(0), node.getParameters().get(1));
+				replacement = new ASubtreeExpression(params.get(0), params.get(1));
 				break;
 
 			case "arity":
-				checkArgumentCount(node, 2);
-				replacement = new AArityExpression(node.getParameters().get(0), node.getParameters().get(1));
+				replacement = new AArityExpression(params.get(0), params.get(1));
 				break;
 
 			case "bin":
-				int paramCount = node.getParameters().size();
-				if (paramCount == 1) {
-					replacement = new ABinExpression(node.getParameters().get(0), null, null);
-				} else if (paramCount == 3) {
-					replacement = new ABinExpression(node.getParameters().get(0), node.getParameters().get(1), node.getParameters().get(2));
+				if (params.size() == 1) {
+					replacement = new ABinExpression(params.get(0), null, null);
 				} else {
-					throw new VisitorException(new CheckException("Built-in function " + funcName + " expects 1 or 3 arguments, but got " + paramCount, node));
+					replacement = new ABinExpression(params.get(0), params.get(1), params.get(2));
 				}
 				break;
 
 			case "left":
-				replacement = new ALeftExpression(checkSingleArgument(node));
+				replacement = new ALeftExpression(params.get(0));
 				break;
 
 			case "right":
-				replacement = new ARightExpression(checkSingleArgument(node));
+				replacement = new ARightExpression(params.get(0));
 				break;
 
 			case "infix":
-				replacement = new AInfixExpression(checkSingleArgument(node));
+				replacement = new AInfixExpression(params.get(0));
 				break;
 
 			default:
-				super.caseAFunctionExpression(node);
-				return;
+				throw new IllegalArgumentException("Not a built-in function: " + funcName);
 		}
 
 		replacement.setStartPos(node.getStartPos());
 		replacement.setEndPos(node.getEndPos());
 		node.replaceBy(replacement);
-		replacement.apply(this);
+	}
+
+	private final class PreOrderPass extends AnalysisAdapter {
+		/**
+		 * Cleans up the text contents of description pragma nodes by removing any whitespace surrounding the description.
+		 *
+		 * @param node the description pragma node to clean
+		 */
+		@Override
+		public void caseADescriptionPragma(ADescriptionPragma node) {
+			// Note: The grammar is defined so that a single TPragmaFreeText token is either all whitespace or all non-whitespace.
+
+			// Remove leading whitespace tokens.
+			while (!node.getParts().isEmpty() && node.getParts().get(0).getText().trim().isEmpty()) {
+				node.getParts().remove(0);
+			}
+
+			// Remove trailing whitespace tokens.
+			while (!node.getParts().isEmpty() && node.getParts().get(node.getParts().size() - 1).getText().trim().isEmpty()) {
+				node.getParts().remove(node.getParts().size() - 1);
+			}
+		}
+
+		@Override
+		public void caseAFunctionExpression(AFunctionExpression node) {
+			final String funcName = checkBuiltInCall(node);
+			if (funcName != null) {
+				builtInCalls.put(node, funcName);
+			}
+		}
+
+		@Override
+		public void caseTStringLiteral(TStringLiteral node) {
+			// Remove the surrounding quotes "..." from the string token content
+			// and process backslash escape sequences.
+			final String text = node.getText();
+			final String unescaped = Utils.unescapeStringContents(Utils.removeSurroundingQuotes(text, '"'));
+			node.setText(unescaped);
+		}
+
+		@Override
+		public void caseTIdentifierLiteral(final TIdentifierLiteral node) {
+			unquoteIdentifierToken(node);
+		}
+
+		@Override
+		public void caseTDefLiteralPredicate(final TDefLiteralPredicate node) {
+			unquoteIdentifierToken(node);
+		}
+
+		@Override
+		public void caseTDefLiteralSubstitution(final TDefLiteralSubstitution node) {
+			unquoteIdentifierToken(node);
+		}
+	}
+
+	private final class PostOrderPass extends AnalysisAdapter {
+		@Override
+		public void caseAFunctionExpression(AFunctionExpression node) {
+			final String funcName = builtInCalls.remove(node);
+			if (funcName != null) {
+				replaceBuiltInCall(node, funcName);
+			}
+		}
+
+		@Override
+		public void caseAIfPredicatePredicate(AIfPredicatePredicate node) {
+			PPredicate result = rewriteIfPredicate(node.getCondition(), node.getThen(), new ArrayList<>(node.getElsifs()), node.getElse());
+			result.setStartPos(node.getStartPos());
+			result.setEndPos(node.getEndPos());
+			node.replaceBy(result);
+		}
+
+		@Override
+		public void caseAMultilineStringExpression(AMultilineStringExpression node) {
+			final TMultilineStringContent content = node.getContent();
+			final String text = content.getText();
+			// multiline strings do not have surrounding "
+			final String unescaped = Utils.unescapeStringContents(text);
+
+			AStringExpression stringNode = new AStringExpression(new TStringLiteral(unescaped, content.getLine(), content.getPos()));
+			stringNode.setStartPos(node.getStartPos());
+			stringNode.setEndPos(node.getEndPos());
+			node.replaceBy(stringNode);
+		}
+
+		@Override
+		public void caseAHexIntegerExpression(AHexIntegerExpression node) {
+			// transform hex_integer into integer case (so that Prolog AST does not have to deal with new node):
+			THexLiteral literal = node.getLiteral();
+			String text = literal.getText().substring(2);
+			BigInteger value = new BigInteger(text, 16);
+
+			// generate an integer literal:
+			TIntegerLiteral tIntLiteral = new TIntegerLiteral(value.toString(), literal.getLine(), literal.getPos());
+			AIntegerExpression intNode = new AIntegerExpression(tIntLiteral);
+			intNode.setStartPos(node.getStartPos());
+			intNode.setEndPos(node.getEndPos());
+			node.replaceBy(intNode);
+		}
 	}
 }
@@ -54,7 +54,7 @@ public abstract class IModel {
 		final ClassicalPositionPrinter pprinter = new ClassicalPositionPrinter(nodeIdMapping);
 		pprinter.setPrintSourcePositions(parsingBehaviour.isAddLineNumbers(), parsingBehaviour.isCompactPrologPositions());
 		final ASTProlog prolog = new ASTProlog(pout, pprinter);
-		pout.openTerm("machine");
+		pout.openTerm("machine", 1);
 		start.apply(prolog);
 		pout.closeTerm();
 		if (withFullstops) {
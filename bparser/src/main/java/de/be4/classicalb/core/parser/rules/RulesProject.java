@@ -634,7 +634,7 @@ public class RulesProject {
 
 	public void printAsPrologTermWithFullstops(final IPrologTermOutput pout, final boolean withFullstops) {
 		// parser version
-		pout.openTerm("parser_version");
+		pout.openTerm("parser_version", 1);
 		pout.printAtom(BParser.getGitSha());
 		pout.closeTerm();
 		if (withFullstops) {
@@ -642,7 +642,7 @@ public class RulesProject {
 		}
 
 		// machine metadata
-		pout.openTerm("classical_b");
+		pout.openTerm("classical_b", 2);
 		pout.printAtom(MAIN_MACHINE_NAME);
 		pout.openList();
 		for (File file : this.filesLoaded) {
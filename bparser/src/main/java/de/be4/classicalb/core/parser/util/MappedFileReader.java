@@ -0,0 +1,130 @@
+package de.be4.classicalb.core.parser.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a UTF-8 file through a memory mapping and decodes it in small chunks,
+ * so that the content of a large file is never held in the heap as a whole.
+ * <p>
+ * Like {@link Utils#readFile(File)}, a UTF-8 byte order mark is skipped
+ * and bytes that aren't valid UTF-8 are silently replaced.
+ * <p>
+ * {@link #reset()} restarts reading at the beginning of the file,
+ * like a {@link java.io.StringReader} on which {@link #mark(int)} has not been called,
+ * so that the input can be read by the pre-parser and then by the parser.
+ * Marking other positions is not supported.
+ */
+public final class MappedFileReader extends Reader {
+	private static final int CHUNK_SIZE = 8192;
+
+	private final MappedByteBuffer bytes;
+	private final int start;
+	private final CharsetDecoder decoder;
+	private final CharBuffer chars;
+	private boolean flushed;
+	private boolean closed;
+
+	public MappedFileReader(final File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File is too large: " + file);
+			}
+			// the mapping stays valid after the channel has been closed
+			this.bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		// skip utf-8 byte order mark
+		if (bytes.remaining() >= 3 && bytes.get(0) == (byte) 0xef && bytes.get(1) == (byte) 0xbb && bytes.get(2) == (byte) 0xbf) {
+			this.start = 3;
+		} else {
+			this.start = 0;
+		}
+		// cast to Buffer, the covariant overrides in ByteBuffer/CharBuffer don't exist in Java 8
+		((Buffer) this.bytes).position(start);
+
+		this.decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.chars = CharBuffer.allocate(CHUNK_SIZE);
+		((Buffer) this.chars).flip();
+		this.flushed = false;
+		this.closed = false;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	private boolean fill() throws IOException {
+		((Buffer) chars).clear();
+		// all remaining input is available, so decoding only stops when the char buffer is full
+		CoderResult result = decoder.decode(bytes, chars, true);
+		if (result.isError()) {
+			result.throwException();
+		}
+		if (!bytes.hasRemaining() && !flushed && !result.isOverflow()) {
+			result = decoder.flush(chars);
+			flushed = !result.isOverflow();
+		}
+		((Buffer) chars).flip();
+		return chars.hasRemaining();
+	}
+
+	@Override
+	public int read(final char[] cbuf, final int off, final int len) throws IOException {
+		ensureOpen();
+		if (len == 0) {
+			return 0;
+		}
+		if (!chars.hasRemaining() && !fill()) {
+			return -1;
+		}
+		final int n = Math.min(len, chars.remaining());
+		chars.get(cbuf, off, n);
+		return n;
+	}
+
+	@Override
+	public int read() throws IOException {
+		ensureOpen();
+		if (!chars.hasRemaining() && !fill()) {
+			return -1;
+		}
+		return chars.get();
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		ensureOpen();
+		return true;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		ensureOpen();
+		((Buffer) bytes).position(start);
+		decoder.reset();
+		((Buffer) chars).clear();
+		((Buffer) chars).flip();
+		flushed = false;
+	}
+
+	@Override
+	public void close() {
+		// the mapping is released by the garbage collector
+		closed = true;
+	}
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -179,20 +180,35 @@ public final class Utils {
 			|| parseUnit instanceof AImplementationMachineParseUnit || parseUnit instanceof APackageParseUnit);
 	}
 
+	/**
+	 * Sorts the keys of the given map so that every element comes after all of its dependencies.
+	 * Elements that are part of a cycle or depend on one are not contained in the result.
+	 *
+	 * @param dependencies the dependencies of every element
+	 * @return the sorted elements
+	 */
 	public static <T> List<T> sortByTopologicalOrder(final Map<T, Set<T>> dependencies) {
-		final Set<T> allValues = new HashSet<>(dependencies.keySet());
-		ArrayList<T> sortedList = new ArrayList<>();
-		boolean newRun = true;
-		while (newRun) {
-			newRun = false;
-			final ArrayList<T> todo = new ArrayList<>(allValues);
-			todo.removeAll(sortedList);
-			for (T element : todo) {
-				Set<T> deps = new HashSet<>(dependencies.get(element));
-				deps.removeAll(sortedList);
-				if (deps.isEmpty()) {
-					sortedList.add(element);
-					newRun = true;
+		final Map<T, Integer> missingDependencies = new HashMap<>();
+		final Map<T, List<T>> dependents = new HashMap<>();
+		final ArrayDeque<T> ready = new ArrayDeque<>();
+		for (Map.Entry<T, Set<T>> entry : dependencies.entrySet()) {
+			for (T dependency : entry.getValue()) {
+				dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(entry.getKey());
+			}
+			if (entry.getValue().isEmpty()) {
+				ready.add(entry.getKey());
+			} else {
+				missingDependencies.put(entry.getKey(), entry.getValue().size());
+			}
+		}
+
+		final List<T> sortedList = new ArrayList<>(dependencies.size());
+		while (!ready.isEmpty()) {
+			final T element = ready.poll();
+			sortedList.add(element);
+			for (T dependent : dependents.getOrDefault(element, Collections.emptyList())) {
+				if (missingDependencies.merge(dependent, -1, Integer::sum) == 0) {
+					ready.add(dependent);
 				}
 			}
 		}
@@ -2,6 +2,10 @@ package de.be4.classicalb.core.parser;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import de.be4.classicalb.core.parser.analysis.prolog.ASTProlog;
 import de.be4.classicalb.core.parser.analysis.prolog.ClassicalPositionPrinter;
@@ -9,6 +13,8 @@ import de.be4.classicalb.core.parser.analysis.prolog.INodeIds;
 import de.be4.classicalb.core.parser.analysis.prolog.NodeFileNumbers;
 import de.be4.classicalb.core.parser.analysis.prolog.PositionPrinter;
 import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.AAbstractMachineParseUnit;
+import de.be4.classicalb.core.parser.node.AAddExpression;
 import de.be4.classicalb.core.parser.node.AAssignSubstitution;
 import de.be4.classicalb.core.parser.node.AConstructorFreetypeConstructor;
 import de.be4.classicalb.core.parser.node.ADisjunctPredicate;
@@ -24,6 +30,7 @@ import de.be4.classicalb.core.parser.node.AIntegerExpression;
 import de.be4.classicalb.core.parser.node.AIntegerSetExpression;
 import de.be4.classicalb.core.parser.node.APartitionPredicate;
 import de.be4.classicalb.core.parser.node.APowSubsetExpression;
+import de.be4.classicalb.core.parser.node.APropertiesMachineClause;
 import de.be4.classicalb.core.parser.node.ATruthPredicate;
 import de.be4.classicalb.core.parser.node.AWitness;
 import de.be4.classicalb.core.parser.node.Node;
@@ -400,4 +407,65 @@ public class ASTPrologTest {
 		checkAST("freetypes(none,[freetype(none,'T',[],[constructor(none,multi,pow_subset(none,integer_set(none))),constructor(none,single,integer_set(none))])])", clause);
 	}
 
+	@Test
+	public void testDeeplyNestedExpression() {
+		// deep enough to overflow the default stack with a recursive traversal
+		final int depth = 100000;
+		PExpression expr = new AIntegerExpression(new TIntegerLiteral("0"));
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 1; i <= depth; i++) {
+			expr = new AAddExpression(expr, new AIntegerExpression(new TIntegerLiteral("1")));
+			expected.append("add(none,");
+		}
+		expected.append("integer(none,0)");
+		for (int i = 1; i <= depth; i++) {
+			expected.append(",integer(none,1))");
+		}
+
+		checkAST(expected.toString(), expr);
+	}
+
+	@Test
+	public void testPositionTable() throws BCompoundException {
+		final Start ast = new BParser("testcase").parseMachine("MACHINE Test\nCONSTANTS c\nPROPERTIES\n  c = 1 &\n  (c > 0 or\n   c < 10)\nEND");
+		final INodeIds nodeIds = new NodeFileNumbers();
+		nodeIds.assignIdentifiers(1, ast);
+		nodeIds.assignIdentifiers(2, ((APropertiesMachineClause)((AAbstractMachineParseUnit)ast.getPParseUnit()).getMachineClauses().get(1)).getPredicates());
+
+		final ClassicalPositionPrinter positions = new ClassicalPositionPrinter(nodeIds);
+		positions.setPrintSourcePositions(true, false);
+		final PrologTermStringOutput expected = new PrologTermStringOutput();
+		ast.apply(new ASTProlog(expected, positions));
+
+		final ClassicalPositionPrinter table = new ClassicalPositionPrinter(nodeIds);
+		table.setPrintSourcePositions(true, false);
+		table.setUsePositionTable(true);
+		final PrologTermStringOutput withIndices = new PrologTermStringOutput();
+		ast.apply(new ASTProlog(withIndices, table));
+		final PrologTermStringOutput tables = new PrologTermStringOutput();
+		table.printPositionTables(tables, true);
+
+		// decode the tables and replace the indices by the positions
+		final Map<String, String> positionsByIndex = new HashMap<>();
+		final Matcher tableMatcher = Pattern.compile("position_table\\((\\d+),\\[([-\\d,]*)\\]\\)\\.").matcher(tables.toString());
+		while (tableMatcher.find()) {
+			final String[] entries = tableMatcher.group(2).split(",");
+			int index = 0;
+			int startLine = 0;
+			for (int i = 0; i < entries.length; i += 5) {
+				index += Integer.parseInt(entries[i]);
+				startLine += Integer.parseInt(entries[i + 1]);
+				final int endLine = startLine + Integer.parseInt(entries[i + 3]);
+				positionsByIndex.put(String.valueOf(index), "pos(-1," + tableMatcher.group(1) + "," + startLine + "," + entries[i + 2] + "," + endLine + "," + entries[i + 4] + ")");
+			}
+		}
+		assertEquals(2, tables.toString().split("position_table").length - 1);
+		final Matcher indexMatcher = Pattern.compile("pt\\((\\d+)\\)").matcher(withIndices.toString());
+		final StringBuffer decoded = new StringBuffer();
+		while (indexMatcher.find()) {
+			indexMatcher.appendReplacement(decoded, positionsByIndex.get(indexMatcher.group(1)));
+		}
+		indexMatcher.appendTail(decoded);
+		assertEquals(expected.toString(), decoded.toString());
+	}
 }
@@ -0,0 +1,64 @@
+package de.be4.classicalb.core.parser;
+
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+
+import org.junit.Test;
+
+import util.Helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertThrows;
+
+public class FormulaParsingSessionTest {
+
+	@Test
+	public void testSameResultAsBParser() throws BCompoundException {
+		final FormulaParsingSession session = new FormulaParsingSession();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(Helpers.getExpressionAsPrologTerm("1+x"), Helpers.getTreeAsPrologTerm(session.parseExpression("1+x")));
+			assertEquals(Helpers.getPredicateAsPrologTerm("x = 1"), Helpers.getTreeAsPrologTerm(session.parsePredicate("x = 1")));
+			assertEquals(Helpers.getSubstitutionAsPrologTerm("x := 1"), Helpers.getTreeAsPrologTerm(session.parseSubstitution("x := 1")));
+		}
+	}
+
+	@Test
+	public void testStartPosition() throws BCompoundException {
+		final FormulaParsingSession session = new FormulaParsingSession();
+		session.setStartPosition(3, 5);
+		final BCompoundException e = assertThrows(BCompoundException.class, () -> session.parseExpression("1 +"));
+
+		final BParser parser = new BParser();
+		parser.setStartPosition(3, 5);
+		final BCompoundException expected = assertThrows(BCompoundException.class, () -> parser.parseExpression("1 +"));
+		assertEquals(expected.getMessage(), e.getMessage());
+	}
+
+	@Test
+	public void testDefinitionsChanged() throws BCompoundException {
+		final MockedDefinitions definitions = new MockedDefinitions();
+		definitions.addMockedDefinition("first", IDefinitions.Type.Predicate, 0);
+		final FormulaParsingSession session = new FormulaParsingSession();
+		session.setDefinitions(definitions);
+		session.parsePredicate("first");
+		assertThrows(BCompoundException.class, () -> session.parsePredicate("second"));
+
+		definitions.addMockedDefinition("second", IDefinitions.Type.Predicate, 0);
+		session.definitionsChanged();
+		session.parsePredicate("second");
+		session.fork().parsePredicate("first & second");
+	}
+
+	@Test
+	public void testForkCopiesDefinitions() throws BCompoundException {
+		final MockedDefinitions definitions = new MockedDefinitions();
+		definitions.addMockedDefinition("first", IDefinitions.Type.Predicate, 0);
+		final FormulaParsingSession session = new FormulaParsingSession();
+		session.setDefinitions(definitions);
+
+		final FormulaParsingSession forked = session.fork();
+		assertNotSame(definitions, forked.getParser().getDefinitions());
+		assertEquals(IDefinitions.Type.Predicate, forked.getParser().getDefinitions().getType("first"));
+		forked.parsePredicate("first");
+	}
+}
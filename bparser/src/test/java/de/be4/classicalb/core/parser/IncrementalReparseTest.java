@@ -0,0 +1,75 @@
+package de.be4.classicalb.core.parser;
+
+import de.be4.classicalb.core.parser.analysis.prolog.ASTProlog;
+import de.be4.classicalb.core.parser.analysis.prolog.ClassicalPositionPrinter;
+import de.be4.classicalb.core.parser.analysis.prolog.NodeFileNumbers;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.Start;
+import de.prob.prolog.output.PrologTermStringOutput;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class IncrementalReparseTest {
+	private static final String MACHINE = "MACHINE Test\n"
+		+ "DEFINITIONS pos(x) == x > 0\n"
+		+ "CONSTANTS c\n"
+		+ "PROPERTIES c = 1\n"
+		+ "VARIABLES v\n"
+		+ "INVARIANT v : INTEGER & pos(v)\n"
+		+ "INITIALISATION v := 1\n"
+		+ "OPERATIONS\n"
+		+ "  inc = PRE pos(v) THEN v := v + 1 END;\n"
+		+ "  dec = v := v - 1; r <-- get = r := v\n"
+		+ "END\n";
+
+	private static String getTreeWithPositions(final Start ast) {
+		final NodeFileNumbers nodeIds = new NodeFileNumbers();
+		nodeIds.assignIdentifiers(1, ast);
+		final PrologTermStringOutput pout = new PrologTermStringOutput();
+		ast.apply(new ASTProlog(pout, new ClassicalPositionPrinter(nodeIds)));
+		return pout.toString();
+	}
+
+	/**
+	 * Applies the edit incrementally and checks that the result is the same as after parsing the edited machine from scratch.
+	 */
+	private static Start checkReparse(final String search, final String replacement) throws BCompoundException {
+		final BParser parser = new BParser("Test");
+		final Start ast = parser.parseMachine(MACHINE);
+		final int offset = MACHINE.indexOf(search);
+		final Start result = parser.reparseMachineClause(ast, MACHINE, offset, search.length(), replacement);
+		if (result != null) {
+			final String edited = MACHINE.substring(0, offset) + replacement + MACHINE.substring(offset + search.length());
+			final Start expected = new BParser("Test").parseMachine(edited);
+			assertSame(ast, result);
+			assertEquals(getTreeWithPositions(expected), getTreeWithPositions(result));
+		}
+		return result;
+	}
+
+	@Test
+	public void testEditInOperation() throws BCompoundException {
+		assertNotNull(checkReparse("v := v + 1", "v := v + 10"));
+		assertNotNull(checkReparse("v - 1", "v -\n\n 1"));
+		assertNotNull(checkReparse("r := v", "r := v + 1"));
+	}
+
+	@Test
+	public void testEditInClause() throws BCompoundException {
+		assertNotNull(checkReparse("c = 1", "c = 1 & pos(c)"));
+		assertNotNull(checkReparse("v : INTEGER", "v :\r\nNATURAL"));
+	}
+
+	@Test
+	public void testEditThatCannotBeAppliedIncrementally() throws BCompoundException {
+		assertNull(checkReparse("x > 0", "x >= 0"));
+		assertNull(checkReparse("v := 1\nOPERATIONS", "v := 1\nINVARIANT v > 0\nOPERATIONS"));
+		assertNull(checkReparse("PROPERTIES c = 1", "VALUES c = 1"));
+		assertNull(checkReparse("v + 1", "v +"));
+	}
+}
@@ -1,8 +1,10 @@
 package de.be4.classicalb.core.parser;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 
 import de.be4.classicalb.core.parser.node.Start;
+import de.prob.prolog.output.FastSicstusTermOutput;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -36,4 +38,12 @@ public class ParsableMachineTest {
 		start.apply(new PositionTester());
 		assertNotNull(start);
 	}
+
+	@Test
+	public void testAritiesOfPrologTerms() throws Exception {
+		final BParser parser = new BParser(machine.getName());
+		Start start = parser.parseFile(machine);
+		// the fast output checks the announced arity of every term when it is closed
+		Helpers.printAsProlog(start, new FastSicstusTermOutput(new ByteArrayOutputStream(), true));
+	}
 }
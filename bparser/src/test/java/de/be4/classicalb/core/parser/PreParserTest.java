@@ -4,12 +4,19 @@ import java.io.IOException;
 import java.io.PushbackReader;
 import java.io.StringReader;
 
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.Start;
 import de.be4.classicalb.core.preparser.lexer.LexerException;
 import de.be4.classicalb.core.preparser.parser.Parser;
 import de.be4.classicalb.core.preparser.parser.ParserException;
 
 import org.junit.Test;
 
+import util.Helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
 public class PreParserTest {
 
 	private static void preparse(final String testMachine)
@@ -74,4 +81,73 @@ public class PreParserTest {
 		preparse(testMachine);
 	}
 
+	@Test
+	public void testDefinitionsUsingLaterDefinitions() throws Exception {
+		final StringBuilder machine = new StringBuilder("MACHINE Test DEFINITIONS\n");
+		// every definition uses the one declared after it
+		for (int i = 0; i < 50; i++) {
+			machine.append("def").append(i).append(" == def").append(i + 1).append(";\n");
+		}
+		machine.append("def50 == 1 = 1;\n");
+		machine.append("sub == IF def0 THEN skip END\n");
+		machine.append("END");
+		final BParser parser = new BParser("Test");
+		parser.parseMachine(machine.toString());
+		for (int i = 0; i <= 50; i++) {
+			assertEquals(IDefinitions.Type.Predicate, parser.getDefinitions().getType("def" + i));
+		}
+		assertEquals(IDefinitions.Type.Substitution, parser.getDefinitions().getType("sub"));
+	}
+
+	@Test
+	public void testFirstDeclaredFailingDefinitionIsReported() {
+		final String testMachine = "MACHINE Test DEFINITIONS\n"
+			+ "ok == 1;\n"
+			+ "zz == 1 +;\n"
+			+ "aa == (1;\n"
+			+ "usesZz == zz + 1;\n"
+			+ "usesAa == aa\n"
+			+ "END";
+		// the order in which independent definitions are typed must not matter
+		for (final boolean parallel : new boolean[] {false, true}) {
+			final ParseOptions options = new ParseOptions();
+			options.setParallelDefinitionTyping(parallel);
+			final BCompoundException e = assertThrows(BCompoundException.class, () -> new BParser("Test", options).parseMachine(testMachine));
+			assertEquals(3, e.getFirstException().getLocations().get(0).getStartLine());
+		}
+	}
+
+	private static String definitionsMachine(final String extraDefinition) {
+		final StringBuilder machine = new StringBuilder("MACHINE Test DEFINITIONS\n");
+		for (int i = 0; i < 100; i++) {
+			machine.append("expr").append(i).append("(x) == x + ").append(i).append(";\n");
+			machine.append("pred").append(i).append("(x) == expr").append(i).append("(x) > ").append(i).append(";\n");
+			machine.append("sub").append(i).append(" == IF pred").append(i).append("(1) THEN skip END;\n");
+		}
+		machine.append(extraDefinition);
+		machine.append("END");
+		return machine.toString();
+	}
+
+	private static String parseWithParallelDefinitionTyping(final String testMachine) throws Exception {
+		final ParseOptions options = new ParseOptions();
+		options.setParallelDefinitionTyping(true);
+		final BParser parser = new BParser("Test", options);
+		final Start start = parser.parseMachine(testMachine);
+		return Helpers.getTreeAsPrologTerm(start);
+	}
+
+	@Test
+	public void testParallelDefinitionTyping() throws Exception {
+		final String testMachine = definitionsMachine("last == sub0; sub1\n");
+		assertEquals(Helpers.getMachineAsPrologTerm(testMachine), parseWithParallelDefinitionTyping(testMachine));
+	}
+
+	@Test
+	public void testParallelDefinitionTypingReportsSameError() {
+		final String testMachine = definitionsMachine("broken == pred1(1) +\n");
+		final BCompoundException expected = assertThrows(BCompoundException.class, () -> new BParser("Test").parseMachine(testMachine));
+		final BCompoundException actual = assertThrows(BCompoundException.class, () -> parseWithParallelDefinitionTyping(testMachine));
+		assertEquals(expected.getMessage(), actual.getMessage());
+	}
 }
@@ -0,0 +1,161 @@
+package de.be4.classicalb.core.parser.analysis;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.be4.classicalb.core.parser.node.Node;
+import de.be4.classicalb.core.parser.node.Start;
+import de.be4.classicalb.core.parser.node.Token;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * {@link DeferringDepthFirstAdapter} finds the children of a node by reflection,
+ * so this test checks for all node classes generated from the grammar
+ * that it visits the children in the same order as {@link DepthFirstAdapter}.
+ */
+public class DeferringDepthFirstAdapterTest {
+
+	/**
+	 * @return the classes of all productions and {@link Start}, taken from the {@code case...} methods of {@link Analysis}
+	 */
+	private static List<Class<? extends Node>> getNodeClasses() {
+		final List<Class<? extends Node>> nodeClasses = new ArrayList<>();
+		for (final Method method : Analysis.class.getMethods()) {
+			if (method.getName().startsWith("case") && method.getParameterCount() == 1) {
+				final Class<?> type = method.getParameterTypes()[0];
+				if (Node.class.isAssignableFrom(type) && !Token.class.isAssignableFrom(type)) {
+					nodeClasses.add(type.asSubclass(Node.class));
+				}
+			}
+		}
+		return nodeClasses;
+	}
+
+	private static List<Method> getChildSetters(final Class<? extends Node> nodeClass) {
+		final List<Method> setters = new ArrayList<>();
+		for (final Method method : nodeClass.getDeclaredMethods()) {
+			if (method.getName().startsWith("set") && method.getParameterCount() == 1 && Modifier.isPublic(method.getModifiers())) {
+				final Class<?> parameterType = method.getParameterTypes()[0];
+				if (Node.class.isAssignableFrom(parameterType) || List.class.isAssignableFrom(parameterType)) {
+					setters.add(method);
+				}
+			}
+		}
+		return setters;
+	}
+
+	private static final class ChildFactory {
+		// an alternative for every production
+		private final Map<Class<?>, Class<?>> alternatives = new HashMap<>();
+
+		ChildFactory(final List<Class<? extends Node>> nodeClasses) {
+			for (final Class<? extends Node> nodeClass : nodeClasses) {
+				alternatives.putIfAbsent(nodeClass.getSuperclass(), nodeClass);
+			}
+		}
+
+		Node create(final Class<?> type) throws ReflectiveOperationException {
+			Class<?> concreteType = type;
+			if (Modifier.isAbstract(type.getModifiers())) {
+				concreteType = alternatives.get(type);
+				assertNotNull("No alternative for " + type.getSimpleName(), concreteType);
+			}
+			try {
+				return (Node) concreteType.getConstructor().newInstance();
+			} catch (NoSuchMethodException e) {
+				// tokens with variable text
+				return (Node) concreteType.getConstructor(String.class).newInstance("x");
+			}
+		}
+
+		/**
+		 * Sets every child of the given node to a new node without children.
+		 */
+		void setChildren(final Node node) throws ReflectiveOperationException {
+			for (final Method setter : getChildSetters(node.getClass())) {
+				final Class<?> parameterType = setter.getParameterTypes()[0];
+				if (Node.class.isAssignableFrom(parameterType)) {
+					setter.invoke(node, create(parameterType));
+				} else {
+					final Class<?> elementType = getElementType(node.getClass().getMethod("get" + setter.getName().substring(3)));
+					setter.invoke(node, Arrays.asList(create(elementType), create(elementType)));
+				}
+			}
+		}
+
+		private static Class<?> getElementType(final Method listGetter) {
+			Type elementType = ((ParameterizedType) listGetter.getGenericReturnType()).getActualTypeArguments()[0];
+			if (elementType instanceof WildcardType) {
+				elementType = ((WildcardType) elementType).getUpperBounds()[0];
+			}
+			return (Class<?>) elementType;
+		}
+	}
+
+	/**
+	 * Records the children in the order in which the generated adapter applies itself to them.
+	 */
+	private static final class RecursiveRecorder extends DepthFirstAdapter {
+		private final Node root;
+		final List<Node> children = new ArrayList<>();
+
+		RecursiveRecorder(final Node root) {
+			this.root = root;
+		}
+
+		@Override
+		public void defaultIn(final Node node) {
+			if (node != root) {
+				children.add(node);
+			}
+		}
+
+		@Override
+		public void defaultCase(final Node node) {
+			// tokens
+			children.add(node);
+		}
+	}
+
+	private static final class DeferringRecorder extends DeferringDepthFirstAdapter {
+		final List<Node> children = new ArrayList<>();
+
+		@Override
+		protected void visit(final Node node) {
+			if (node != null) {
+				children.add(node);
+			}
+		}
+	}
+
+	@Test
+	public void testChildrenAreVisitedInSameOrder() throws ReflectiveOperationException {
+		final List<Class<? extends Node>> nodeClasses = getNodeClasses();
+		assertFalse(nodeClasses.isEmpty());
+		final ChildFactory factory = new ChildFactory(nodeClasses);
+		for (final Class<? extends Node> nodeClass : nodeClasses) {
+			final Node node = nodeClass.getConstructor().newInstance();
+			factory.setChildren(node);
+
+			final RecursiveRecorder expected = new RecursiveRecorder(node);
+			node.apply(expected);
+			final DeferringRecorder actual = new DeferringRecorder();
+			node.apply(actual);
+			assertEquals(nodeClass.getSimpleName(), expected.children, actual.children);
+			assertEquals(nodeClass.getSimpleName(), expected.children.size(), actual.countChildren(node));
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package de.be4.classicalb.core.parser.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.ParseOptions;
+import de.be4.classicalb.core.parser.analysis.transforming.CoupleToIdentifierTransformation;
+import de.be4.classicalb.core.parser.analysis.transforming.SyntaxExtensionTranslator;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.AConjunctPredicate;
+import de.be4.classicalb.core.parser.node.AIntegerExpression;
+import de.be4.classicalb.core.parser.node.Start;
+
+import org.junit.Test;
+
+import util.Helpers;
+
+import static org.junit.Assert.assertEquals;
+
+public class FusedTraversalTest {
+
+	private static Start parseWithoutTransformations(final String machine) throws BCompoundException {
+		final ParseOptions options = new ParseOptions();
+		options.setApplyASTTransformations(false);
+		return new BParser("Test", options).parseMachine(machine);
+	}
+
+	@Test
+	public void testPassesAreAppliedInOrder() throws BCompoundException {
+		final Start ast = parseWithoutTransformations("MACHINE Test PROPERTIES 1 = 1 & 2 = 2 & 3 = 3 & 4 = 4 END");
+		final List<String> events = new ArrayList<>();
+		ast.apply(new FusedTraversal()
+			.addPreOrderPass(new AnalysisAdapter() {
+				@Override
+				public void caseAConjunctPredicate(final AConjunctPredicate node) {
+					events.add("in");
+				}
+
+				@Override
+				public void caseAIntegerExpression(final AIntegerExpression node) {
+					events.add(node.getLiteral().getText());
+				}
+			})
+			.addPostOrderPass(new AnalysisAdapter() {
+				@Override
+				public void caseAConjunctPredicate(final AConjunctPredicate node) {
+					events.add("out");
+				}
+			}));
+		assertEquals(Arrays.asList("in", "in", "in", "1", "1", "2", "2", "out", "3", "3", "out", "4", "4", "out"), events);
+	}
+
+	@Test
+	public void testFusedTransformationsMatchSeparateTraversals() throws BCompoundException {
+		final String machine = "MACHINE Test\n"
+			+ "CONSTANTS c\n"
+			+ "PROPERTIES c = {(x,y) | x : 1..0xA & y = tree(x) & IF x > 1 THEN y = `left` ELSE 1 = 1 END}\n"
+			+ "  & c /= {} & \"a\\tb\" /= \"c\" & left(1) /= `tree`(1)\n"
+			+ "END";
+		final Start separate = parseWithoutTransformations(machine);
+		separate.apply(new CoupleToIdentifierTransformation());
+		separate.apply(new SyntaxExtensionTranslator());
+		final Start fused = parseWithoutTransformations(machine);
+		fused.apply(new SyntaxExtensionTranslator().addPreOrderPass(new CoupleToIdentifierTransformation.Lifter()));
+		assertEquals(Helpers.getTreeAsPrologTerm(separate), Helpers.getTreeAsPrologTerm(fused));
+	}
+}
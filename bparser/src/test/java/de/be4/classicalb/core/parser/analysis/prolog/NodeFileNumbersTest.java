@@ -0,0 +1,97 @@
+package de.be4.classicalb.core.parser.analysis.prolog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.analysis.DepthFirstAdapter;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.AOperation;
+import de.be4.classicalb.core.parser.node.APropertiesMachineClause;
+import de.be4.classicalb.core.parser.node.Node;
+import de.be4.classicalb.core.parser.node.Start;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NodeFileNumbersTest {
+	private static final String MACHINE = "MACHINE Test\n"
+		+ "CONSTANTS c\n"
+		+ "PROPERTIES c = 1 & c > 0 & c < 10\n"
+		+ "OPERATIONS\n"
+		+ "  op1 = skip;\n"
+		+ "  r <-- op2 = r := c + 1\n"
+		+ "END\n";
+
+	private static List<Node> collectNodes(final Start ast) {
+		final List<Node> nodes = new ArrayList<>();
+		ast.apply(new DepthFirstAdapter() {
+			@Override
+			public void defaultIn(final Node node) {
+				nodes.add(node);
+			}
+
+			@Override
+			public void defaultCase(final Node node) {
+				nodes.add(node);
+			}
+		});
+		return nodes;
+	}
+
+	private static int expectedFileNumber(final Node node) {
+		for (Node current = node; current != null; current = current.parent()) {
+			if (current instanceof Start) {
+				return 1;
+			} else if (current instanceof APropertiesMachineClause) {
+				return 2;
+			} else if (current instanceof AOperation && "op2".equals(((AOperation)current).getOpName().get(0).getText())) {
+				return 3;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void testLookupInAnyOrder() throws BCompoundException {
+		final Start ast = new BParser("Test").parseMachine(MACHINE);
+		final List<Node> nodes = collectNodes(ast);
+		final NodeFileNumbers nodeIds = new NodeFileNumbers();
+		nodeIds.assignIdentifiers(1, ast);
+		for (final Node node : nodes) {
+			if (node instanceof APropertiesMachineClause) {
+				nodeIds.assignIdentifiers(2, node);
+			} else if (node instanceof AOperation && expectedFileNumber(node) == 3) {
+				nodeIds.assignIdentifiers(3, node);
+			}
+		}
+
+		for (final Node node : nodes) {
+			assertEquals(node.toString(), expectedFileNumber(node), nodeIds.lookupFileNumber(node));
+		}
+		Collections.reverse(nodes);
+		for (final Node node : nodes) {
+			assertEquals(node.toString(), expectedFileNumber(node), nodeIds.lookupFileNumber(node));
+		}
+		Collections.shuffle(nodes, new Random(42));
+		for (final Node node : nodes) {
+			assertEquals(node.toString(), expectedFileNumber(node), nodeIds.lookupFileNumber(node));
+		}
+	}
+
+	@Test
+	public void testNodesWithoutFileNumber() throws BCompoundException {
+		final Start ast = new BParser("Test").parseMachine(MACHINE);
+		final NodeFileNumbers nodeIds = new NodeFileNumbers();
+		for (final Node node : collectNodes(ast)) {
+			assertEquals(-1, nodeIds.lookupFileNumber(node));
+		}
+		nodeIds.assignIdentifiers(4, ast);
+		for (final Node node : collectNodes(ast)) {
+			assertEquals(4, nodeIds.lookupFileNumber(node));
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package de.be4.classicalb.core.parser.composition;
+
+import java.io.IOException;
+
+import de.be4.classicalb.core.parser.ParsingBehaviour;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.exceptions.CheckException;
+
+import org.junit.Test;
+
+import util.Helpers;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelLoadingTest {
+
+	private static ParsingBehaviour parallelLoading() {
+		final ParsingBehaviour parsingBehaviour = new ParsingBehaviour();
+		parsingBehaviour.setMachineNameMustMatchFileName(true);
+		parsingBehaviour.setParallelLoading(true);
+		return parsingBehaviour;
+	}
+
+	@Test
+	public void testSameOutputAsSequentialLoading() throws IOException, BCompoundException {
+		for (final String file : new String[] {"pragmas/filePragma/Main1.mch", "pragmas/filePragma/Main3.mch", "pragmas/filePragma/Extends.mch"}) {
+			assertEquals(file, Helpers.parseFile(file), Helpers.parseFile(file, parallelLoading()));
+		}
+	}
+
+	@Test
+	public void testMachinesIncludingTheSameDefinitionFile() throws IOException, BCompoundException {
+		// every parser modifies its definitions, so they must not share the parsed definition file
+		final String file = "composition/parallel/SharedDefinitions.mch";
+		final String expected = Helpers.parseFile(file);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(expected, Helpers.parseFile(file, parallelLoading()));
+		}
+	}
+
+	@Test
+	public void testParallelDefinitionTyping() throws IOException, BCompoundException {
+		final String file = "composition/parallel/SharedDefinitions.mch";
+		final ParsingBehaviour parsingBehaviour = new ParsingBehaviour();
+		parsingBehaviour.setMachineNameMustMatchFileName(true);
+		parsingBehaviour.setParallelDefinitionTyping(true);
+		assertEquals(Helpers.parseFile(file), Helpers.parseFile(file, parsingBehaviour));
+	}
+
+	@Test
+	public void testParallelSemanticChecks() throws IOException, BCompoundException {
+		final String file = "composition/parallel/SharedDefinitions.mch";
+		final ParsingBehaviour parsingBehaviour = new ParsingBehaviour();
+		parsingBehaviour.setMachineNameMustMatchFileName(true);
+		parsingBehaviour.setParallelSemanticChecks(true);
+		assertEquals(Helpers.parseFile(file), Helpers.parseFile(file, parsingBehaviour));
+	}
+
+	@Test
+	public void testSameErrorAsSequentialLoading() {
+		final String file = "composition/errors/MachineNotFound.mch";
+		final CheckException e = Helpers.assertThrowsCompound(CheckException.class, () -> Helpers.parseFile(file, parallelLoading()));
+		assertEquals("Machine not found: 'MachineDoesNotExist' in 'MachineNotFound.mch'", e.getMessage());
+	}
+}
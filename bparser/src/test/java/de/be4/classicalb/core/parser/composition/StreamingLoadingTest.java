@@ -0,0 +1,75 @@
+package de.be4.classicalb.core.parser.composition;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.ParsingBehaviour;
+import de.be4.classicalb.core.parser.analysis.prolog.RecursiveMachineLoader;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.node.Start;
+import de.prob.prolog.output.PrologTermStringOutput;
+
+import org.junit.Test;
+
+import util.Helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingLoadingTest {
+
+	private static ParsingBehaviour parsingBehaviour() {
+		final ParsingBehaviour parsingBehaviour = new ParsingBehaviour();
+		parsingBehaviour.setMachineNameMustMatchFileName(true);
+		return parsingBehaviour;
+	}
+
+	private static File getFile(final String fileName) {
+		try {
+			return new File(StreamingLoadingTest.class.getResource("/" + fileName).toURI());
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String loadAndPrint(final File machineFile, final PrologTermStringOutput pout) throws BCompoundException {
+		final BParser parser = new BParser(machineFile.toString());
+		final Start ast = parser.parseFile(machineFile);
+		final RecursiveMachineLoader rml = RecursiveMachineLoader.loadFromAstAndPrint(parser, ast, parsingBehaviour(), parser.getContentProvider(), pout);
+		assertTrue(rml.getParsedMachines().isEmpty());
+		return pout.toString();
+	}
+
+	private static List<String> sortedFacts(final String output) {
+		final List<String> facts = Arrays.asList(output.replace(System.lineSeparator(), "\n").split("\n"));
+		Collections.sort(facts);
+		return facts;
+	}
+
+	@Test
+	public void testSameFactsAsBatchLoading() throws IOException, BCompoundException {
+		for (final String file : new String[] {"pragmas/filePragma/Main1.mch", "pragmas/filePragma/Main3.mch", "pragmas/filePragma/Extends.mch"}) {
+			final String streamed = loadAndPrint(getFile(file), new PrologTermStringOutput());
+			final List<String> lines = Arrays.asList(streamed.replace(System.lineSeparator(), "\n").split("\n"));
+			assertTrue(file, lines.get(0).startsWith("parser_version("));
+			assertTrue(file, lines.get(lines.size() - 1).startsWith("classical_b("));
+			assertEquals(file, sortedFacts(Helpers.parseFile(file, parsingBehaviour())), sortedFacts(streamed));
+		}
+	}
+
+	@Test
+	public void testNoMachineListAfterError() {
+		final PrologTermStringOutput pout = new PrologTermStringOutput();
+		assertThrows(BCompoundException.class, () -> loadAndPrint(getFile("composition/errors/MachineNotFound.mch"), pout));
+		assertTrue(pout.toString().startsWith("parser_version("));
+		assertTrue(pout.toString().contains("machine("));
+		assertFalse(pout.toString().contains("classical_b("));
+	}
+}
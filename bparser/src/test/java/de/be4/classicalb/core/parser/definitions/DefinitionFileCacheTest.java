@@ -0,0 +1,131 @@
+package de.be4.classicalb.core.parser.definitions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.CachingDefinitionFileProvider;
+import de.be4.classicalb.core.parser.DefinitionFileCache;
+import de.be4.classicalb.core.parser.Definitions;
+import de.be4.classicalb.core.parser.IDefinitions;
+import de.be4.classicalb.core.parser.ParseOptions;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class DefinitionFileCacheTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void parse(File machine, DefinitionFileCache cache) throws BCompoundException {
+		final BParser parser = new BParser(machine.getPath());
+		parser.setContentProvider(new CachingDefinitionFileProvider(cache));
+		parser.parseFile(machine);
+	}
+
+	@Test
+	public void testDefinitionFileIsSharedBetweenProviders() throws IOException, BCompoundException {
+		final File defs = folder.newFile("Lib.def");
+		write(defs, "DEFINITIONS lib_pred(x) == x > 0");
+		final File machine = folder.newFile("M.mch");
+		write(machine, "MACHINE M DEFINITIONS \"Lib.def\" CONSTANTS c PROPERTIES lib_pred(c) END");
+
+		final DefinitionFileCache cache = new DefinitionFileCache(10);
+		parse(machine, cache);
+		assertEquals(1, cache.size());
+		final String content = new String(Files.readAllBytes(defs.toPath()), StandardCharsets.UTF_8);
+		final IDefinitions cached = cache.get(defs, content, new ParseOptions());
+		assertNotNull(cached);
+
+		parse(machine, cache);
+		assertEquals(1, cache.size());
+		assertEquals(cached.getDefinitionNames(), cache.get(defs, content, new ParseOptions()).getDefinitionNames());
+	}
+
+	@Test
+	public void testCachedDefinitionsAreCopied() throws IOException, BCompoundException {
+		final File defs = folder.newFile("Lib.def");
+		final BParser parser = new BParser(defs.getPath());
+		parser.setDefinitions(new Definitions(defs));
+		parser.parseMachine("DEFINITIONS lib_def == skip");
+		final IDefinitions parsed = parser.getDefinitions();
+
+		final DefinitionFileCache cache = new DefinitionFileCache(10);
+		cache.put(defs, "content", new ParseOptions(), parsed);
+		final IDefinitions first = cache.get(defs, "content", new ParseOptions());
+		final IDefinitions second = cache.get(defs, "content", new ParseOptions());
+		assertNotSame(parsed, first);
+		assertNotSame(first, second);
+		assertNotSame(first.getDefinition("lib_def"), second.getDefinition("lib_def"));
+		assertEquals(parsed.getDefinition("lib_def").getStartPos(), first.getDefinition("lib_def").getStartPos());
+
+		// changes made by one parser are not seen by the others
+		first.setDefinitionType("lib_def", IDefinitions.Type.Expression);
+		assertEquals(parsed.getType("lib_def"), second.getType("lib_def"));
+		assertEquals(parsed.getType("lib_def"), cache.get(defs, "content", new ParseOptions()).getType("lib_def"));
+	}
+
+	@Test
+	public void testDefinitionFileIsParsedAgainWithOtherOptions() throws IOException {
+		final File defs = folder.newFile("Lib.def");
+		final DefinitionFileCache cache = new DefinitionFileCache(10);
+		cache.put(defs, "content", new ParseOptions(), new Definitions(defs));
+		final ParseOptions otherOptions = new ParseOptions();
+		otherOptions.setStrictPragmaChecking(true);
+		assertNull(cache.get(defs, "content", otherOptions));
+		assertNotNull(cache.get(defs, "content", new ParseOptions()));
+	}
+
+	@Test
+	public void testModifiedDefinitionFileIsParsedAgain() throws IOException, BCompoundException {
+		final File defs = folder.newFile("Lib.def");
+		write(defs, "DEFINITIONS lib_pred(x) == x > 0");
+		final File machine = folder.newFile("M.mch");
+		write(machine, "MACHINE M DEFINITIONS \"Lib.def\" CONSTANTS c PROPERTIES lib_pred(c) END");
+
+		final DefinitionFileCache cache = new DefinitionFileCache(10);
+		parse(machine, cache);
+		final IDefinitions first = cache.get(defs, "DEFINITIONS lib_pred(x) == x > 0", new ParseOptions());
+		assertNotNull(first);
+
+		final String modified = "DEFINITIONS lib_pred(x) == x > 1";
+		write(defs, modified);
+		assertNull(cache.get(defs, modified, new ParseOptions()));
+		parse(machine, cache);
+		final IDefinitions second = cache.get(defs, modified, new ParseOptions());
+		assertNotNull(second);
+		assertNotSame(first, second);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEntryIsEvicted() throws IOException {
+		final DefinitionFileCache cache = new DefinitionFileCache(2);
+		final File a = folder.newFile("A.def");
+		final File b = folder.newFile("B.def");
+		final File c = folder.newFile("C.def");
+		final IDefinitions definitions = new Definitions();
+		final ParseOptions options = new ParseOptions();
+		cache.put(a, "a", options, definitions);
+		cache.put(b, "b", options, definitions);
+		assertNotNull(cache.get(a, "a", options));
+		cache.put(c, "c", options, definitions);
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get(a, "a", options));
+		assertNull(cache.get(b, "b", options));
+		assertNotNull(cache.get(c, "c", options));
+	}
+}
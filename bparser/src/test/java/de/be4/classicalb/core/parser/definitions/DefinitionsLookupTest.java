@@ -0,0 +1,68 @@
+package de.be4.classicalb.core.parser.definitions;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.Definitions;
+import de.be4.classicalb.core.parser.IDefinitions;
+import de.be4.classicalb.core.parser.exceptions.BCompoundException;
+import de.be4.classicalb.core.parser.exceptions.PreParseException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DefinitionsLookupTest {
+
+	private static IDefinitions parseDefinitions(String name, String definitions) throws BCompoundException {
+		final BParser parser = new BParser(name);
+		parser.setDefinitions(new Definitions(new File(name)));
+		parser.parseMachine("MACHINE " + name + " DEFINITIONS " + definitions + " END");
+		return parser.getDefinitions();
+	}
+
+	@Test
+	public void testLookupInReferencedDefinitions() throws BCompoundException, PreParseException {
+		final IDefinitions inner = parseDefinitions("Inner", "inner_pred == 1 = 1; inner_expr == 1");
+		final IDefinitions outer = parseDefinitions("Outer", "outer_sub == skip");
+		outer.addDefinitions(inner);
+		final Definitions main = new Definitions();
+		main.addDefinitions(outer);
+
+		assertEquals(new HashSet<>(Arrays.asList("inner_pred", "inner_expr", "outer_sub")), main.getDefinitionNames());
+		assertEquals(IDefinitions.Type.Predicate, main.getType("inner_pred"));
+		assertEquals(IDefinitions.Type.Substitution, main.getTypes().get("outer_sub"));
+		assertEquals(IDefinitions.Type.NoDefinition, main.getType("unknown"));
+		assertSame(inner.getDefinition("inner_expr"), main.getDefinition("inner_expr"));
+		assertEquals(new File("Inner"), main.getFile("inner_expr"));
+		assertTrue(main.containsDefinition("outer_sub"));
+		assertFalse(main.containsDefinition("unknown"));
+	}
+
+	@Test
+	public void testReplacedTypeIsVisibleEverywhere() throws BCompoundException, PreParseException {
+		final IDefinitions inner = parseDefinitions("Inner", "inner_expr == 1");
+		final Definitions main = new Definitions();
+		main.addDefinitions(inner);
+		assertEquals(IDefinitions.Type.Expression, main.getType("inner_expr"));
+
+		main.setDefinitionType("inner_expr", IDefinitions.Type.ExprOrSubst);
+		assertEquals(IDefinitions.Type.ExprOrSubst, inner.getType("inner_expr"));
+		assertEquals(IDefinitions.Type.ExprOrSubst, main.getType("inner_expr"));
+		assertEquals(IDefinitions.Type.ExprOrSubst, main.getTypes().get("inner_expr"));
+	}
+
+	@Test
+	public void testAddingDefinitionsAfterLookup() throws BCompoundException, PreParseException {
+		final Definitions main = new Definitions();
+		assertFalse(main.containsDefinition("inner_expr"));
+		main.addDefinitions(parseDefinitions("Inner", "inner_expr == 1"));
+		assertTrue(main.containsDefinition("inner_expr"));
+		assertEquals(1, main.getTypes().size());
+	}
+}
@@ -1,5 +1,11 @@
 package de.be4.classicalb.core.parser.exceptions;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.ParseOptions;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -16,4 +22,27 @@ public class TestMultipleExceptions {
 			Assert.assertEquals("Invalid semicolon after last substitution (before END)", ex.getMessage());
 		}
 	}
+
+	private static List<String> getCheckErrors(final String machine, final boolean parallel) {
+		final ParseOptions options = new ParseOptions();
+		options.setParallelSemanticChecks(parallel);
+		final BParser parser = new BParser("Test", options);
+		final BCompoundException e = Assert.assertThrows(BCompoundException.class, () -> parser.parseMachine(machine));
+		return e.getBExceptions().stream().map(BException::getMessage).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testParallelSemanticChecksReportSameErrors() {
+		final String testMachine = "MACHINE Test\n"
+			+ "DEFINITIONS inc(x) == x + 1\n"
+			+ "CONSTANTS c\n"
+			+ "VARIABLES v\n"
+			+ "INVARIANT v = inc(1, 2)\n"
+			+ "INITIALISATION v := 0\n"
+			+ "OPERATIONS op = skip;\n"
+			+ "END";
+		final List<String> sequential = getCheckErrors(testMachine, false);
+		Assert.assertTrue(sequential.size() > 1);
+		Assert.assertEquals(sequential, getCheckErrors(testMachine, true));
+	}
 }
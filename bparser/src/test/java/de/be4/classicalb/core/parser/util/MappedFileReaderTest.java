@@ -0,0 +1,58 @@
+package de.be4.classicalb.core.parser.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedFileReaderTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private File write(byte[] content) throws IOException {
+		final File file = folder.newFile();
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	private static String readAll(Reader reader) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		final char[] buffer = new char[1000];
+		int n;
+		while ((n = reader.read(buffer, 0, buffer.length)) != -1) {
+			sb.append(buffer, 0, n);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testSameContentAsReadFile() throws IOException {
+		// byte order mark, invalid byte and multi-byte characters
+		final byte[] content = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf, 'M', (byte) 0xff, ' ', (byte) 0xe2, (byte) 0x88, (byte) 0x80, 'x'};
+		final File file = write(content);
+		try (MappedFileReader reader = new MappedFileReader(file)) {
+			assertEquals(Utils.readFile(file), readAll(reader));
+		}
+	}
+
+	@Test
+	public void testLargeFileAndReset() throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append("xä∀ = ").append(i).append('\n');
+		}
+		final File file = write(sb.toString().getBytes("UTF-8"));
+		try (MappedFileReader reader = new MappedFileReader(file)) {
+			assertEquals(sb.toString(), readAll(reader));
+			reader.reset();
+			assertEquals(sb.toString(), readAll(reader));
+		}
+	}
+}
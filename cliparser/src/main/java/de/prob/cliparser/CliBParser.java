@@ -9,22 +9,30 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.CachingDefinitionFileProvider;
 import de.be4.classicalb.core.parser.ClassicalBParser;
-import de.be4.classicalb.core.parser.IDefinitions;
+import de.be4.classicalb.core.parser.DefinitionFileCache;
+import de.be4.classicalb.core.parser.FormulaParsingSession;
 import de.be4.classicalb.core.parser.MockedDefinitions;
 import de.be4.classicalb.core.parser.ParsingBehaviour;
 import de.be4.classicalb.core.parser.analysis.prolog.ASTProlog;
@@ -66,9 +74,23 @@ public class CliBParser {
 	private static final String CLI_SWITCH_SWI = "-swi";
 	private static final String CLI_SWITCH_COMPACT_POSITIONS = "-compactpos";
 	private static final String CLI_SWITCH_PROLOG_LINES = "-lineno";
+	private static final String CLI_SWITCH_POSITION_TABLE = "-postable";
 	private static final String CLI_SWITCH_OUTPUT = "-out";
 	private static final String CLI_SWITCH_PREPL = "-prepl";
 	private static final String CLI_SWITCH_NAME_CHECK = "-checkname";
+	private static final String CLI_SWITCH_PARALLEL = "-parallel";
+	private static final String CLI_SWITCH_PARALLEL_DEFINITIONS = "-paralleldefs";
+	private static final String CLI_SWITCH_PARALLEL_CHECKS = "-parallelchecks";
+	private static final String CLI_SWITCH_CACHE = "-cache";
+	private static final String CLI_SWITCH_STREAM = "-stream";
+	private static final String CLI_SWITCH_MULTI_CLIENT = "-multiclient";
+
+	// batches of at least this many formulas are parsed in parallel
+	private static final int PARALLEL_BATCH_SIZE = 64;
+	// each task of a parallel batch parses at least this many formulas with its own fork of the session
+	private static final int MIN_BATCH_CHUNK_SIZE = 16;
+	// larger batch sizes are rejected, they are most likely caused by a corrupt request
+	private static final int MAX_BATCH_SIZE = 1_000_000;
 
 	private static final UnparsedParserBase UNPARSED_PARSER_BASE = new UnparsedParserBase("unparsed_expr", "unparsed_pred", "unparsed_trans");
 
@@ -144,11 +166,19 @@ public class CliBParser {
 		behaviour.setFastPrologOutput(options.isOptionSet(CLI_SWITCH_FASTPROLOG));
 		behaviour.setSwiSupport(options.isOptionSet(CLI_SWITCH_SWI));
 		behaviour.setCompactPrologPositions(options.isOptionSet(CLI_SWITCH_COMPACT_POSITIONS));
+		behaviour.setPositionTable(options.isOptionSet(CLI_SWITCH_POSITION_TABLE));
 		behaviour.setMachineNameMustMatchFileName(options.isOptionSet(CLI_SWITCH_NAME_CHECK));
+		behaviour.setParallelLoading(options.isOptionSet(CLI_SWITCH_PARALLEL));
+		behaviour.setParallelDefinitionTyping(options.isOptionSet(CLI_SWITCH_PARALLEL_DEFINITIONS));
+		behaviour.setParallelSemanticChecks(options.isOptionSet(CLI_SWITCH_PARALLEL_CHECKS));
+		if (options.isOptionSet(CLI_SWITCH_CACHE)) {
+			behaviour.setCacheDirectory(options.getOptions(CLI_SWITCH_CACHE)[0]);
+		}
+		behaviour.setStreamingOutput(options.isOptionSet(CLI_SWITCH_STREAM));
 		// TODO: check if some other flags are not recognised
 
 		if (options.isOptionSet(CLI_SWITCH_PREPL)) {
-			runPRepl(behaviour);
+			runPRepl(behaviour, options.isOptionSet(CLI_SWITCH_MULTI_CLIENT));
 		} else {
 			// there should be just one remaining argument
 			// otherwise no filename was provided, or some arguments were not
@@ -201,8 +231,20 @@ public class CliBParser {
 				return String.valueOf(behaviour.isSwiSupport());
 			case "compactPrologPositions":
 				return String.valueOf(behaviour.isCompactPrologPositions());
+			case "positionTable":
+				return String.valueOf(behaviour.isPositionTable());
 			case "machineNameMustMatchFileName":
 				return String.valueOf(behaviour.isMachineNameMustMatchFileName());
+			case "parallelLoading":
+				return String.valueOf(behaviour.isParallelLoading());
+			case "parallelDefinitionTyping":
+				return String.valueOf(behaviour.isParallelDefinitionTyping());
+			case "parallelSemanticChecks":
+				return String.valueOf(behaviour.isParallelSemanticChecks());
+			case "cacheDirectory":
+				return behaviour.getCacheDirectory() == null ? "" : behaviour.getCacheDirectory();
+			case "streamingOutput":
+				return String.valueOf(behaviour.isStreamingOutput());
 			case "defaultFileNumber":
 				return String.valueOf(behaviour.getDefaultFileNumber());
 			case "startLineNumber":
@@ -232,9 +274,27 @@ public class CliBParser {
 			case "compactPrologPositions":
 				behaviour.setCompactPrologPositions(Boolean.parseBoolean(value));
 				break;
+			case "positionTable":
+				behaviour.setPositionTable(Boolean.parseBoolean(value));
+				break;
 			case "machineNameMustMatchFileName":
 				behaviour.setMachineNameMustMatchFileName(Boolean.parseBoolean(value));
 				break;
+			case "parallelLoading":
+				behaviour.setParallelLoading(Boolean.parseBoolean(value));
+				break;
+			case "parallelDefinitionTyping":
+				behaviour.setParallelDefinitionTyping(Boolean.parseBoolean(value));
+				break;
+			case "parallelSemanticChecks":
+				behaviour.setParallelSemanticChecks(Boolean.parseBoolean(value));
+				break;
+			case "cacheDirectory": // empty value disables the cache
+				behaviour.setCacheDirectory(value.isEmpty() ? null : value);
+				break;
+			case "streamingOutput":
+				behaviour.setStreamingOutput(Boolean.parseBoolean(value));
+				break;
 			case "defaultFileNumber":  // default in ParsingBehaviour.java: -1
 				behaviour.setDefaultFileNumber(Integer.parseInt(value));
 				break;
@@ -260,20 +320,94 @@ public class CliBParser {
 		behaviour.setStartColumnNumber(1);
 	}
 	
-	private static void runPRepl(ParsingBehaviour behaviour) throws IOException {
+	private static void runPRepl(ParsingBehaviour behaviour, boolean multiClient) throws IOException {
 		ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
 		// write port number as prolog term
 		System.out.println(serverSocket.getLocalPort() + ".");
-		Socket socket = serverSocket.accept();
-		// socket.setTcpNoDelay(true); // does not seem to provide any response benefit
+		servePRepl(serverSocket, behaviour, multiClient);
+	}
 
+	/**
+	 * Accepts prepl clients on the given socket until the (only) client sends halt or a client sends shutdown,
+	 * closes the socket and returns after the sessions of all clients have ended.
+	 */
+	static void servePRepl(ServerSocket serverSocket, ParsingBehaviour behaviour, boolean multiClient) throws IOException {
+		if (!multiClient) {
+			try (Socket socket = serverSocket.accept()) {
+				// socket.setTcpNoDelay(true); // does not seem to provide any response benefit
+				runPReplSession(behaviour, socket);
+			} finally {
+				serverSocket.close();
+			}
+			return;
+		}
+
+		// Every client gets its own copy of the options and its own mocked definitions.
+		// Definition files are shared through the DefinitionFileCache, which hands out a copy to every parser.
+		// The halt command only closes the connection of the client that sent it,
+		// the shutdown command additionally stops accepting new clients.
+		// Debug and timing messages of all clients are printed to System.out, tagged with the number of the client.
+		ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "prepl-client");
+			thread.setDaemon(true);
+			return thread;
+		});
+		int clients = 0;
+		try {
+			while (true) {
+				final Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch (SocketException e) {
+					if (serverSocket.isClosed()) {
+						// shutdown command
+						break;
+					}
+					throw e;
+				}
+				ParsingBehaviour clientBehaviour = new ParsingBehaviour(behaviour);
+				clients++;
+				clientBehaviour.setDiagnosticsTag("[client " + clients + "] ");
+				workers.execute(() -> {
+					try (Socket s = socket) {
+						if (runPReplSession(clientBehaviour, s)) {
+							serverSocket.close();
+						}
+					} catch (Throwable e) {
+						// the other clients are not affected
+						System.err.println(clientBehaviour.getDiagnosticsTag() + "PREPL client connection failed: " + e);
+					}
+				});
+			}
+		} finally {
+			workers.shutdown();
+			serverSocket.close();
+		}
+		// the sessions of the other clients continue until they send halt or close their connection
+		try {
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Processes the commands of one prepl client until it sends halt or shutdown or closes the connection.
+	 *
+	 * @return true if the client has sent shutdown
+	 */
+	private static boolean runPReplSession(ParsingBehaviour behaviour, Socket socket) throws IOException {
 		// with autoFlush
 		PrintWriter socketWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)), true);
 
 		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
 		String line;
 		MockedDefinitions context = new MockedDefinitions();
+		// reuses the definition types for all formulas until the definitions change
+		FormulaParsingSession session = new FormulaParsingSession();
+		session.setDefinitions(context);
 		boolean terminate = false;
+		boolean shutdown = false;
 		while (!terminate) {
 			line = in.readLine();
 
@@ -319,11 +453,13 @@ public class CliBParser {
 					String type = in.readLine();
 					String parameterCount = in.readLine();
 					context.addMockedDefinition(name, type, parameterCount);
+					session.definitionsChanged();
 					break;
 				}
 				case resetdefinitions:
 					// remove all DEFINITIONS
 					context = new MockedDefinitions();
+					session.setDefinitions(context);
 					break;
 				case getoption: {
 					// Generic command for getting the current value of an option.
@@ -395,14 +531,19 @@ public class CliBParser {
 						returnValue = doFileParsing(behaviour, out, socketWriter, bfile);
 					}
 					context = new MockedDefinitions(); // reset definitions
+					session.setDefinitions(context);
 
 					// Notify probcli that the call finished successfully.
 					// If an exception was thrown, doFileParsing will have already printed an appropriate error message/term.
 					if (returnValue == 0) {
 						socketWriter.println("exit(" + returnValue + ").");
 					} else if (returnValue <= -4) { // VM/StackOverflow error occurred; file is probably corrupt
-						System.out.println("Erasing file contents of " + outFile);
+						printDiagnostic(behaviour, "Erasing file contents of " + outFile);
 						Files.write(outFile, Collections.singletonList("% VM Error occurred"));
+					} else if (behaviour.isFastPrologOutput() && behaviour.isStreamingOutput()) {
+						// the fast output is streamed, so the file may end with an incomplete sentence that cannot be read
+						debugPrint(behaviour, "Erasing file contents of " + outFile);
+						Files.write(outFile, new byte[0]);
 					}
 					break;
 				}
@@ -411,13 +552,46 @@ public class CliBParser {
 				case predicate:
 				case substitution: {
 					String formula = in.readLine();
-					parseFormula(command, formula, context, behaviour, socketWriter);
+					parseFormula(command, formula, session, behaviour, socketWriter);
 					resetVolatilePositionOptions(behaviour);
 					break;
 				}
+				case batch: {
+					// Parse several formulas with one request and send all results in one response.
+					// The formulas are sent as a count, followed by a kind (formula, expression, predicate or substitution) and formula line for each one.
+					// An invalid count is answered with an error and ends the session, see below.
+					String countLine = in.readLine();
+					if (countLine == null) {
+						terminate = true;
+						break;
+					}
+					int count = parseBatchSize(countLine);
+					if (count == -1) {
+						final IPrologTermOutput batchOut = new PrologTermOutput(socketWriter, false);
+						PrologExceptionPrinter.printException(batchOut, new BCompoundException(new BException(null, "Invalid batch size: " + countLine, null)));
+						batchOut.fullstop();
+						// the formulas of the batch cannot be skipped without knowing their number, so the connection is closed:
+						// without -multiclient this stops the parser, with -multiclient the client has to reconnect
+						terminate = true;
+						break;
+					}
+					String[] kinds = new String[count];
+					String[] formulas = new String[count];
+					for (int i = 0; i < count && !terminate; i++) {
+						kinds[i] = in.readLine();
+						formulas[i] = in.readLine();
+						// the connection has been closed in the middle of the batch
+						terminate = formulas[i] == null;
+					}
+					if (!terminate) {
+						parseFormulaBatch(kinds, formulas, session, behaviour, socketWriter);
+						resetVolatilePositionOptions(behaviour);
+					}
+					break;
+				}
 				case ltl: {
 					String extension = in.readLine();
-					final ProBParserBase extParser = getExtensionParser(extension, context);
+					final ProBParserBase extParser = getExtensionParser(extension, session);
 					final TemporalLogicParser<?> parser = new LtlParser(extParser);
 					parseTemporalFormula(in.readLine(), parser, socketWriter);
 					resetVolatilePositionOptions(behaviour); // TODO: pass behaviour to LTL parser above
@@ -425,26 +599,30 @@ public class CliBParser {
 				}
 				case ctl: {
 					String extension = in.readLine();
-					final ProBParserBase extParser = getExtensionParser(extension, context);
+					final ProBParserBase extParser = getExtensionParser(extension, session);
 					final TemporalLogicParser<?> parser = new CtlParser(extParser);
 					parseTemporalFormula(in.readLine(), parser, socketWriter);
 					resetVolatilePositionOptions(behaviour); // TODO: pass behaviour to CTL parser above
 					break;
 				}
 				case halt:
-					socket.close();
-					serverSocket.close();
 					terminate = true;
 					break;
+				case shutdown:
+					// same as halt with a single client
+					terminate = true;
+					shutdown = true;
+					break;
 				default:
 					throw new UnsupportedOperationException("Unsupported Command " + line);
 			}
 			System.out.flush();
 			System.err.flush();
 		}
+		return shutdown;
 	}
 
-	private static ProBParserBase getExtensionParser(final String pattern, IDefinitions context) {
+	private static ProBParserBase getExtensionParser(final String pattern, FormulaParsingSession session) {
 		final String[] langs = pattern.split(",");
 		final ProBParserBase[] sublangs = new ProBParserBase[langs.length];
 		for (int i = 0; i < langs.length; i++) {
@@ -453,11 +631,8 @@ public class CliBParser {
 			if ("none".equals(lang)) {
 				sub = UNPARSED_PARSER_BASE;
 			} else if ("B".equals(lang)) {
-				BParser bparser = new BParser();
-				if (context!=null) {
-					bparser.setDefinitions(context); // ensure that DEFINITION predicates, ... are available
-				}
-				sub = new ClassicalBParser(bparser);
+				// the session has the mocked definitions, so that DEFINITION predicates, ... are available
+				sub = new ClassicalBParser(session);
 			} else {
 				throw new IllegalArgumentException("Unknown language " + lang);
 			}
@@ -485,28 +660,102 @@ public class CliBParser {
 		pout.fullstop();
 	}
 
-	private static void parseFormula(EPreplCommands command, String theFormula, IDefinitions context, ParsingBehaviour behaviour, Writer out) {
+	private static void parseFormula(EPreplCommands command, String theFormula, FormulaParsingSession session, ParsingBehaviour behaviour, Writer out) {
 		final IPrologTermOutput pout = new PrologTermOutput(out, false);
+		printFormula(command, theFormula, session, behaviour, pout);
+		pout.fullstop();
+	}
+
+	/**
+	 * @return the number of formulas of a batch command, or -1 if the line is not a valid number of formulas
+	 */
+	static int parseBatchSize(String line) {
+		final int count;
 		try {
-			BParser parser = new BParser();
-			parser.setStartPosition(behaviour.getStartLineNumber(), behaviour.getStartColumnNumber());
-			parser.setDefinitions(context);
+			count = Integer.parseInt(line.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+		return count >= 0 && count <= MAX_BATCH_SIZE ? count : -1;
+	}
+
+	/**
+	 * Parses all formulas and prints the results as one Prolog list, in the same order as the formulas.
+	 * Each element is the term that the corresponding single formula command would print.
+	 * Large batches are split into chunks that are parsed in parallel,
+	 * each chunk uses its own fork of the session with its own copy of the definitions, which is discarded afterwards.
+	 */
+	static void parseFormulaBatch(String[] kinds, String[] formulas, FormulaParsingSession session, ParsingBehaviour behaviour, Writer out) throws IOException {
+		final String[] results;
+		if (formulas.length >= PARALLEL_BATCH_SIZE) {
+			// forking here determines the definition types once, the forks of the chunks only read them
+			final FormulaParsingSession template = session.fork();
+			final int chunks = Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, formulas.length / MIN_BATCH_CHUNK_SIZE);
+			final String[] chunkResults = new String[formulas.length];
+			IntStream.range(0, chunks).parallel().forEach(chunk -> {
+				final FormulaParsingSession chunkSession = template.fork();
+				final int end = (int) ((long) formulas.length * (chunk + 1) / chunks);
+				for (int i = (int) ((long) formulas.length * chunk / chunks); i < end; i++) {
+					chunkResults[i] = printBatchEntry(kinds[i], formulas[i], chunkSession, behaviour);
+				}
+			});
+			results = chunkResults;
+		} else {
+			results = IntStream.range(0, formulas.length)
+				.mapToObj(i -> printBatchEntry(kinds[i], formulas[i], session, behaviour))
+				.toArray(String[]::new);
+		}
+
+		out.write('[');
+		for (int i = 0; i < results.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			out.write(results[i]);
+		}
+		out.write("].");
+		out.write(System.lineSeparator());
+		out.flush();
+	}
+
+	private static String printBatchEntry(String kind, String theFormula, FormulaParsingSession session, ParsingBehaviour behaviour) {
+		final StringWriter result = new StringWriter();
+		final IPrologTermOutput pout = new PrologTermOutput(result, false);
+		EPreplCommands command;
+		try {
+			command = EPreplCommands.valueOf(kind);
+		} catch (IllegalArgumentException | NullPointerException e) {
+			command = null;
+		}
+
+		if (command == EPreplCommands.formula || command == EPreplCommands.expression
+				|| command == EPreplCommands.predicate || command == EPreplCommands.substitution) {
+			printFormula(command, theFormula, session, behaviour, pout);
+		} else {
+			PrologExceptionPrinter.printException(pout, new BCompoundException(new BException(null, "Unsupported formula kind in batch: " + kind, null)));
+		}
+		return result.toString();
+	}
+
+	private static void printFormula(EPreplCommands command, String theFormula, FormulaParsingSession session, ParsingBehaviour behaviour, IPrologTermOutput pout) {
+		try {
+			session.setStartPosition(behaviour.getStartLineNumber(), behaviour.getStartColumnNumber());
 			Start start;
 			switch (command) {
 				case formula:
-					start = parser.parseFormula(theFormula);
+					start = session.parseFormula(theFormula);
 					break;
 
 				case expression:
-					start = parser.parseExpression(theFormula);
+					start = session.parseExpression(theFormula);
 					break;
 
 				case predicate:
-					start = parser.parsePredicate(theFormula);
+					start = session.parsePredicate(theFormula);
 					break;
 
 				case substitution:
-					start = parser.parseSubstitution(theFormula);
+					start = session.parseSubstitution(theFormula);
 					break;
 
 				default:
@@ -528,8 +777,6 @@ public class CliBParser {
 		} catch (Throwable e) {
 			PrologExceptionPrinter.printException(pout, new BCompoundException(new BException(null, e.toString(), e)));
 		}
-
-		pout.fullstop();
 	}
 
 	private static void debugPrint(ParsingBehaviour parsingBehaviour, String msg) {
@@ -537,11 +784,25 @@ public class CliBParser {
 			if (parsingBehaviour.shouldPrintProlog()) {
 				msg = "% " + msg;
 			}
-			System.out.println(msg);
+			printDiagnostic(parsingBehaviour, msg);
 		}
 	}
 
-	private static int doFileParsing(final ParsingBehaviour behaviour, final OutputStream out, final PrintWriter err, final File bfile) {
+	/**
+	 * Prints a debug or timing message to {@link System#out}.
+	 * With -multiclient the messages of all clients are printed there, so they are tagged with the client.
+	 */
+	private static void printDiagnostic(ParsingBehaviour parsingBehaviour, String msg) {
+		final String tag = parsingBehaviour.getDiagnosticsTag();
+		if (msg.startsWith("% ")) {
+			// the message has to remain a Prolog comment
+			System.out.println("% " + tag + msg.substring(2));
+		} else {
+			System.out.println(tag + msg);
+		}
+	}
+
+	static int doFileParsing(final ParsingBehaviour behaviour, final OutputStream out, final PrintWriter err, final File bfile) {
 		try {
 			if (bfile.getName().endsWith(".rmch")) {
 				parseRulesProject(bfile, behaviour, out);
@@ -579,24 +840,48 @@ public class CliBParser {
 		}
 	}
 
-	private static void printPrologAst(ParsingBehaviour parsingBehaviour, OutputStream out, Consumer<? super IPrologTermOutput> printer) {
+	@FunctionalInterface
+	private interface PrologPrinter {
+		void print(IPrologTermOutput pout) throws BCompoundException;
+	}
+
+	private static void printPrologAst(ParsingBehaviour parsingBehaviour, OutputStream out, PrologPrinter printer) throws BCompoundException {
 		final long startOutput = System.currentTimeMillis();
 		if (parsingBehaviour.isFastPrologOutput()) { // -fastprolog flag in CliBParser
 			printASTasFastProlog(parsingBehaviour, out, printer);
 		} else { // -prolog flag in CliBParser
 			assert parsingBehaviour.isPrologOutput();
-			IPrologTermOutput pto = new PrologTermOutput(out, false);
-			printer.accept(pto);
+			// written to a file or pipe, so there is no need to flush after each fact
+			IPrologTermOutput pto = new PrologTermOutput(out, false, PrologTermOutput.FlushPolicy.EXPLICIT);
+			try {
+				printer.print(pto);
+			} finally {
+				pto.flush();
+			}
 		}
 		final long endOutput = System.currentTimeMillis();
 
 		if (parsingBehaviour.isPrintTime() || parsingBehaviour.isVerbose()) {
-			System.out.println("% Time for Prolog output: " + (endOutput - startOutput) + " ms");
+			printDiagnostic(parsingBehaviour, "% Time for Prolog output: " + (endOutput - startOutput) + " ms");
 		}
 	}
 
 	private static void fullParsing(final File bfile, final ParsingBehaviour parsingBehaviour, final OutputStream out) throws IOException, BCompoundException {
-		final BParser parser = new BParser(bfile.getAbsolutePath());
+		// only the fast Prolog output is cached, pretty printing always needs the AST
+		final ParseCache cache;
+		if (parsingBehaviour.getCacheDirectory() != null && parsingBehaviour.isFastPrologOutput() && !parsingBehaviour.isPrettyPrintB()) {
+			cache = new ParseCache(Paths.get(parsingBehaviour.getCacheDirectory()), parsingBehaviour);
+			if (cache.writeCachedOutput(bfile, out)) {
+				debugPrint(parsingBehaviour, "*** Debug: Using cached output for '" + bfile + "'");
+				return;
+			}
+		} else {
+			cache = null;
+		}
+
+		final BParser parser = new BParser(bfile.getAbsolutePath(), parsingBehaviour.createParseOptions());
+		// definition files like LibraryStrings.def are included by many machines, parse them only once per process
+		parser.setContentProvider(new CachingDefinitionFileProvider(DefinitionFileCache.getShared()));
 
 		final long startParseMain = System.currentTimeMillis();
 		debugPrint(parsingBehaviour, "*** Debug: Parsing file '" + bfile + "'");
@@ -604,7 +889,7 @@ public class CliBParser {
 		final long endParseMain = System.currentTimeMillis();
 
 		if (parsingBehaviour.isPrintTime() || parsingBehaviour.isVerbose()) { // -time flag in CliBParser
-			System.out.println("% Time for parsing of main file: " + (endParseMain - startParseMain) + " ms");
+			printDiagnostic(parsingBehaviour, "% Time for parsing of main file: " + (endParseMain - startParseMain) + " ms");
 		}
 
 		if (parsingBehaviour.isPrettyPrintB()) { // -pp flag in CliBParser
@@ -618,21 +903,45 @@ public class CliBParser {
 
 		// Note: if both -fastprolog and -prolog flag are used; only Fast Prolog AST will be printed
 		if (parsingBehaviour.shouldPrintProlog()) {
-			final long startParseRecursive = System.currentTimeMillis();
-			final RecursiveMachineLoader rml = RecursiveMachineLoader.loadFromAst(parser, tree, parsingBehaviour, parser.getContentProvider());
-			final long endParseRecursive = System.currentTimeMillis();
+			final File mainFile = new File(parser.getFileName());
+			final RecursiveMachineLoader rml = new RecursiveMachineLoader(mainFile.getParent(), parser.getContentProvider(), parsingBehaviour);
+			final PrologPrinter printer;
+			if (parsingBehaviour.isStreamingOutput()) { // -stream flag in CliBParser
+				// the referenced files are parsed while printing, so their parsing time is part of the output time
+				printer = pout -> rml.loadAndPrintAllMachines(mainFile, tree, parser.getDefinitions(), pout);
+			} else {
+				final long startParseRecursive = System.currentTimeMillis();
+				rml.loadAllMachines(mainFile, tree, parser.getDefinitions());
+				final long endParseRecursive = System.currentTimeMillis();
 
-			if (parsingBehaviour.isPrintTime() || parsingBehaviour.isVerbose()) {
-				System.out.println("% Time for parsing of referenced files: " + (endParseRecursive - startParseRecursive) + " ms");
+				if (parsingBehaviour.isPrintTime() || parsingBehaviour.isVerbose()) {
+					printDiagnostic(parsingBehaviour, "% Time for parsing of referenced files: " + (endParseRecursive - startParseRecursive) + " ms");
+				}
+				printer = rml::printAsProlog;
 			}
 
-			printPrologAst(parsingBehaviour, out, rml::printAsProlog);
+			if (cache != null) {
+				// the output is written to the cache entry while it is printed, so it is not kept in memory
+				try (ParseCache.Entry entry = cache.newEntry(bfile, out)) {
+					printPrologAst(parsingBehaviour, entry.getOutput(), printer);
+					try {
+						if (!entry.commit(rml.getMachineFilesLoaded(), startParseMain)) {
+							debugPrint(parsingBehaviour, "*** Debug: Not caching output for '" + bfile + "', a file has been modified while parsing");
+						}
+					} catch (IOException e) {
+						// the output has already been written, a failing cache must not fail the parse
+						debugPrint(parsingBehaviour, "*** Debug: Could not write cache entry for '" + bfile + "': " + e);
+					}
+				}
+			} else {
+				printPrologAst(parsingBehaviour, out, printer);
+			}
 		}
 
 		if (parsingBehaviour.isVerbose()) {
-			System.out.println("% Used memory : " +
+			printDiagnostic(parsingBehaviour, "% Used memory : " +
 				(Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory())/ 1000 + " KB");
-			System.out.println("% Total memory: " + Runtime.getRuntime().totalMemory() / 1000 + " KB");
+			printDiagnostic(parsingBehaviour, "% Total memory: " + Runtime.getRuntime().totalMemory() / 1000 + " KB");
 		}
 	}
 
@@ -650,7 +959,7 @@ public class CliBParser {
 	fast_read(S,FilesTerm), ... until end_of_file
 	close(S)
 	*/
-	private static void printASTasFastProlog(ParsingBehaviour parsingBehaviour, OutputStream out, Consumer<? super IPrologTermOutput> printer) {
+	private static void printASTasFastProlog(ParsingBehaviour parsingBehaviour, OutputStream out, PrologPrinter printer) throws BCompoundException {
 		if (!(out instanceof BufferedOutputStream)) {
 			out = new BufferedOutputStream(out);
 		}
@@ -658,9 +967,11 @@ public class CliBParser {
 		if (parsingBehaviour.isSwiSupport()) {
 			pto = new FastSwiTermOutput(out);
 		} else {
-			pto = new FastSicstusTermOutput(out);
+			// -stream flag: write each sentence while it is printed to bound memory usage,
+			// if printing fails, the caller has to discard the incomplete output
+			pto = new FastSicstusTermOutput(out, parsingBehaviour.isStreamingOutput());
 		}
-		printer.accept(pto);
+		printer.print(pto);
 	}
 
 	private static void parseRulesProject(final File mainFile, final ParsingBehaviour parsingBehaviour, final OutputStream out) throws IOException, BCompoundException {
@@ -691,12 +1002,19 @@ public class CliBParser {
 		options.addOption(CLI_SWITCH_HELP2, "Print the parser help and exit");
 		options.addOption(CLI_SWITCH_HELP3, "Print the parser help and exit");
 		options.addOption(CLI_SWITCH_COMPACT_POSITIONS, "Use new more compact Prolog position terms");
+		options.addOption(CLI_SWITCH_POSITION_TABLE, "Print positions of machines as indices into delta-encoded position_table/2 facts (use with -lineno)");
 		options.addOption(CLI_SWITCH_FASTPROLOG,
 				"Show AST as Prolog term for fast loading (Do not use this representation in your tool! It depends on internal representation of Sicstus Prolog and will very likely change arbitrarily in the future!)");
 		options.addOption(CLI_SWITCH_SWI, "Switch to SWI-Prolog mode. All prolog output will be compatible with the SWI Prolog system, especially the -fastprolog option.");
 		options.addOption(CLI_SWITCH_PREPL, "Enter parser-repl. Should only be used from inside ProB's Prolog Core.");
 		options.addOption(CLI_SWITCH_NAME_CHECK,
 				"The name of a machine have to match file name (except for the file name extension)");
+		options.addOption(CLI_SWITCH_PARALLEL, "parse referenced machines in parallel");
+		options.addOption(CLI_SWITCH_PARALLEL_DEFINITIONS, "determine the types of independent definitions in parallel (for machines and definition files with many definitions)");
+		options.addOption(CLI_SWITCH_PARALLEL_CHECKS, "run the semantic checks of each machine in parallel (for large machines)");
+		options.addOption(CLI_SWITCH_CACHE, "Reuse the -fastprolog output of unchanged machines, stored in the given directory", 1);
+		options.addOption(CLI_SWITCH_STREAM, "Print each machine as soon as it is loaded to reduce memory usage (classical_b/2 is printed after the machines); with -fastprolog, the output is incomplete if parsing fails");
+		options.addOption(CLI_SWITCH_MULTI_CLIENT, "Accept several concurrent connections in the parser-repl (use with -prepl)");
 		options.addOption(CLI_SWITCH_PRINT_STACK_SIZE, "print the locally available depth of the call stack at runtime");
 		try {
 			options.parseOptions(args);
@@ -21,7 +21,9 @@ public enum EPreplCommands {
 	expression,
 	predicate,
 	substitution,
+	batch,
 	ltl,
 	ctl,
 	halt,
+	shutdown,
 }
@@ -0,0 +1,314 @@
+package de.prob.cliparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import de.be4.classicalb.core.parser.BParser;
+import de.be4.classicalb.core.parser.ParsingBehaviour;
+
+/**
+ * On-disk cache for the Prolog output of {@link CliBParser} (-cache flag).
+ * <p>
+ * An entry is stored per main machine and contains the parser version, the
+ * options that influence the output, the SHA-256 hash of every file that was
+ * loaded (all referenced machines and all directly or indirectly included
+ * definition files) and the complete output. An entry is only used if the
+ * parser version and options are the same and none of the files has changed.
+ * <p>
+ * The output is not cached per file, because the term of a machine depends on
+ * the machine that is loaded first (file numbers, injected definitions).
+ * Note that adding a new file that would shadow an already resolved machine
+ * (e. g. a new {@code .ref} file next to an existing {@code .mch} file) does
+ * not invalidate an entry.
+ * <p>
+ * The hashes are computed after parsing. If a file is modified while it is parsed,
+ * the hash would not match the content that has been parsed,
+ * so no entry is stored if a file has been modified since parsing started.
+ * <p>
+ * The output is written to the entry while it is printed (see {@link #newEntry(File, OutputStream)}),
+ * so caching does not keep the output in memory.
+ */
+final class ParseCache {
+	private static final int MAGIC = 0x42504331; // "BPC1"
+	private static final String SUFFIX = ".bpcache";
+	// some file systems only store modification times with a precision of up to two seconds
+	private static final long MODIFICATION_TIME_PRECISION = 2000;
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final Path directory;
+	private final String options;
+
+	ParseCache(final Path directory, final ParsingBehaviour behaviour) {
+		this.directory = directory;
+		this.options = BParser.getGitSha()
+			+ ";fastprolog=" + behaviour.isFastPrologOutput()
+			+ ";swi=" + behaviour.isSwiSupport()
+			+ ";lineno=" + behaviour.isAddLineNumbers()
+			+ ";compactpos=" + behaviour.isCompactPrologPositions()
+			+ ";postable=" + behaviour.isPositionTable()
+			// streaming changes the order of the facts
+			+ ";stream=" + behaviour.isStreamingOutput()
+			+ ";checkname=" + behaviour.isMachineNameMustMatchFileName();
+	}
+
+	/**
+	 * Writes the cached output for the given main machine, if there is a valid entry.
+	 *
+	 * @return true if the cached output was written, false if the file has to be parsed
+	 * @throws IOException if writing to {@code out} fails
+	 */
+	boolean writeCachedOutput(final File mainFile, final OutputStream out) throws IOException {
+		final FileChannel channel;
+		try {
+			channel = FileChannel.open(entryFile(mainFile), StandardOpenOption.READ);
+		} catch (IOException e) {
+			// no entry
+			return false;
+		}
+		try (FileChannel entry = channel) {
+			final long outputStart;
+			final long outputEnd;
+			try {
+				// not buffered, so that the position of the channel is the end of the header
+				final DataInputStream header = new DataInputStream(Channels.newInputStream(entry));
+				if (header.readInt() != MAGIC || !options.equals(header.readUTF())) {
+					return false;
+				}
+				outputStart = entry.position();
+				final long trailerStart = entry.size() - Long.BYTES;
+				if (trailerStart < outputStart) {
+					return false;
+				}
+				entry.position(trailerStart);
+				outputEnd = header.readLong();
+				if (outputEnd < outputStart || outputEnd > trailerStart) {
+					return false;
+				}
+
+				entry.position(outputEnd);
+				final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(entry)));
+				final int fileCount = in.readInt();
+				for (int i = 0; i < fileCount; i++) {
+					final Path file = new File(in.readUTF()).toPath();
+					final byte[] hash = new byte[in.readUnsignedByte()];
+					in.readFully(hash);
+					if (!Files.isRegularFile(file) || !Arrays.equals(hash, hash(file))) {
+						return false;
+					}
+				}
+			} catch (IOException e) {
+				// a truncated entry or an unreadable file - parse again
+				return false;
+			}
+
+			entry.position(outputStart);
+			final InputStream in = Channels.newInputStream(entry);
+			final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			long remaining = outputEnd - outputStart;
+			while (remaining > 0) {
+				final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (read < 0) {
+					throw new EOFException("Cache entry for " + mainFile + " is truncated");
+				}
+				out.write(buffer, 0, read);
+				remaining -= read;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Starts a new entry for the given main machine.
+	 * The output has to be written to {@link Entry#getOutput()}, which writes it to {@code out} and to the entry at the same time,
+	 * so that the output is never kept in memory.
+	 * The entry is stored by {@link Entry#commit(List, long)} and discarded if it is closed without being committed.
+	 * If the entry cannot be created, the output is only written to {@code out} and {@link Entry#commit(List, long)} fails.
+	 *
+	 * @param out the actual output
+	 */
+	Entry newEntry(final File mainFile, final OutputStream out) {
+		try {
+			Files.createDirectories(directory);
+			final Path entryFile = entryFile(mainFile);
+			// written to a temporary file first, so that concurrent readers never see an incomplete entry
+			final Path tmp = Files.createTempFile(directory, entryFile.getFileName().toString(), ".tmp");
+			return new Entry(entryFile, tmp, out);
+		} catch (IOException e) {
+			return new Entry(e, out);
+		}
+	}
+
+	/**
+	 * An entry that is being written, see {@link #newEntry(File, OutputStream)}.
+	 * <p>
+	 * The entry starts with the magic number and the options, followed by the output,
+	 * the loaded files with their hashes and the position of the loaded files.
+	 * The loaded files are only known after the output has been written, so they are stored after it.
+	 */
+	final class Entry implements Closeable {
+		private final Path entryFile;
+		private final Path tmp;
+		private final OutputStream out;
+		private final DataOutputStream data;
+		private final long headerLength;
+		private long outputLength = 0;
+		private IOException failure;
+		private final OutputStream output = new OutputStream() {
+			@Override
+			public void write(final int b) throws IOException {
+				out.write(b);
+				if (failure == null) {
+					try {
+						data.write(b);
+						outputLength++;
+					} catch (IOException e) {
+						failure = e;
+					}
+				}
+			}
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) throws IOException {
+				out.write(b, off, len);
+				if (failure == null) {
+					try {
+						data.write(b, off, len);
+						outputLength += len;
+					} catch (IOException e) {
+						failure = e;
+					}
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				out.flush();
+			}
+		};
+
+		private Entry(final Path entryFile, final Path tmp, final OutputStream out) throws IOException {
+			this.entryFile = entryFile;
+			this.tmp = tmp;
+			this.out = out;
+			this.data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+			data.writeInt(MAGIC);
+			data.writeUTF(options);
+			this.headerLength = data.size();
+		}
+
+		private Entry(final IOException failure, final OutputStream out) {
+			this.entryFile = null;
+			this.tmp = null;
+			this.out = out;
+			this.data = null;
+			this.headerLength = 0;
+			this.failure = failure;
+		}
+
+		/**
+		 * @return the stream to which the output has to be written, it is written to the actual output as well
+		 */
+		OutputStream getOutput() {
+			return output;
+		}
+
+		/**
+		 * Stores the entry, unless one of the files has been modified since parsing started.
+		 *
+		 * @param filesLoaded all files the output depends on, see {@link de.be4.classicalb.core.parser.analysis.prolog.RecursiveMachineLoader#getMachineFilesLoaded()}
+		 * @param parsingStarted the time (see {@link System#currentTimeMillis()}) before the first file was read
+		 * @return true if the output was stored, false if a file may have been modified after it was read
+		 * @throws IOException if the entry could not be written
+		 */
+		boolean commit(final List<File> filesLoaded, final long parsingStarted) throws IOException {
+			if (failure != null) {
+				throw failure;
+			}
+			data.writeInt(filesLoaded.size());
+			for (final File file : filesLoaded) {
+				final byte[] hash = hash(file.toPath());
+				data.writeUTF(file.getCanonicalPath());
+				data.writeByte(hash.length);
+				data.write(hash);
+			}
+			data.writeLong(headerLength + outputLength);
+			data.close();
+
+			// checked after hashing, so that modifications while hashing are detected as well
+			for (final File file : filesLoaded) {
+				if (file.lastModified() > parsingStarted - MODIFICATION_TIME_PRECISION) {
+					return false;
+				}
+			}
+
+			try {
+				Files.move(tmp, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, entryFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		}
+
+		/**
+		 * Deletes the temporary file, if the entry has not been stored.
+		 */
+		@Override
+		public void close() {
+			if (tmp == null) {
+				return;
+			}
+			try {
+				data.close();
+			} catch (IOException e) {
+				// the entry is discarded anyway
+			}
+			try {
+				Files.deleteIfExists(tmp);
+			} catch (IOException e) {
+				// only a leftover temporary file, the output has not been affected
+			}
+		}
+	}
+
+	private Path entryFile(final File mainFile) throws IOException {
+		final byte[] key = sha256((mainFile.getCanonicalPath() + "\n" + options).getBytes(StandardCharsets.UTF_8));
+		final StringBuilder name = new StringBuilder(key.length * 2 + SUFFIX.length());
+		for (final byte b : key) {
+			name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return directory.resolve(name.append(SUFFIX).toString());
+	}
+
+	private static byte[] hash(final Path file) throws IOException {
+		return sha256(Files.readAllBytes(file));
+	}
+
+	private static byte[] sha256(final byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-256
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package de.prob.cliparser;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import de.be4.classicalb.core.parser.FormulaParsingSession;
+import de.be4.classicalb.core.parser.ParsingBehaviour;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FormulaBatchTest {
+
+	private static final String END = "]." + System.lineSeparator();
+
+	private static String batch(String[] kinds, String[] formulas) throws IOException {
+		final StringWriter out = new StringWriter();
+		CliBParser.parseFormulaBatch(kinds, formulas, new FormulaParsingSession(), new ParsingBehaviour(), out);
+		return out.toString();
+	}
+
+	private static String single(String kind, String formula) throws IOException {
+		final String result = batch(new String[] {kind}, new String[] {formula});
+		assertTrue(result.startsWith("["));
+		assertTrue(result.endsWith(END));
+		return result.substring(1, result.length() - END.length());
+	}
+
+	@Test
+	public void testMixedKinds() throws IOException {
+		final String[] kinds = {"expression", "predicate", "substitution", "formula"};
+		final String[] formulas = {"1+2", "x = 1", "x := 1", "{1}"};
+		final String expected = "[" + single("expression", "1+2")
+			+ "," + single("predicate", "x = 1")
+			+ "," + single("substitution", "x := 1")
+			+ "," + single("formula", "{1}") + END;
+		assertEquals(expected, batch(kinds, formulas));
+	}
+
+	@Test
+	public void testEmptyBatch() throws IOException {
+		assertEquals("[" + END, batch(new String[0], new String[0]));
+	}
+
+	@Test
+	public void testErrorsAreReportedPerFormula() throws IOException {
+		final String result = batch(new String[] {"expression", "predicate", "foo"}, new String[] {"1+", "1 = 1", "1"});
+		assertTrue(result.contains(single("predicate", "1 = 1")));
+		assertTrue(result.contains("Unsupported formula kind in batch: foo"));
+	}
+
+	@Test
+	public void testLargeBatchKeepsOrder() throws IOException {
+		// a prime, so that the formulas cannot be split into chunks of equal size
+		final int count = 1009;
+		final String[] kinds = new String[count];
+		final String[] formulas = new String[count];
+		final StringBuilder expected = new StringBuilder("[");
+		for (int i = 0; i < count; i++) {
+			kinds[i] = "expression";
+			formulas[i] = "x + " + i;
+			if (i > 0) {
+				expected.append(',');
+			}
+			expected.append(single(kinds[i], formulas[i]));
+		}
+		expected.append(END);
+		assertEquals(expected.toString(), batch(kinds, formulas));
+	}
+
+	@Test
+	public void testBatchSize() {
+		assertEquals(0, CliBParser.parseBatchSize("0"));
+		assertEquals(3, CliBParser.parseBatchSize(" 3 "));
+		assertEquals(-1, CliBParser.parseBatchSize("three"));
+		assertEquals(-1, CliBParser.parseBatchSize("-1"));
+		assertEquals(-1, CliBParser.parseBatchSize(String.valueOf(Integer.MAX_VALUE)));
+	}
+}
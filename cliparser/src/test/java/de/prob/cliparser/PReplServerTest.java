@@ -0,0 +1,165 @@
+package de.prob.cliparser;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.be4.classicalb.core.parser.ParsingBehaviour;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Talks to a prepl server started with -multiclient over real sockets.
+ */
+public class PReplServerTest {
+
+	private ServerSocket serverSocket;
+	private Thread server;
+	private final AtomicReference<Throwable> serverFailure = new AtomicReference<>();
+
+	private static final class Client implements Closeable {
+		private final Socket socket;
+		private final PrintWriter out;
+		private final BufferedReader in;
+
+		Client(int port) throws IOException {
+			this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+			this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		}
+
+		void send(String... lines) {
+			for (String line : lines) {
+				out.println(line);
+			}
+		}
+
+		String request(String... lines) throws IOException {
+			send(lines);
+			return in.readLine();
+		}
+
+		/**
+		 * @return true if the server has closed the connection
+		 */
+		boolean isClosedByServer() throws IOException {
+			return in.readLine() == null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	@Before
+	public void startServer() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		server = new Thread(() -> {
+			try {
+				CliBParser.servePRepl(serverSocket, new ParsingBehaviour(), true);
+			} catch (Throwable e) {
+				serverFailure.set(e);
+			}
+		}, "prepl-server");
+		server.start();
+	}
+
+	@After
+	public void stopServer() throws IOException, InterruptedException {
+		serverSocket.close();
+		// the sessions of the clients have been closed by the tests
+		server.join(10_000);
+		assertFalse("The server is still running", server.isAlive());
+		assertNull(serverFailure.get());
+	}
+
+	private Client connect() throws IOException {
+		return new Client(serverSocket.getLocalPort());
+	}
+
+	@Test(timeout = 20_000)
+	public void testClientsHaveSeparateOptionsAndDefinitions() throws IOException {
+		try (Client first = connect(); Client second = connect()) {
+			assertEquals("prev_value(false).", first.request("setoption", "fastPrologOutput", "true"));
+			assertEquals("value(true).", first.request("getoption", "fastPrologOutput"));
+			assertEquals("value(false).", second.request("getoption", "fastPrologOutput"));
+
+			first.send("definition", "foo", "expression", "0");
+			final String firstResult = first.request("expression", "foo");
+			final String secondResult = second.request("expression", "foo");
+			assertTrue(firstResult, firstResult.contains("definition("));
+			assertTrue(secondResult, secondResult.contains("identifier("));
+			assertFalse(secondResult, secondResult.contains("definition("));
+
+			first.send("halt");
+			second.send("halt");
+			assertTrue(first.isClosedByServer());
+			assertTrue(second.isClosedByServer());
+		}
+	}
+
+	@Test(timeout = 20_000)
+	public void testHaltOnlyClosesOneClient() throws IOException {
+		try (Client first = connect(); Client second = connect()) {
+			final String version = second.request("shortversion");
+			assertNotNull(version);
+
+			first.send("halt");
+			assertTrue(first.isClosedByServer());
+
+			assertEquals(version, second.request("shortversion"));
+			try (Client third = connect()) {
+				assertEquals(version, third.request("shortversion"));
+				third.send("halt");
+				assertTrue(third.isClosedByServer());
+			}
+			second.send("halt");
+			assertTrue(second.isClosedByServer());
+		}
+	}
+
+	@Test(timeout = 20_000)
+	public void testShutdownStopsAcceptingClients() throws IOException, InterruptedException {
+		try (Client first = connect(); Client second = connect()) {
+			final String version = second.request("shortversion");
+
+			first.send("shutdown");
+			assertTrue(first.isClosedByServer());
+			while (!serverSocket.isClosed()) {
+				Thread.sleep(10);
+			}
+			try (Client ignored = connect()) {
+				fail("A client has been accepted after shutdown");
+			} catch (ConnectException expected) {
+				// the server socket has been closed
+			}
+
+			// the session of the other client continues until it sends halt
+			assertEquals(version, second.request("shortversion"));
+			assertTrue(server.isAlive());
+			second.send("halt");
+			assertTrue(second.isClosedByServer());
+		}
+		server.join(10_000);
+		assertFalse(server.isAlive());
+	}
+}
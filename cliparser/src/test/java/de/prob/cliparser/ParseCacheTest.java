@@ -0,0 +1,146 @@
+package de.prob.cliparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import de.be4.classicalb.core.parser.ParsingBehaviour;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParseCacheTest {
+
+	private static final byte[] OUTPUT = {'D', 1, 2, 3};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ParsingBehaviour fastProlog() {
+		final ParsingBehaviour behaviour = new ParsingBehaviour();
+		behaviour.setFastPrologOutput(true);
+		return behaviour;
+	}
+
+	private File writeFile(String name, String content) throws IOException {
+		final File file = new File(folder.getRoot(), name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		// entries are only stored for files that have not been modified right before parsing
+		assertTrue(file.setLastModified(System.currentTimeMillis() - 60_000));
+		return file;
+	}
+
+	private static byte[] parse(File main, ParsingBehaviour behaviour) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final StringWriter err = new StringWriter();
+		assertEquals(err.toString(), 0, CliBParser.doFileParsing(behaviour, out, new PrintWriter(err), main));
+		return out.toByteArray();
+	}
+
+	private static boolean store(ParseCache cache, File main, List<File> filesLoaded, long parsingStarted) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ParseCache.Entry entry = cache.newEntry(main, out)) {
+			entry.getOutput().write(OUTPUT);
+			assertArrayEquals(OUTPUT, out.toByteArray());
+			return entry.commit(filesLoaded, parsingStarted);
+		}
+	}
+
+	@Test
+	public void testUnchangedFilesAreReused() throws IOException {
+		final File main = writeFile("Main.mch", "MACHINE Main INCLUDES Sub END");
+		final File sub = writeFile("Sub.mch", "MACHINE Sub END");
+		final ParseCache cache = new ParseCache(folder.newFolder("cache").toPath(), fastProlog());
+		assertTrue(store(cache, main, Arrays.asList(main, sub), System.currentTimeMillis()));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(cache.writeCachedOutput(main, out));
+		assertArrayEquals(OUTPUT, out.toByteArray());
+	}
+
+	@Test
+	public void testChangedReferencedFileInvalidatesEntry() throws IOException {
+		final File main = writeFile("Main.mch", "MACHINE Main DEFINITIONS \"Defs.def\" END");
+		final File defs = writeFile("Defs.def", "DEFINITIONS x == 1");
+		final ParseCache cache = new ParseCache(folder.newFolder("cache").toPath(), fastProlog());
+		assertTrue(store(cache, main, Arrays.asList(main, defs), System.currentTimeMillis()));
+
+		writeFile("Defs.def", "DEFINITIONS x == 2");
+		assertFalse(cache.writeCachedOutput(main, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testDifferentOptionsDoNotShareEntries() throws IOException {
+		final File main = writeFile("Main.mch", "MACHINE Main END");
+		final File cacheDir = folder.newFolder("cache");
+		store(new ParseCache(cacheDir.toPath(), fastProlog()), main, Arrays.asList(main), System.currentTimeMillis());
+
+		final ParsingBehaviour withLineNumbers = fastProlog();
+		withLineNumbers.setAddLineNumbers(true);
+		assertFalse(new ParseCache(cacheDir.toPath(), withLineNumbers).writeCachedOutput(main, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testStreamingOutputDoesNotShareEntries() throws IOException {
+		final File main = writeFile("Main.mch", "MACHINE Main END");
+		final File cacheDir = folder.newFolder("cache");
+		store(new ParseCache(cacheDir.toPath(), fastProlog()), main, Arrays.asList(main), System.currentTimeMillis());
+
+		final ParsingBehaviour streaming = fastProlog();
+		streaming.setStreamingOutput(true);
+		assertFalse(new ParseCache(cacheDir.toPath(), streaming).writeCachedOutput(main, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testFileModifiedWhileParsingIsNotStored() throws IOException {
+		final File main = writeFile("Main.mch", "MACHINE Main END");
+		final long parsingStarted = System.currentTimeMillis();
+		assertTrue(main.setLastModified(parsingStarted + 1000));
+		final ParseCache cache = new ParseCache(folder.newFolder("cache").toPath(), fastProlog());
+		assertFalse(store(cache, main, Arrays.asList(main), parsingStarted));
+		assertFalse(cache.writeCachedOutput(main, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testUncommittedEntryIsDiscarded() throws IOException {
+		final File main = writeFile("Main.mch", "MACHINE Main END");
+		final File cacheDir = folder.newFolder("cache");
+		final ParseCache cache = new ParseCache(cacheDir.toPath(), fastProlog());
+		try (ParseCache.Entry entry = cache.newEntry(main, new ByteArrayOutputStream())) {
+			entry.getOutput().write(OUTPUT);
+		}
+		assertEquals(0, cacheDir.listFiles().length);
+		assertFalse(cache.writeCachedOutput(main, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testModifiedDefinitionFileIsParsedAgain() throws IOException {
+		final File main = writeFile("Main.mch", "MACHINE Main DEFINITIONS \"Defs.def\" CONSTANTS c PROPERTIES c = value END");
+		writeFile("Defs.def", "DEFINITIONS value == 1");
+		final File cacheDir = folder.newFolder("cache");
+		final ParsingBehaviour behaviour = fastProlog();
+		behaviour.setCacheDirectory(cacheDir.getPath());
+
+		final byte[] first = parse(main, behaviour);
+		assertEquals(1, cacheDir.listFiles().length);
+		assertArrayEquals(first, parse(main, behaviour));
+
+		writeFile("Defs.def", "DEFINITIONS value == 2");
+		final byte[] modified = parse(main, behaviour);
+		assertFalse(Arrays.equals(first, modified));
+		assertArrayEquals(parse(main, fastProlog()), modified);
+		assertArrayEquals(modified, parse(main, behaviour));
+	}
+}
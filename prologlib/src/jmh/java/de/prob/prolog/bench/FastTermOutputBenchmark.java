@@ -0,0 +1,62 @@
+package de.prob.prolog.bench;
+
+import de.prob.prolog.output.FastSicstusTermOutput;
+import de.prob.prolog.output.FastSwiTermOutput;
+import de.prob.prolog.output.IPrologTermOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Writes a term shaped like a printed AST, where the same functors and identifiers occur many times.
+ */
+@State(Scope.Benchmark)
+@SuppressWarnings("unused")
+public class FastTermOutputBenchmark {
+
+	private static final int CONJUNCTS = 1000;
+
+	String[] identifiers;
+
+	@Setup
+	public void setup() {
+		identifiers = new String[CONJUNCTS];
+		for (int i = 0; i < CONJUNCTS; i++) {
+			// like token texts, the same identifier is a different string instance each time
+			identifiers[i] = new String("var" + (i % 20));
+		}
+	}
+
+	private void writeAst(IPrologTermOutput pto) {
+		pto.openTerm("machine", 1).openList();
+		for (int i = 0; i < CONJUNCTS; i++) {
+			pto.openTerm("conjunct", 3);
+			pto.openTerm("p3", 3).printNumber(i + 1).printNumber(3).printNumber(20).closeTerm();
+			pto.openTerm("equal", 3).printAtom("none");
+			pto.openTerm("identifier", 2).printAtom("none").printAtom(identifiers[i]).closeTerm();
+			pto.openTerm("integer", 2).printAtom("none").printNumber(i * 1000L).closeTerm();
+			pto.closeTerm();
+			pto.openTerm("truth", 1).printAtom("none").closeTerm();
+			pto.closeTerm();
+		}
+		pto.closeList().closeTerm().fullstop();
+	}
+
+	@Benchmark
+	public void sicstus(Blackhole bh) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeAst(new FastSicstusTermOutput(out));
+		bh.consume(out.toByteArray());
+	}
+
+	@Benchmark
+	public void swi(Blackhole bh) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeAst(new FastSwiTermOutput(out));
+		bh.consume(out.toByteArray());
+	}
+}
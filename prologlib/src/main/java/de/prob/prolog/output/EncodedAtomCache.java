@@ -0,0 +1,50 @@
+package de.prob.prolog.output;
+
+/**
+ * Small cache from atoms to their already encoded bytes, used by the fast binary outputs.
+ * <p>
+ * AST output writes the same few hundred functors and identifiers over and over,
+ * so encoding each of them only once avoids allocating a new byte array for every occurrence.
+ * The cache is direct-mapped: each atom can only be stored in one slot, which is overwritten by the next atom that maps to it.
+ * Lookups first compare by identity, which is enough for functors that are string constants,
+ * and then by equality, for identifiers whose text is a new string in every token.
+ * Only short atoms are cached, so the memory usage is bounded.
+ * </p>
+ */
+final class EncodedAtomCache {
+
+	private static final int SIZE = 1024; // must be a power of two
+	private static final int MAX_ATOM_LENGTH = 64;
+
+	private final String[] atoms = new String[SIZE];
+	private final byte[][] encodings = new byte[SIZE][];
+
+	private static int slot(String atom) {
+		int h = atom.hashCode();
+		return (h ^ (h >>> 16)) & (SIZE - 1);
+	}
+
+	/**
+	 * @return the encoded bytes stored for the given atom, or {@code null} if it is not cached
+	 */
+	byte[] get(String atom) {
+		int slot = slot(atom);
+		String cached = this.atoms[slot];
+		if (cached == atom || (cached != null && cached.equals(atom))) {
+			return this.encodings[slot];
+		}
+		return null;
+	}
+
+	/**
+	 * Stores the encoded bytes of an atom, unless the atom is too long to be worth caching.
+	 * The byte array must not be modified afterwards.
+	 */
+	void put(String atom, byte[] encoding) {
+		if (atom.length() <= MAX_ATOM_LENGTH) {
+			int slot = slot(atom);
+			this.atoms[slot] = atom;
+			this.encodings[slot] = encoding;
+		}
+	}
+}
@@ -4,9 +4,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import de.prob.prolog.term.PrologTerm;
@@ -14,8 +16,21 @@ import de.prob.prolog.term.PrologTerm;
 /**
  * Term Output that writes the Sicstus FastRW format directly to a given OutputStream.
  * <p>
- * Due to API constraints (unknown term arity when calling {@link IPrologTermOutput#openTerm(String)}),
- * this will buffer bytes until {@link IPrologTermOutput#fullstop()} is called.
+ * By default, every sentence is buffered and only written to the stream by {@link #fullstop()},
+ * so nothing is written if printing a sentence fails.
+ * <p>
+ * In streaming mode (see {@link #FastSicstusTermOutput(OutputStream, boolean)}), the beginning of a sentence
+ * is already written while it is printed, to bound memory usage for large sentences.
+ * The arity of a compound term opened with {@link IPrologTermOutput#openTerm(String)} is not known
+ * until it is closed, so a placeholder is written and patched in {@link #closeTerm()}.
+ * Bytes are buffered only while such a placeholder is pending, all bytes before it are written
+ * to the stream once the buffer is large enough.
+ * Terms opened with {@link #openTerm(String, int)} do not need a placeholder,
+ * so if all producers announce the arity, memory usage is bounded by the nesting depth
+ * and not by the size of the sentence.
+ * If an exception is thrown while a sentence is printed in streaming mode (e.g. because of an unclosed term
+ * or a wrong arity), the stream may end with an incomplete sentence that cannot be read,
+ * so the caller must discard the output.
  */
 public final class FastSicstusTermOutput implements IPrologTermOutput {
 
@@ -29,11 +44,13 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 	private static final class CompoundContext extends TermContext {
 
 		private final String functor;
-		private int arityPos;
+		private final int expectedArity;
+		private long arityPos;
 		private int arity;
 
-		CompoundContext(String functor) {
+		CompoundContext(String functor, int expectedArity) {
 			this.functor = functor;
+			this.expectedArity = expectedArity;
 			this.arity = 0;
 		}
 
@@ -41,11 +58,22 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 			return this.functor;
 		}
 
-		int arityPos() {
+		/**
+		 * @return the arity given in {@link #openTerm(String, int)}, or -1 if it is not known in advance
+		 */
+		int expectedArity() {
+			return this.expectedArity;
+		}
+
+		boolean hasPendingArity() {
+			return this.expectedArity < 0 && this.arity > 0;
+		}
+
+		long arityPos() {
 			return this.arityPos;
 		}
 
-		void setArityPos(int arityPos) {
+		void setArityPos(long arityPos) {
 			this.arityPos = arityPos;
 		}
 
@@ -59,23 +87,79 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 	}
 
 	private static final BigInteger BI_255 = BigInteger.valueOf(255);
+	private static final int DRAIN_THRESHOLD = 8192;
 
 	private final OutputStream out;
+	private final boolean streaming;
 	private final Map<String, Integer> varCache;
 	private final Deque<TermContext> termStack;
 	private final ModifiableByteBuffer buffer;
+	private final EncodedAtomCache atomCache;
 
 	private boolean inAsciiList;
+	// true if the version byte of the current sentence has already been written
+	private boolean started;
+	// number of bytes of the current sentence that have already been written to the stream (excluding version byte)
+	private long flushed;
+	private int nextDrain;
 
 	public FastSicstusTermOutput(OutputStream out) {
+		this(out, false);
+	}
+
+	/**
+	 * @param out the stream to write to
+	 * @param streaming if true, the beginning of a sentence is written before {@link #fullstop()} is called,
+	 *                  see the class documentation for the consequences if printing fails
+	 */
+	public FastSicstusTermOutput(OutputStream out, boolean streaming) {
 		this.out = out;
+		this.streaming = streaming;
 		this.varCache = new HashMap<>();
 		this.termStack = new ArrayDeque<>();
 		this.buffer = new ModifiableByteBuffer();
+		this.atomCache = new EncodedAtomCache();
 		this.inAsciiList = false;
+		this.started = false;
+		this.flushed = 0;
+		this.nextDrain = DRAIN_THRESHOLD;
+	}
+
+	/**
+	 * Writes all buffered bytes that come before the first pending arity placeholder.
+	 */
+	private void drain() {
+		int end = this.buffer.size();
+		for (Iterator<TermContext> it = this.termStack.descendingIterator(); it.hasNext(); ) {
+			TermContext ctx = it.next();
+			if (ctx instanceof CompoundContext && ((CompoundContext) ctx).hasPendingArity()) {
+				end = (int) (((CompoundContext) ctx).arityPos() - this.flushed);
+				break;
+			}
+		}
+
+		if (end > 0) {
+			try {
+				if (!this.started) {
+					this.out.write('D'); // version
+					this.started = true;
+				}
+				this.out.write(this.buffer.bytes(), 0, end);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			this.buffer.discard(end);
+			this.flushed += end;
+		}
+		// do not check again before more data has been buffered, the placeholder might still be pending
+		this.nextDrain = this.buffer.size() + DRAIN_THRESHOLD;
 	}
 
 	private void handleTerm() {
+		if (this.streaming && this.buffer.size() >= this.nextDrain) {
+			this.drain();
+		}
+
 		// end ascii list with zero byte
 		if (this.inAsciiList) {
 			this.buffer.write(0);
@@ -88,22 +172,56 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 			this.buffer.write('[');
 		} else if (ctx instanceof CompoundContext) {
 			CompoundContext c = (CompoundContext) ctx;
-			// not an atom, write compound term prelude
-			if (c.arity() == 0) {
+			// not an atom, write compound term prelude (unless already written by openTerm(String, int))
+			if (c.expectedArity() < 0 && c.arity() == 0) {
 				this.buffer.write('S');
-				this.buffer.writeNullTerminatedString(c.functor());
-				c.setArityPos(this.buffer.size());
+				this.writeAtomName(c.functor());
+				c.setArityPos(this.flushed + this.buffer.size());
 				this.buffer.write(0); // arity placeholder
 			}
 			// remember arity
-			((CompoundContext) ctx).increaseArity();
+			c.increaseArity();
+		}
+	}
+
+	/**
+	 * Writes an atom or functor name, reusing its UTF-8 encoding if it has been written before.
+	 */
+	private void writeAtomName(String name) {
+		byte[] encoded = this.atomCache.get(name);
+		if (encoded == null) {
+			encoded = name.getBytes(StandardCharsets.UTF_8);
+			this.atomCache.put(name, encoded);
 		}
+		this.buffer.writeNullTerminated(encoded);
 	}
 
 	@Override
 	public IPrologTermOutput openTerm(String functor, boolean ignoreIndentation) {
 		this.handleTerm();
-		this.termStack.push(new CompoundContext(functor));
+		this.termStack.push(new CompoundContext(functor, -1));
+		return this;
+	}
+
+	/**
+	 * The term is written without an arity placeholder, so the buffered bytes can be written to the stream immediately.
+	 */
+	@Override
+	public IPrologTermOutput openTerm(String functor, int arity, boolean ignoreIndentation) {
+		if (arity < 0 || arity > 0xff) {
+			throw new IllegalArgumentException("invalid arity for compound term: " + arity);
+		}
+
+		this.handleTerm();
+		if (arity == 0) {
+			this.buffer.write('A');
+			this.writeAtomName(functor);
+		} else {
+			this.buffer.write('S');
+			this.writeAtomName(functor);
+			this.buffer.write(arity);
+		}
+		this.termStack.push(new CompoundContext(functor, arity));
 		return this;
 	}
 
@@ -111,15 +229,19 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 	public IPrologTermOutput closeTerm() {
 		CompoundContext ctx = (CompoundContext) this.termStack.pop();
 		int arity = ctx.arity();
-		if (arity < 0 || arity > 0xff) {
+		if (ctx.expectedArity() >= 0) {
+			if (arity != ctx.expectedArity()) {
+				throw new IllegalStateException("term " + ctx.functor() + " was opened with arity " + ctx.expectedArity() + ", but has " + arity + " argument(s)");
+			}
+		} else if (arity < 0 || arity > 0xff) {
 			throw new IllegalArgumentException("invalid arity for compound term: " + arity);
 		} else if (arity == 0) {
 			// this is an atom
 			this.buffer.write('A');
-			this.buffer.writeNullTerminatedString(ctx.functor());
+			this.writeAtomName(ctx.functor());
 		} else {
 			// fix placeholder arity
-			this.buffer.set(ctx.arityPos(), arity);
+			this.buffer.set((int) (ctx.arityPos() - this.flushed), arity);
 		}
 		return this;
 	}
@@ -128,7 +250,7 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 	public IPrologTermOutput printAtom(String content) {
 		this.handleTerm();
 		this.buffer.write('A');
-		this.buffer.writeNullTerminatedString(content);
+		this.writeAtomName(content);
 		return this;
 	}
 
@@ -148,7 +270,7 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 		} else {
 			this.handleTerm();
 			this.buffer.write('I');
-			this.buffer.writeNullTerminatedString(String.valueOf(number));
+			this.buffer.writeNullTerminatedLong(number);
 		}
 		return this;
 	}
@@ -206,7 +328,7 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 		this.handleTerm();
 		this.buffer.write('_');
 		int index = this.varCache.computeIfAbsent(var, k -> this.varCache.size());
-		this.buffer.writeNullTerminatedString(String.valueOf(index));
+		this.buffer.writeNullTerminatedLong(index);
 		return this;
 	}
 
@@ -233,7 +355,9 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 		}
 
 		try {
-			this.out.write('D'); // version
+			if (!this.started) {
+				this.out.write('D'); // version
+			}
 			this.out.write(this.buffer.bytes(), 0, this.buffer.size());
 			this.out.flush();
 		} catch (IOException e) {
@@ -247,5 +371,8 @@ public final class FastSicstusTermOutput implements IPrologTermOutput {
 		this.varCache.clear();
 		this.buffer.reset();
 		this.inAsciiList = false;
+		this.started = false;
+		this.flushed = 0;
+		this.nextDrain = DRAIN_THRESHOLD;
 	}
 }
@@ -6,13 +6,10 @@ import java.io.UncheckedIOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.CharBuffer;
-import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Locale;
@@ -25,6 +22,8 @@ import de.prob.prolog.term.PrologTerm;
  * <p>
  * Due to API constraints (unknown total size when printing anything),
  * this will sometimes buffer bytes until {@link IPrologTermOutput#fullstop()} is called.
+ * Terms opened with {@link #openTerm(String, int)} are encoded in a single pass,
+ * the arity of other terms has to be patched in when they are closed.
  */
 public final class FastSwiTermOutput implements IPrologTermOutput {
 
@@ -38,11 +37,13 @@ public final class FastSwiTermOutput implements IPrologTermOutput {
 	private static final class CompoundContext extends TermContext {
 
 		private final String functor;
+		private final int expectedArity;
 		private int arityPos;
 		private int arity;
 
-		CompoundContext(String functor) {
+		CompoundContext(String functor, int expectedArity) {
 			this.functor = functor;
+			this.expectedArity = expectedArity;
 			this.arity = 0;
 		}
 
@@ -50,6 +51,13 @@ public final class FastSwiTermOutput implements IPrologTermOutput {
 			return this.functor;
 		}
 
+		/**
+		 * @return the arity given in {@link #openTerm(String, int)}, or -1 if it is not known in advance
+		 */
+		int expectedArity() {
+			return this.expectedArity;
+		}
+
 		int arityPos() {
 			return this.arityPos;
 		}
@@ -94,6 +102,8 @@ public final class FastSwiTermOutput implements IPrologTermOutput {
 	private final Map<String, Integer> varCache;
 	private final Deque<TermContext> termStack;
 	private final ModifiableByteBuffer buffer;
+	// only latin atoms are cached, their encoding does not depend on the target settings
+	private final EncodedAtomCache atomCache;
 
 	private boolean topLevel;
 	private int stackSize;
@@ -109,6 +119,7 @@ public final class FastSwiTermOutput implements IPrologTermOutput {
 		this.varCache = new HashMap<>();
 		this.termStack = new ArrayDeque<>();
 		this.buffer = new ModifiableByteBuffer();
+		this.atomCache = new EncodedAtomCache();
 		this.topLevel = true;
 		this.stackSize = 0;
 
@@ -207,8 +218,8 @@ public final class FastSwiTermOutput implements IPrologTermOutput {
 			this.stackSize += 3; // cons functor + head + tail
 		} else if (ctx instanceof CompoundContext) {
 			CompoundContext c = (CompoundContext) ctx;
-			// not an atom, write compound term prelude
-			if (c.arity() == 0) {
+			// not an atom, write compound term prelude (unless already written by openTerm(String, int))
+			if (c.expectedArity() < 0 && c.arity() == 0) {
 				this.buffer.write(PL_TYPE_EXT_COMPOUND);
 				c.setArityPos(this.buffer.size());
 				this.buffer.write(0); // arity placeholder
@@ -229,7 +240,30 @@ public final class FastSwiTermOutput implements IPrologTermOutput {
 		if (!this.topLevel || !this.termStack.isEmpty()) {
 			this.handleTerm();
 		}
-		this.termStack.push(new CompoundContext(functor));
+		this.termStack.push(new CompoundContext(functor, -1));
+		return this;
+	}
+
+	/**
+	 * The functor and arity are written immediately, so no placeholder has to be patched.
+	 */
+	@Override
+	public IPrologTermOutput openTerm(String functor, int arity, boolean ignoreIndentation) {
+		if (arity < 0) {
+			throw new IllegalArgumentException("invalid arity for compound term: " + arity);
+		} else if (arity == 0) {
+			this.writeAtom(functor, true);
+		} else {
+			this.handleTerm();
+			this.buffer.write(PL_TYPE_EXT_COMPOUND);
+			try {
+				writeSize(this.buffer, arity);
+				this.writeString(this.buffer, functor);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		this.termStack.push(new CompoundContext(functor, arity));
 		return this;
 	}
 
@@ -238,7 +272,14 @@ public final class FastSwiTermOutput implements IPrologTermOutput {
 		CompoundContext ctx = (CompoundContext) this.termStack.pop();
 		// ...so we can check here if this was a top-level atom
 		int arity = ctx.arity();
-		if (arity < 0) {
+		if (ctx.expectedArity() >= 0) {
+			if (arity != ctx.expectedArity()) {
+				throw new IllegalStateException("term " + ctx.functor() + " was opened with arity " + ctx.expectedArity() + ", but has " + arity + " argument(s)");
+			}
+			if (arity > 0) {
+				this.stackSize += 1 + arity; // functor + terms
+			}
+		} else if (arity < 0) {
 			throw new IllegalArgumentException("invalid arity for compound term: " + arity);
 		} else if (arity == 0) {
 			// we have not written anything yet
@@ -466,25 +507,43 @@ public final class FastSwiTermOutput implements IPrologTermOutput {
 	}
 
 	private void writeString(OutputStream os, String atom) throws IOException {
-		CharsetEncoder extendedAsciiEncoder = StandardCharsets.ISO_8859_1.newEncoder()
-				                                      .onMalformedInput(CodingErrorAction.REPORT)
-				                                      .onUnmappableCharacter(CodingErrorAction.REPORT);
-		try {
-			ByteBuffer result = extendedAsciiEncoder.encode(CharBuffer.wrap(atom));
-			os.write(PL_TYPE_EXT_ATOM);
-
-			int len = result.remaining();
-			writeSize(os, len);
-			os.write(result.array(), result.arrayOffset(), len);
-		} catch (CharacterCodingException e) {
-			if (this.allowWAtom) {
-				os.write(PL_TYPE_EXT_WATOM);
-				byte[] bytes = atom.getBytes(this.wcharCharset());
-				writeSize(os, bytes.length);
-				os.write(bytes);
-			} else {
-				throw new IllegalArgumentException("atom contains non-latin characters", e);
+		byte[] encoded = this.atomCache.get(atom);
+		if (encoded == null) {
+			encoded = encodeLatinAtom(atom);
+			if (encoded == null) {
+				this.writeWideString(os, atom);
+				return;
+			}
+			this.atomCache.put(atom, encoded);
+		}
+		os.write(encoded);
+	}
+
+	/**
+	 * @return the complete encoding of the atom including its type and size, or {@code null} if it contains non-latin characters
+	 */
+	private static byte[] encodeLatinAtom(String atom) throws IOException {
+		ModifiableByteBuffer encoded = new ModifiableByteBuffer();
+		encoded.write(PL_TYPE_EXT_ATOM);
+		writeSize(encoded, atom.length());
+		for (int i = 0; i < atom.length(); i++) {
+			char c = atom.charAt(i);
+			if (c > 0xff) {
+				return null;
 			}
+			encoded.write(c);
+		}
+		return Arrays.copyOf(encoded.bytes(), encoded.size());
+	}
+
+	private void writeWideString(OutputStream os, String atom) throws IOException {
+		if (this.allowWAtom) {
+			os.write(PL_TYPE_EXT_WATOM);
+			byte[] bytes = atom.getBytes(this.wcharCharset());
+			writeSize(os, bytes.length);
+			os.write(bytes);
+		} else {
+			throw new IllegalArgumentException("atom contains non-latin characters");
 		}
 	}
 
@@ -6,6 +6,14 @@ import java.util.function.Consumer;
 
 import de.prob.prolog.term.PrologTerm;
 
+/**
+ * Writes Prolog terms, terminated by {@link #fullstop()}.
+ * <p>
+ * An implementation may write a sentence to the underlying stream before it is terminated
+ * (e.g. {@link PrologTermOutput}, or {@link FastSicstusTermOutput} in streaming mode).
+ * If printing a sentence fails with an exception, the stream may then end with an incomplete sentence
+ * and has to be discarded by the caller instead of being written to or read any further.
+ */
 public interface IPrologTermOutput {
 
 	/**
@@ -41,6 +49,39 @@ public interface IPrologTermOutput {
 	 */
 	IPrologTermOutput openTerm(final String functor, final boolean ignoreIndentation);
 
+	/**
+	 * Start a new term whose arity is known in advance. Exactly {@code arity}
+	 * terms must be printed as arguments before the term is closed with
+	 * {@link #closeTerm()}.
+	 * <p>
+	 * Binary outputs like {@link FastSicstusTermOutput} can write such a term
+	 * in a single pass, other outputs treat it like {@link #openTerm(String)}.
+	 * Prefer this method whenever the number of arguments is statically known.
+	 * <p>
+	 * Same as {@link #openTerm(String, int, boolean)} with <code>false</code> as
+	 * third argument.
+	 *
+	 * @param functor the functor, never <code>null</code>
+	 * @param arity   the number of arguments that will be printed
+	 * @return the IPrologTermOutput
+	 */
+	default IPrologTermOutput openTerm(final String functor, final int arity) {
+		return this.openTerm(functor, arity, false);
+	}
+
+	/**
+	 * Start a new term whose arity is known in advance, see
+	 * {@link #openTerm(String, int)} and {@link #openTerm(String, boolean)}.
+	 *
+	 * @param functor           the functor, never <code>null</code>
+	 * @param arity             the number of arguments that will be printed
+	 * @param ignoreIndentation if this is set to true, the arguments of this term are not subject to indent.
+	 * @return the IPrologTermOutput
+	 */
+	default IPrologTermOutput openTerm(final String functor, final int arity, final boolean ignoreIndentation) {
+		return this.openTerm(functor, ignoreIndentation);
+	}
+
 	/**
 	 * Finish a term that was started with {@link #openTerm(String)}. This
 	 * method basically prints the closing parenthesis.
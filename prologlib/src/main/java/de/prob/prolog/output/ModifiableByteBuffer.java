@@ -33,9 +33,17 @@ final class ModifiableByteBuffer extends OutputStream {
 		this.size = 0;
 	}
 
+	/**
+	 * Removes the first {@code count} bytes and moves the remaining bytes to the front.
+	 */
+	void discard(int count) {
+		System.arraycopy(this.buffer, count, this.buffer, 0, this.size - count);
+		this.size -= count;
+	}
+
 	private void ensureCapacity(int minCapacity) {
 		if (minCapacity > this.buffer.length) {
-			this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, minCapacity));
 		}
 	}
 
@@ -54,11 +62,49 @@ final class ModifiableByteBuffer extends OutputStream {
 
 	void writeNullTerminatedString(String s) {
 		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		this.writeNullTerminated(bytes);
+	}
+
+	/**
+	 * Same as {@link #writeNullTerminatedString(String)}, but with a string that has already been encoded as UTF-8.
+	 */
+	void writeNullTerminated(byte[] bytes) {
 		// TODO: should check for zero byte here
 		this.write(bytes, 0, bytes.length);
 		this.write((byte) 0);
 	}
 
+	/**
+	 * Writes the decimal representation of the number, like {@link #writeNullTerminatedString(String)}
+	 * with {@link Long#toString(long)}, but without creating a string first.
+	 */
+	void writeNullTerminatedLong(long number) {
+		if (number == Long.MIN_VALUE) {
+			// cannot be negated
+			this.writeNullTerminatedString(Long.toString(number));
+			return;
+		}
+
+		// sign, at most 19 digits and the zero byte
+		this.ensureCapacity(this.size + 21);
+		if (number < 0) {
+			this.buffer[this.size++] = '-';
+			number = -number;
+		}
+		int start = this.size;
+		do {
+			this.buffer[this.size++] = (byte) ('0' + number % 10);
+			number /= 10;
+		} while (number != 0);
+		// the digits were written in reverse order
+		for (int i = start, j = this.size - 1; i < j; i++, j--) {
+			byte digit = this.buffer[i];
+			this.buffer[i] = this.buffer[j];
+			this.buffer[j] = digit;
+		}
+		this.buffer[this.size++] = 0;
+	}
+
 	void set(int pos, int value) {
 		this.ensureCapacity(pos + 1);
 		this.buffer[pos] = (byte) value;
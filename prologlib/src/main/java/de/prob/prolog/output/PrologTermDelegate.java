@@ -101,6 +101,18 @@ public class PrologTermDelegate implements IPrologTermOutput {
 		return this;
 	}
 
+	@Override
+	public IPrologTermOutput openTerm(final String functor, final int arity) {
+		pto.openTerm(functor, arity);
+		return this;
+	}
+
+	@Override
+	public IPrologTermOutput openTerm(final String functor, final int arity, final boolean ignoreIndentation) {
+		pto.openTerm(functor, arity, ignoreIndentation);
+		return this;
+	}
+
 	@Override
 	public IPrologTermOutput term(final String functor, final Consumer<? super IPrologTermOutput> scope) {
 		pto.term(functor, scope);
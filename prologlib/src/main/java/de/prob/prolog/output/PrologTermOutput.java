@@ -1,6 +1,7 @@
 package de.prob.prolog.output;
 
 import java.io.BufferedWriter;
+import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -18,8 +19,82 @@ import de.prob.prolog.term.PrologTerm;
  */
 public final class PrologTermOutput implements IPrologTermOutput {
 
+	/**
+	 * Determines when {@link #fullstop()} flushes the underlying writer.
+	 * Flushing after every sentence is needed for interactive protocols,
+	 * but when writing to a file it causes a system call per sentence.
+	 */
+	public static final class FlushPolicy {
+		/**
+		 * Flush after every fullstop. This is the default.
+		 */
+		public static final FlushPolicy ALWAYS = new FlushPolicy(0);
+		/**
+		 * Only flush when {@link #flush()} is called.
+		 * The writer may still pass on data when its own buffer is full.
+		 */
+		public static final FlushPolicy EXPLICIT = new FlushPolicy(Long.MAX_VALUE);
+
+		private final long threshold;
+
+		private FlushPolicy(long threshold) {
+			this.threshold = threshold;
+		}
+
+		/**
+		 * Flush at a fullstop once at least the given number of characters have been written since the last flush.
+		 *
+		 * @param characters the minimum number of characters between two flushes
+		 * @return the flush policy
+		 */
+		public static FlushPolicy afterCharacters(int characters) {
+			if (characters <= 0) {
+				throw new IllegalArgumentException("number of characters must be positive: " + characters);
+			}
+			return new FlushPolicy(characters);
+		}
+	}
+
+	/**
+	 * Counts the characters written since the last flush.
+	 */
+	private static final class CountingWriter extends FilterWriter {
+		private long count = 0;
+
+		CountingWriter(Writer out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			super.write(c);
+			count++;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			super.write(cbuf, off, len);
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			super.write(str, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			super.flush();
+			count = 0;
+		}
+	}
+
 	private final Writer out;
 	private final boolean useIndentation;
+	private final FlushPolicy flushPolicy;
+	// only set for FlushPolicy.afterCharacters, same object as out
+	private final CountingWriter countingOut;
 
 	private int indentLevel = 0;
 	private int ignoreIndentationLevel = 0;
@@ -37,11 +112,23 @@ public final class PrologTermOutput implements IPrologTermOutput {
 	 */
 	private boolean lazyParenthesis = false;
 
-	public PrologTermOutput(Writer out, boolean useIndentation) {
-		this.out = Objects.requireNonNull(out, "out");
+	public PrologTermOutput(Writer out, boolean useIndentation, FlushPolicy flushPolicy) {
+		Objects.requireNonNull(out, "out");
+		this.flushPolicy = Objects.requireNonNull(flushPolicy, "flushPolicy");
+		if (flushPolicy != FlushPolicy.ALWAYS && flushPolicy != FlushPolicy.EXPLICIT) {
+			this.countingOut = new CountingWriter(out);
+			this.out = this.countingOut;
+		} else {
+			this.countingOut = null;
+			this.out = out;
+		}
 		this.useIndentation = useIndentation;
 	}
 
+	public PrologTermOutput(Writer out, boolean useIndentation) {
+		this(out, useIndentation, FlushPolicy.ALWAYS);
+	}
+
 	public PrologTermOutput(final PrintWriter out, final boolean useIndentation) {
 		this((Writer) out, useIndentation);
 	}
@@ -50,8 +137,12 @@ public final class PrologTermOutput implements IPrologTermOutput {
 		this(out, true);
 	}
 
+	public PrologTermOutput(final OutputStream out, final boolean useIndentation, final FlushPolicy flushPolicy) {
+		this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), useIndentation, flushPolicy);
+	}
+
 	public PrologTermOutput(final OutputStream out, final boolean useIndentation) {
-		this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), useIndentation);
+		this(out, useIndentation, FlushPolicy.ALWAYS);
 	}
 
 	public PrologTermOutput(final OutputStream out) {
@@ -572,7 +663,9 @@ public final class PrologTermOutput implements IPrologTermOutput {
 		try {
 			out.write('.');
 			out.write(System.lineSeparator());
-			out.flush();
+			if (shouldFlushAfterFullstop()) {
+				out.flush();
+			}
 		} catch (IOException exc) {
 			throw new UncheckedIOException(exc);
 		}
@@ -581,6 +674,16 @@ public final class PrologTermOutput implements IPrologTermOutput {
 		return this;
 	}
 
+	private boolean shouldFlushAfterFullstop() {
+		if (flushPolicy == FlushPolicy.ALWAYS) {
+			return true;
+		} else if (countingOut != null) {
+			return countingOut.count >= flushPolicy.threshold;
+		} else {
+			return false;
+		}
+	}
+
 	@Override
 	public IPrologTermOutput printTerm(final PrologTerm term) {
 		term.toTermOutput(this);
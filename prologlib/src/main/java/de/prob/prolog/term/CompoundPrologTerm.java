@@ -75,7 +75,7 @@ public final class CompoundPrologTerm extends PrologTerm {
 		if (isAtom()) {
 			pto.printAtom(functor);
 		} else {
-			pto.openTerm(functor);
+			pto.openTerm(functor, arguments.length);
 			for (PrologTerm argument : arguments) {
 				argument.toTermOutput(pto);
 			}
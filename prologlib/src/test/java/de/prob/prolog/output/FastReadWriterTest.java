@@ -2,13 +2,17 @@ package de.prob.prolog.output;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import de.prob.prolog.term.PrologTerm;
 
 import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -17,6 +21,8 @@ import org.junit.jupiter.params.provider.ArgumentsSource;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
 public class FastReadWriterTest {
@@ -302,4 +308,141 @@ public class FastReadWriterTest {
 		byte[] actual = out.toByteArray();
 		assertArrayEquals(expected, actual);
 	}
+
+	@Test
+	public void testFastRW_Sicstus_KnownArity() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FastSicstusTermOutput pto = new FastSicstusTermOutput(out);
+		pto.openTerm("a", 2).printAtom("b");
+		pto.openTerm("c", 0).closeTerm();
+		pto.closeTerm().fullstop();
+		compareBytesWithString("DSa\0\2Ab\0Ac\0", out.toByteArray());
+	}
+
+	@Test
+	public void testFastRW_Sicstus_KnownArityMismatch() {
+		FastSicstusTermOutput pto = new FastSicstusTermOutput(new ByteArrayOutputStream());
+		pto.openTerm("a", 2).printAtom("b");
+		assertThrows(IllegalStateException.class, pto::closeTerm);
+	}
+
+	private static byte[] writeLargeTerm(Function<OutputStream, IPrologTermOutput> factory, boolean knownArity) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		IPrologTermOutput pto = factory.apply(out);
+		if (knownArity) {
+			pto.openTerm("large", 200);
+		} else {
+			pto.openTerm("large");
+		}
+		for (int i = 0; i < 200; i++) {
+			pto.openTerm("f", 1).printAtom("a").closeTerm();
+		}
+		pto.closeTerm().fullstop();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testFastRW_KnownArityEncodesSameBytes() {
+		Function<OutputStream, IPrologTermOutput> sicstus = FastSicstusTermOutput::new;
+		Function<OutputStream, IPrologTermOutput> swi = out -> new FastSwiTermOutput(out)
+			.withTarget64bit()
+			.withTargetLittleEndian()
+			.withTargetNoWindows();
+		assertArrayEquals(writeLargeTerm(sicstus, false), writeLargeTerm(sicstus, true));
+		// arity > 127 needs more than one byte in SWI's size encoding
+		assertArrayEquals(writeLargeTerm(swi, false), writeLargeTerm(swi, true));
+	}
+
+	@Test
+	public void testFastRW_Sicstus_StreamsLargeSentence() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FastSicstusTermOutput pto = new FastSicstusTermOutput(out, true);
+		StringBuilder expected = new StringBuilder("DSf\0\1");
+		pto.openTerm("f", 1).openList();
+		for (int i = 0; i < 10000; i++) {
+			pto.printAtom("atom");
+			expected.append("[Aatom\0");
+		}
+		expected.append(']');
+		// no arity placeholder is pending, so most of the sentence has already been written
+		assertTrue(out.size() > 10000);
+		pto.closeList().closeTerm().fullstop();
+		compareBytesWithString(expected.toString(), out.toByteArray());
+	}
+
+	@Test
+	public void testFastRW_Sicstus_LargeSentenceWithPendingArity() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FastSicstusTermOutput pto = new FastSicstusTermOutput(out, true);
+		StringBuilder expected = new StringBuilder("DAx\0DSf\0\2");
+		pto.printAtom("x").fullstop();
+		pto.openTerm("f").openList();
+		for (int i = 0; i < 10000; i++) {
+			pto.openTerm("g", 1).printNumber(i).closeTerm();
+			expected.append("[Sg\0\1I").append(i).append("\0");
+		}
+		pto.closeList().printAtom("y").closeTerm().fullstop();
+		expected.append("]Ay\0");
+		compareBytesWithString(expected.toString(), out.toByteArray());
+	}
+
+	@Test
+	public void testFastRW_Sicstus_BuffersSentencesByDefault() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FastSicstusTermOutput pto = new FastSicstusTermOutput(out);
+		pto.printAtom("x").fullstop();
+		int written = out.size();
+		pto.openTerm("f", 2).openList();
+		for (int i = 0; i < 10000; i++) {
+			pto.printAtom("atom");
+		}
+		pto.closeList();
+		// nothing of an incomplete sentence is written, even if closing it fails
+		assertThrows(IllegalStateException.class, pto::closeTerm);
+		assertEquals(written, out.size());
+	}
+
+	@Test
+	public void testFastRW_Sicstus_Numbers() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FastSicstusTermOutput pto = new FastSicstusTermOutput(out);
+		pto.openTerm("n", 5).printNumber(0).printNumber(-1).printNumber(1234567890L)
+			.printNumber(Long.MAX_VALUE).printNumber(Long.MIN_VALUE).closeTerm().fullstop();
+		compareBytesWithString("DSn\0\5I0\0I-1\0I1234567890\0I9223372036854775807\0I-9223372036854775808\0", out.toByteArray());
+	}
+
+	private static byte[] writeRepeatedAtoms(Function<OutputStream, IPrologTermOutput> factory, int repetitions) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		IPrologTermOutput pto = factory.apply(out);
+		StringBuilder longAtom = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			longAtom.append('x');
+		}
+		for (int i = 0; i < repetitions; i++) {
+			pto.openTerm("conjunct", 4)
+				.printAtom("identifier")
+				// equal, but not the same instance
+				.printAtom(new String(new char[] {'i', 'd', 'e', 'n', 't', 'i', 'f', 'i', 'e', 'r'}))
+				.printAtom("\u00e4\u03bb")
+				.printAtom(longAtom.toString())
+				.closeTerm().fullstop();
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testFastRW_RepeatedAtomsEncodeSameBytes() {
+		Function<OutputStream, IPrologTermOutput> sicstus = FastSicstusTermOutput::new;
+		Function<OutputStream, IPrologTermOutput> swi = out -> new FastSwiTermOutput(out)
+			.withTarget64bit()
+			.withTargetLittleEndian()
+			.withTargetNoWindows();
+		for (Function<OutputStream, IPrologTermOutput> factory : Arrays.asList(sicstus, swi)) {
+			byte[] once = writeRepeatedAtoms(factory, 1);
+			byte[] twice = writeRepeatedAtoms(factory, 2);
+			byte[] expected = Arrays.copyOf(once, 2 * once.length);
+			System.arraycopy(once, 0, expected, once.length, once.length);
+			assertArrayEquals(expected, twice);
+		}
+	}
 }
@@ -495,4 +495,63 @@ public class PrologTermOutputTest {
 			assertEquals(output, sw.toString().trim());
 		}
 	}
+
+	public static class FlushPolicyTest {
+
+		private static final class FlushCountingWriter extends StringWriter {
+			private int flushes = 0;
+
+			@Override
+			public void flush() {
+				super.flush();
+				flushes++;
+			}
+		}
+
+		private static void writeSentences(final IPrologTermOutput pto, final String atom, final int count) {
+			for (int i = 0; i < count; i++) {
+				pto.printAtom(atom).fullstop();
+			}
+		}
+
+		@Test
+		public void testAlways() {
+			final FlushCountingWriter writer = new FlushCountingWriter();
+			writeSentences(new PrologTermOutput(writer, false), "a", 3);
+			assertEquals(3, writer.flushes);
+		}
+
+		@Test
+		public void testExplicit() {
+			final FlushCountingWriter writer = new FlushCountingWriter();
+			final IPrologTermOutput pto = new PrologTermOutput(writer, false, PrologTermOutput.FlushPolicy.EXPLICIT);
+			writeSentences(pto, "a", 3);
+			assertEquals(0, writer.flushes);
+			pto.flush();
+			assertEquals(1, writer.flushes);
+			assertEquals("a." + System.lineSeparator() + "a." + System.lineSeparator() + "a." + System.lineSeparator(), writer.toString());
+		}
+
+		@Test
+		public void testAfterCharacters() {
+			final FlushCountingWriter writer = new FlushCountingWriter();
+			final IPrologTermOutput pto = new PrologTermOutput(writer, false, PrologTermOutput.FlushPolicy.afterCharacters(100));
+			writeSentences(pto, "a", 10);
+			assertEquals(0, writer.flushes);
+			final StringBuilder longAtom = new StringBuilder();
+			for (int i = 0; i < 100; i++) {
+				longAtom.append('b');
+			}
+			writeSentences(pto, longAtom.toString(), 1);
+			assertEquals(1, writer.flushes);
+			// the count starts again after a flush
+			writeSentences(pto, "a", 10);
+			assertEquals(1, writer.flushes);
+		}
+
+		@Test
+		public void testInvalidCharacterCount() {
+			assertThrows(IllegalArgumentException.class, () -> PrologTermOutput.FlushPolicy.afterCharacters(0));
+		}
+	}
 }